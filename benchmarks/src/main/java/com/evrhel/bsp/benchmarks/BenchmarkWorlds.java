@@ -0,0 +1,130 @@
+package com.evrhel.bsp.benchmarks;
+
+import com.evrhel.bsp.Polygon;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generates the worlds used by the benchmarks. Worlds are procedural and seeded, so
+ * every run on every machine measures exactly the same input.
+ * <p>
+ * A world is a square grid of rooms. Walls run along the grid lines with doorways cut
+ * into some of them, and some rooms hold a diamond-shaped pillar, so trees see both
+ * long runs of collinear walls and walls at an angle to every grid line.
+ */
+public class BenchmarkWorlds {
+
+    /**
+     * The seed every world is generated from.
+     */
+    public static final long SEED = 0x5EEDL;
+
+    /**
+     * The order in which the walls of a world are handed to the tree builder.
+     */
+    public enum Order {
+
+        /**
+         * Room by room, row by row, as generated.
+         */
+        GENERATED,
+
+        /**
+         * Shuffled with a seeded random number generator.
+         */
+        SHUFFLED,
+
+        /**
+         * Sorted by their minimum x-coordinate, then their minimum y-coordinate.
+         */
+        SORTED
+    }
+
+    private static final float ROOM_SIZE = 8;
+    private static final float DOOR_CHANCE = 0.3f;
+    private static final float PILLAR_CHANCE = 0.2f;
+
+    /**
+     * Generates a world.
+     *
+     * @param size The number of walls.
+     * @param order The order of the walls.
+     * @return A new <code>List</code> of exactly <code>size</code> walls.
+     */
+    public static List<Polygon> rooms(int size, Order order) {
+        Random random = new Random(SEED);
+        int rooms = (int)Math.ceil(Math.sqrt(size / 2.0)) + 1;
+
+        List<Polygon> polys = new ArrayList<>(size + 8);
+        for (int row = 0; row < rooms && polys.size() < size; row++) {
+            for (int column = 0; column < rooms && polys.size() < size; column++) {
+                float x = column * ROOM_SIZE, y = row * ROOM_SIZE;
+                wall(polys, random, x, y, x + ROOM_SIZE, y);
+                wall(polys, random, x, y + ROOM_SIZE, x, y);
+
+                if (random.nextFloat() < PILLAR_CHANCE) {
+                    float cx = x + ROOM_SIZE * 0.5f, cy = y + ROOM_SIZE * 0.5f;
+                    float r = ROOM_SIZE * (0.1f + random.nextFloat() * 0.15f);
+                    polys.add(new Polygon(null, cx + r, cy, cx, cy + r));
+                    polys.add(new Polygon(null, cx, cy + r, cx - r, cy));
+                    polys.add(new Polygon(null, cx - r, cy, cx, cy - r));
+                    polys.add(new Polygon(null, cx, cy - r, cx + r, cy));
+                }
+            }
+        }
+        polys.subList(size, polys.size()).clear();
+
+        switch (order) {
+        case SHUFFLED:
+            Collections.shuffle(polys, new Random(SEED));
+            break;
+        case SORTED:
+            polys.sort(Comparator.comparingDouble((Polygon poly) -> Math.min(poly.getStartX(), poly.getEndX()))
+                    .thenComparingDouble(poly -> Math.min(poly.getStartY(), poly.getEndY())));
+            break;
+        default:
+            break;
+        }
+
+        return polys;
+    }
+
+    /**
+     * Writes a world in the text format read by <code>World.worldFromFile</code>.
+     *
+     * @param polys The walls of the world.
+     * @param path The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(List<Polygon> polys, Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("# Generated benchmark world\n");
+            for (int i = 0; i < polys.size(); i++) {
+                Polygon poly = polys.get(i);
+                out.write(poly.getStartX() + " " + poly.getStartY() + " " + poly.getEndX() + " " + poly.getEndY()
+                        + " wall" + i + "\n");
+            }
+        }
+    }
+
+    /**
+     * Adds a wall, cutting a doorway into its middle third by chance.
+     */
+    private static void wall(List<Polygon> polys, Random random, float x0, float y0, float x1, float y1) {
+        if (random.nextFloat() >= DOOR_CHANCE) {
+            polys.add(new Polygon(null, x0, y0, x1, y1));
+            return;
+        }
+
+        float dx = (x1 - x0) / 3, dy = (y1 - y0) / 3;
+        polys.add(new Polygon(null, x0, y0, x0 + dx, y0 + dy));
+        polys.add(new Polygon(null, x1 - dx, y1 - dy, x1, y1));
+    }
+
+    private BenchmarkWorlds() { }
+}
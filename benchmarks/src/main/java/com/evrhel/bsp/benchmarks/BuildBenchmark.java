@@ -0,0 +1,47 @@
+package com.evrhel.bsp.benchmarks;
+
+import com.evrhel.bsp.BSPTree;
+import com.evrhel.bsp.BuildOptions;
+import com.evrhel.bsp.Polygon;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a <code>BSPTree</code> with the default options, for several world
+ * sizes and input orders. The first-polygon splitter makes the order matter as much as
+ * the size. <code>lazyFirstQuery</code> measures the time to the first point location
+ * when the tree is built lazily.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+    @Param({"1000", "4000", "16000"})
+    public int size;
+
+    @Param({"GENERATED", "SHUFFLED", "SORTED"})
+    public BenchmarkWorlds.Order order;
+
+    private List<Polygon> polys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.polys = BenchmarkWorlds.rooms(this.size, this.order);
+    }
+
+    @Benchmark
+    public BSPTree build() {
+        return new BSPTree(this.polys);
+    }
+
+    @Benchmark
+    public int lazyFirstQuery() {
+        return new BSPTree(this.polys, new BuildOptions().setLazy(true)).locate(1, 1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.evrhel.bsp.benchmarks;
+
+import com.evrhel.bsp.ParseError;
+import com.evrhel.bsp.Polygon;
+import com.evrhel.bsp.World;
+import com.evrhel.bsp.WorldLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a world from a text file. <code>worldFromFile</code> covers the
+ * whole load including the tree build, and <code>parse</code> isolates the parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"10000", "50000"})
+    public int size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.file = Files.createTempFile("bsp-benchmark", ".txt");
+        BenchmarkWorlds.write(BenchmarkWorlds.rooms(this.size, BenchmarkWorlds.Order.SHUFFLED), this.file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public World worldFromFile() throws IOException {
+        return World.worldFromFile(this.file.toString());
+    }
+
+    @Benchmark
+    public List<Polygon> parse() throws IOException {
+        List<ParseError> errors = new ArrayList<>();
+        return new WorldLoader().parse(this.file, errors);
+    }
+}
@@ -0,0 +1,61 @@
+package com.evrhel.bsp.benchmarks;
+
+import com.evrhel.bsp.Plane;
+import com.evrhel.bsp.Polygon;
+import com.evrhel.bsp.RelativePosition;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations the tree builder performs once per <code>Polygon</code> and
+ * node: classifying a segment against a plane and splitting a segment by one. Each
+ * invocation covers a seeded batch of segments, all of which cross the plane.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class PrimitiveBenchmark {
+
+    private static final int BATCH = 1024;
+
+    private Plane plane;
+    private Polygon[] polys;
+    private Polygon[] split;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(BenchmarkWorlds.SEED);
+        this.plane = new Plane(0, 0, 0.6f, 0.8f);
+        this.polys = new Polygon[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            // Mirror a point through the plane so the segment always crosses it
+            float x = random.nextFloat() * 100 + 1, y = random.nextFloat() * 100 + 1;
+            float d = this.plane.distanceTo(x, y) * (1 + random.nextFloat());
+            this.polys[i] = new Polygon(null, x, y, x - 0.6f * 2 * d, y - 0.8f * 2 * d);
+        }
+        this.split = new Polygon[2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void positionOf(Blackhole blackhole) {
+        for (Polygon poly : this.polys)
+            blackhole.consume(RelativePosition.positionOf(this.plane, poly));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void split(Blackhole blackhole) {
+        for (Polygon poly : this.polys) {
+            poly.split(this.plane, this.split);
+            blackhole.consume(this.split[RelativePosition.FRONT]);
+            blackhole.consume(this.split[RelativePosition.BEHIND]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.evrhel.bsp.benchmarks;
+
+import com.evrhel.bsp.BSPTree;
+import com.evrhel.bsp.Polygon;
+import com.evrhel.bsp.Vector2;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures walking every <code>Polygon</code> of a <code>BSPTree</code>, both
+ * back-to-front from a viewpoint with <code>iterator(Vector2)</code> and in arbitrary
+ * order with <code>iterator()</code>. Viewpoints cycle through a seeded set spread over
+ * the world. <code>batchOrdering</code> orders for every viewpoint at once on the common
+ * <code>ForkJoinPool</code>, reusing its destination arrays between invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+
+    private static final int VIEWPOINTS = 64;
+
+    @Param({"1000", "16000"})
+    public int size;
+
+    private BSPTree tree;
+    private Vector2[] viewpoints;
+    private float[] viewpointX, viewpointY;
+    private Polygon[][] orderings;
+    private int[] counts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.tree = new BSPTree(BenchmarkWorlds.rooms(this.size, BenchmarkWorlds.Order.SHUFFLED));
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (Polygon poly : this.tree) {
+            minX = Math.min(minX, Math.min(poly.getStartX(), poly.getEndX()));
+            minY = Math.min(minY, Math.min(poly.getStartY(), poly.getEndY()));
+            maxX = Math.max(maxX, Math.max(poly.getStartX(), poly.getEndX()));
+            maxY = Math.max(maxY, Math.max(poly.getStartY(), poly.getEndY()));
+        }
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        this.viewpoints = new Vector2[VIEWPOINTS];
+        for (int i = 0; i < VIEWPOINTS; i++)
+            this.viewpoints[i] = new Vector2(minX + random.nextFloat() * (maxX - minX),
+                    minY + random.nextFloat() * (maxY - minY));
+
+        this.viewpointX = new float[VIEWPOINTS];
+        this.viewpointY = new float[VIEWPOINTS];
+        for (int i = 0; i < VIEWPOINTS; i++) {
+            this.viewpointX[i] = this.viewpoints[i].x;
+            this.viewpointY[i] = this.viewpoints[i].y;
+        }
+        this.orderings = new Polygon[VIEWPOINTS][];
+        this.counts = new int[VIEWPOINTS];
+    }
+
+    @Benchmark
+    public void orderedIteration(Blackhole blackhole) {
+        Vector2 viewpoint = this.viewpoints[this.next];
+        this.next = (this.next + 1) % VIEWPOINTS;
+
+        Iterator<Polygon> it = this.tree.iterator(viewpoint);
+        while (it.hasNext())
+            blackhole.consume(it.next());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VIEWPOINTS)
+    public void batchOrdering(Blackhole blackhole) {
+        this.tree.order(this.viewpointX, this.viewpointY, 0, VIEWPOINTS, this.orderings, this.counts,
+                ForkJoinPool.commonPool()).join();
+        blackhole.consume(this.orderings);
+    }
+
+    @Benchmark
+    public void arbitraryIteration(Blackhole blackhole) {
+        for (Polygon poly : this.tree)
+            blackhole.consume(poly);
+    }
+}
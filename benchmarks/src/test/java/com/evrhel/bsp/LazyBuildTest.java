@@ -0,0 +1,168 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a lazily built <code>BSPTree</code> answers queries exactly as one built
+ * eagerly from the same <code>Polygon</code>s, including queries racing to build the
+ * same subtrees from several threads.
+ */
+class LazyBuildTest {
+
+    private static final int THREADS = 4;
+    private static final int QUERIES = 500;
+
+    @Test
+    void queriesMatchEagerBuild() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<Polygon> polys = randomPolygons(random);
+            BSPTree eager = new BSPTree(polys);
+            BSPTree lazy = new BSPTree(polys, new BuildOptions().setLazy(true));
+
+            // Locating and casting build only the subtrees they pass through
+            Map<Integer, Integer> cells = new HashMap<>();
+            for (int i = 0; i < QUERIES; i++) {
+                String context = "seed " + seed + ", query " + i;
+                float x = random.nextFloat() * 120 - 10, y = random.nextFloat() * 120 - 10;
+                assertSameCell(cells, lazy.locate(x, y), eager.locate(x, y), context);
+
+                Vector2 origin = new Vector2(x, y);
+                Vector2 direction = new Vector2(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+                assertEquals(describe(eager.raycast(origin, direction, 50)), describe(lazy.raycast(origin, direction, 50)),
+                        context);
+            }
+
+            for (int i = 0; i < 20; i++) {
+                Vector2 position = new Vector2(random.nextFloat() * 120 - 10, random.nextFloat() * 120 - 10);
+                assertEquals(backToFront(eager, position), backToFront(lazy, position),
+                        "seed " + seed + ", position " + position);
+            }
+            assertEquals(eager.getPolygonCount(), lazy.getPolygonCount(), "seed " + seed);
+        }
+    }
+
+    @Test
+    void concurrentQueriesOnFreshTree() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (long seed = 0; seed < 10; seed++) {
+                Random random = new Random(seed);
+                List<Polygon> polys = randomPolygons(random);
+                BSPTree eager = new BSPTree(polys);
+                BSPTree lazy = new BSPTree(polys, new BuildOptions().setLazy(true));
+
+                // Every thread queries the same points, so they race for the same subtrees
+                float[] xs = new float[QUERIES], ys = new float[QUERIES];
+                float[] dirX = new float[QUERIES], dirY = new float[QUERIES];
+                for (int i = 0; i < QUERIES; i++) {
+                    xs[i] = random.nextFloat() * 120 - 10;
+                    ys[i] = random.nextFloat() * 120 - 10;
+                    dirX[i] = random.nextFloat() - 0.5f;
+                    dirY[i] = random.nextFloat() - 0.5f;
+                }
+
+                List<Future<int[]>> located = new ArrayList<>();
+                List<Future<List<String>>> hits = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int first = t * QUERIES / THREADS;
+                    located.add(executor.submit(() -> {
+                        int[] result = new int[QUERIES];
+                        for (int j = 0; j < QUERIES; j++) {
+                            int i = (first + j) % QUERIES;
+                            result[i] = lazy.locate(xs[i], ys[i]);
+                        }
+                        return result;
+                    }));
+                    hits.add(executor.submit(() -> {
+                        List<String> result = new ArrayList<>();
+                        for (int i = 0; i < QUERIES; i++)
+                            result.add(describe(lazy.raycast(new Vector2(xs[i], ys[i]), new Vector2(dirX[i], dirY[i]), 50)));
+                        return result;
+                    }));
+                }
+
+                List<String> expectedHits = new ArrayList<>();
+                for (int i = 0; i < QUERIES; i++)
+                    expectedHits.add(describe(eager.raycast(new Vector2(xs[i], ys[i]), new Vector2(dirX[i], dirY[i]), 50)));
+                for (Future<List<String>> future : hits)
+                    assertEquals(expectedHits, future.get(), "seed " + seed);
+
+                // All threads agree on the cells, and so does the tree once fully built
+                int[] cells = located.get(0).get();
+                for (Future<int[]> future : located) {
+                    int[] other = future.get();
+                    for (int i = 0; i < QUERIES; i++)
+                        assertEquals(cells[i], other[i], "seed " + seed + ", point " + i);
+                }
+
+                lazy.warm(executor).get();
+                assertEquals(eager.getPolygonCount(), lazy.getPolygonCount(), "seed " + seed);
+                assertEquals(eager.getStatistics().getNodeCount(), lazy.getStatistics().getNodeCount(), "seed " + seed);
+
+                int limit = lazy.getCellLimit();
+                Map<Integer, Integer> eagerCells = new HashMap<>();
+                for (int i = 0; i < QUERIES; i++) {
+                    String context = "seed " + seed + ", point " + i;
+                    assertEquals(cells[i], lazy.locate(xs[i], ys[i]), context);
+                    assertTrue(cells[i] >= 0 && cells[i] < limit, context + ": cell " + cells[i] + ", limit " + limit);
+                    assertSameCell(eagerCells, cells[i], eager.locate(xs[i], ys[i]), context);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that cells of the two trees correspond one to one. Identifiers are assigned
+     * in a different order when building lazily, so only the grouping of points can be
+     * compared.
+     */
+    private static void assertSameCell(Map<Integer, Integer> cells, int lazyCell, int eagerCell, String context) {
+        Integer previous = cells.putIfAbsent(lazyCell, eagerCell);
+        assertEquals(previous != null ? previous : eagerCell, eagerCell, context + ": lazy cell " + lazyCell);
+        for (Map.Entry<Integer, Integer> entry : cells.entrySet()) {
+            if (entry.getValue() == eagerCell)
+                assertEquals(lazyCell, (int)entry.getKey(), context + ": eager cell " + eagerCell);
+        }
+    }
+
+    private static List<String> backToFront(BSPTree tree, Vector2 position) {
+        List<String> result = new ArrayList<>();
+        tree.traverseBackToFront(position, poly -> {
+            result.add(describe(poly));
+            return true;
+        });
+        return result;
+    }
+
+    private static String describe(RayHit hit) {
+        return hit == null ? "miss" : describe(hit.getPolygon()) + " at " + hit.getDistance();
+    }
+
+    private static String describe(Polygon poly) {
+        return poly.getName() + " " + poly.getStartX() + " " + poly.getStartY() + " " + poly.getEndX() + " "
+                + poly.getEndY();
+    }
+
+    private static List<Polygon> randomPolygons(Random random) {
+        List<Polygon> polys = new ArrayList<>();
+        for (int i = 200 + random.nextInt(300); i > 0; i--) {
+            float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+            polys.add(new Polygon("p" + i, x, y, x + random.nextFloat() * 20 - 10, y + random.nextFloat() * 20 - 10));
+        }
+        return polys;
+    }
+}
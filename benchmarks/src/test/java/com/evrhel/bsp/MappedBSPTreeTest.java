@@ -0,0 +1,93 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that files whose nodes share children or whose polygon ranges overlap are
+ * rejected when opened, as queries on them could return more indices than there are
+ * polygons.
+ */
+class MappedBSPTreeTest {
+
+    @Test
+    void validFileOpens() throws IOException {
+        ByteBuffer buffer = write();
+        MappedBSPTree tree = new MappedBSPTree(buffer);
+        int[] dest = new int[tree.getPolygonCount()];
+        assertEquals(tree.getPolygonCount(), tree.queryRectangle(-1000, -1000, 1000, 1000, dest), "query all");
+    }
+
+    @Test
+    void sharedChildIsRejected() throws IOException {
+        ByteBuffer buffer = write();
+        int node = findNode(buffer, BSPFile.NODE_BEHIND);
+        int base = BSPFile.HEADER_SIZE + node * BSPFile.NODE_SIZE;
+        buffer.putInt(base + BSPFile.NODE_FRONT, buffer.getInt(base + BSPFile.NODE_BEHIND));
+        assertRejected(buffer);
+    }
+
+    @Test
+    void overlappingPolygonRangesAreRejected() throws IOException {
+        ByteBuffer buffer = write();
+        int count = buffer.getInt(8);
+        for (int node = 0; node < count; node++) {
+            int base = BSPFile.HEADER_SIZE + node * BSPFile.NODE_SIZE;
+            if (buffer.getInt(base + BSPFile.NODE_POLY_START) > 0) {
+                buffer.putInt(base + BSPFile.NODE_POLY_START, 0);
+                assertRejected(buffer);
+                return;
+            }
+        }
+        fail("no node with a polygon range to corrupt");
+    }
+
+    private static void assertRejected(ByteBuffer buffer) {
+        try {
+            new MappedBSPTree(buffer);
+            fail("malformed file was accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Malformed BSP file"), expected.getMessage());
+        }
+    }
+
+    /**
+     * Returns the first node with a child at an offset.
+     */
+    private static int findNode(ByteBuffer buffer, int offset) {
+        int count = buffer.getInt(8);
+        for (int node = 0; node < count; node++) {
+            int base = BSPFile.HEADER_SIZE + node * BSPFile.NODE_SIZE;
+            if (buffer.getInt(base + offset) != CompiledBSPTree.NONE)
+                return node;
+        }
+        throw new AssertionError("no node with a child");
+    }
+
+    private static ByteBuffer write() throws IOException {
+        Random random = new Random(1);
+        List<Polygon> polys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+            polys.add(new Polygon("p" + i, x, y, x + random.nextFloat() * 10 - 5, y + random.nextFloat() * 10 - 5));
+        }
+
+        Path path = Files.createTempFile("mapped", ".bsp");
+        try {
+            BSPFile.write(new BSPTree(polys), path);
+            return ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
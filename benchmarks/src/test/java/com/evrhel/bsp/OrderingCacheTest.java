@@ -0,0 +1,83 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that orderings returned by an <code>OrderingCache</code>, whether cached or not,
+ * match <code>BSPTree.iterator(Vector2)</code>.
+ */
+class OrderingCacheTest {
+
+    @Test
+    void hitsMatchIterator() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<Polygon> polys = randomPolygons(random);
+            BSPTree tree = new BSPTree(polys);
+            OrderingCache cache = new OrderingCache(tree, 16);
+
+            // Small steps so most lookups are answered from the cache
+            float x = 50, y = 50;
+            for (int i = 0; i < 2000; i++) {
+                if (i % 200 == 0) {
+                    x = random.nextFloat() * 140 - 20;
+                    y = random.nextFloat() * 140 - 20;
+                }
+                x += random.nextFloat() * 0.6f - 0.3f;
+                y += random.nextFloat() * 0.6f - 0.3f;
+                check(tree, cache, new Vector2(x, y), "seed " + seed + ", step " + i);
+            }
+            assertTrue(cache.getHits() > cache.getMisses(), "seed " + seed + ": " + cache.getHits() + " hits, "
+                    + cache.getMisses() + " misses");
+        }
+    }
+
+    @Test
+    void viewpointsOnPlanesMatchIterator() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            BSPTree tree = new BSPTree(randomPolygons(random));
+            OrderingCache cache = new OrderingCache(tree, 16);
+
+            // Cache the region around the start of a polygon, then look up the start itself,
+            // which lies on the polygon's plane and leaves the polygon out
+            for (Polygon poly : tree) {
+                String context = "seed " + seed + ", " + poly;
+                float offset = 1e-3f;
+                check(tree, cache, new Vector2(poly.getStartX() + poly.getNormalX() * offset,
+                        poly.getStartY() + poly.getNormalY() * offset), context);
+                check(tree, cache, new Vector2(poly.getStartX(), poly.getStartY()), context + " start");
+            }
+        }
+    }
+
+    private static void check(BSPTree tree, OrderingCache cache, Vector2 position, String context) {
+        List<Polygon> expected = new ArrayList<>();
+        for (Iterator<Polygon> it = tree.iterator(position); it.hasNext(); )
+            expected.add(it.next());
+
+        List<Polygon> actual = cache.getOrdering(position);
+        assertEquals(expected.size(), actual.size(), context + " at " + position);
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i) != actual.get(i))
+                fail(context + " at " + position + ": polygon " + i + " is " + actual.get(i) + ", expected "
+                        + expected.get(i));
+        }
+    }
+
+    private static List<Polygon> randomPolygons(Random random) {
+        List<Polygon> polys = new ArrayList<>();
+        for (int i = 50 + random.nextInt(200); i > 0; i--) {
+            float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+            polys.add(new Polygon("p" + i, x, y, x + random.nextFloat() * 20 - 10, y + random.nextFloat() * 20 - 10));
+        }
+        return polys;
+    }
+}
@@ -0,0 +1,97 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a <code>BSPTree</code> built on a <code>ForkJoinPool</code> is identical to
+ * one built sequentially from the same <code>Polygon</code>s: the same nodes, planes and
+ * <code>Polygon</code>s in the same places, and so the same orderings.
+ */
+class ParallelBuildTest {
+
+    @Test
+    void parallelBuildMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed = 0; seed < 5; seed++) {
+                Random random = new Random(seed);
+                List<Polygon> polys = randomPolygons(random, 2000 + random.nextInt(2000));
+                assertTrue(polys.size() >= BuildOptions.DEFAULT_PARALLEL_THRESHOLD, "world too small to fork");
+
+                BSPTree sequential = new BSPTree(polys);
+                BuildOptions[] parallelOptions = {
+                        new BuildOptions().setPool(pool),
+                        new BuildOptions().setPool(pool).setParallelThreshold(1),
+                };
+                for (BuildOptions options : parallelOptions) {
+                    String context = "seed " + seed + ", threshold " + options.getParallelThreshold();
+                    BSPTree parallel = new BSPTree(polys, options);
+
+                    assertEquals(sequential.getPolygonCount(), parallel.getPolygonCount(), context);
+                    TreeStatistics expected = sequential.getStatistics(), actual = parallel.getStatistics();
+                    assertEquals(expected.getNodeCount(), actual.getNodeCount(), context + " nodes");
+                    assertEquals(expected.getLeafCount(), actual.getLeafCount(), context + " leaves");
+                    assertEquals(expected.getSplitCount(), actual.getSplitCount(), context + " splits");
+                    assertEquals(expected.getMaxDepth(), actual.getMaxDepth(), context + " depth");
+                    assertSameNode(sequential.getRoot(), parallel.getRoot(), context + ", root");
+
+                    assertEquals(describe(sequential.iterator()), describe(parallel.iterator()), context);
+                    for (int i = 0; i < 10; i++) {
+                        Vector2 position = new Vector2(random.nextFloat() * 1000, random.nextFloat() * 1000);
+                        assertEquals(describe(sequential.iterator(position)), describe(parallel.iterator(position)),
+                                context + ", position " + position);
+                        assertEquals(sequential.locate(position.x, position.y), parallel.locate(position.x, position.y),
+                                context + ", position " + position);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameNode(BSPNode expected, BSPNode actual, String path) {
+        if (expected == null || actual == null) {
+            assertTrue(expected == actual, path + ": " + expected + ", " + actual);
+            return;
+        }
+
+        assertEquals(expected.id, actual.id, path + " id");
+        assertEquals(expected.size, actual.size, path + " size");
+        assertTrue(expected.plane.getNormalX() == actual.plane.getNormalX()
+                && expected.plane.getNormalY() == actual.plane.getNormalY()
+                && expected.plane.getDistance() == actual.plane.getDistance(),
+                path + ": " + expected.plane + ", " + actual.plane);
+        assertEquals(describe(expected.polys.iterator()), describe(actual.polys.iterator()), path + " polygons");
+
+        assertSameNode(expected.behind(), actual.behind(), path + ".behind");
+        assertSameNode(expected.front(), actual.front(), path + ".front");
+    }
+
+    private static List<String> describe(Iterator<Polygon> polys) {
+        List<String> result = new ArrayList<>();
+        while (polys.hasNext()) {
+            Polygon poly = polys.next();
+            result.add(poly.getName() + " " + poly.getStartX() + " " + poly.getStartY() + " " + poly.getEndX() + " "
+                    + poly.getEndY());
+        }
+        return result;
+    }
+
+    private static List<Polygon> randomPolygons(Random random, int count) {
+        List<Polygon> polys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 1000, y = random.nextFloat() * 1000;
+            polys.add(new Polygon("p" + i, x, y, x + random.nextFloat() * 60 - 30, y + random.nextFloat() * 60 - 30));
+        }
+        return polys;
+    }
+}
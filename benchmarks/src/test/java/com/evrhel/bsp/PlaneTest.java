@@ -0,0 +1,61 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that points on a <code>Plane</code> far from <code>(0, 0)</code> are measured
+ * exactly on it, so collinear <code>Polygon</code>s are grouped instead of split.
+ */
+class PlaneTest {
+
+    @Test
+    void collinearDiagonalSegmentsAreOn() {
+        Random random = new Random(1);
+        for (int line = 0; line < 100; line++) {
+            // Quarter coordinates around 1e4 are exact in a float, and so are the offsets
+            // along a diagonal between them
+            float originX = 10000 + random.nextInt(4000) * 0.25f, originY = 10000 + random.nextInt(4000) * 0.25f;
+            float sign = random.nextBoolean() ? 1 : -1;
+            List<Polygon> polys = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                float from = random.nextInt(400) * 0.25f - 50, to = from + 1 + random.nextInt(40) * 0.25f;
+                polys.add(new Polygon("p" + i, originX + from, originY + sign * from, originX + to, originY + sign * to));
+            }
+
+            Plane plane = new Plane(polys.get(0));
+            float[] startX = new float[polys.size()], startY = new float[polys.size()];
+            float[] endX = new float[polys.size()], endY = new float[polys.size()];
+            for (int i = 0; i < polys.size(); i++) {
+                Polygon poly = polys.get(i);
+                String context = "line " + line + ", " + poly;
+                assertTrue(plane.distanceTo(poly.getStartX(), poly.getStartY()) == 0, context);
+                assertTrue(plane.distanceTo(poly.getEndX(), poly.getEndY()) == 0, context);
+                assertEquals(RelativePosition.ON, RelativePosition.positionOf(plane, poly), context);
+
+                startX[i] = poly.getStartX();
+                startY[i] = poly.getStartY();
+                endX[i] = poly.getEndX();
+                endY[i] = poly.getEndY();
+            }
+
+            for (PlaneClassifier classifier : new PlaneClassifier[] {
+                    PlaneClassifier.getScalar(), PlaneClassifier.getDefault() }) {
+                int[] positions = new int[polys.size()];
+                classifier.classify(plane, startX, startY, endX, endY, 0, polys.size(), positions);
+                for (int i = 0; i < positions.length; i++)
+                    assertEquals(RelativePosition.ON, positions[i], "line " + line + ", " + classifier + ", " + i);
+            }
+
+            // Every polygon lands in the root without being split
+            TreeStatistics statistics = new BSPTree(polys).getStatistics();
+            assertEquals(1, statistics.getNodeCount(), "line " + line + ": " + statistics);
+            assertEquals(0, statistics.getSplitCount(), "line " + line + ": " + statistics);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the run-length encoding of a <code>PotentiallyVisibleSet</code> decodes to
+ * exactly the rows it was built from.
+ */
+class PotentiallyVisibleSetTest {
+
+    @Test
+    void rowsRoundTrip() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            int cellCount = 1 + random.nextInt(5000);
+            BitSet[] rows = new BitSet[cellCount];
+            byte[][] compressed = new byte[cellCount][];
+            for (int i = 0; i < cellCount; i++) {
+                rows[i] = randomRow(random, cellCount);
+                compressed[i] = PotentiallyVisibleSet.compress(rows[i]);
+            }
+
+            PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(cellCount, compressed);
+            assertEquals(cellCount, pvs.getCellCount(), "cell count");
+            for (int from = 0; from < cellCount; from++) {
+                String context = "seed " + seed + ", row " + from;
+                assertEquals(rows[from], pvs.getVisibleCells(from), context);
+                assertEquals(rows[from].cardinality(), pvs.getVisibleCount(from), context);
+
+                // Sample every set bit and as many clear ones
+                for (int to = rows[from].nextSetBit(0); to >= 0; to = rows[from].nextSetBit(to + 1)) {
+                    assertTrue(pvs.isVisible(from, to), context + ", cell " + to);
+                    int clear = random.nextInt(cellCount);
+                    assertEquals(rows[from].get(clear), pvs.isVisible(from, clear), context + ", cell " + clear);
+                }
+            }
+        }
+    }
+
+    @Test
+    void longZeroRunsAreSplit() {
+        // 8 * 255 clear bits fill exactly one run, so these need one, two and three runs
+        int cellCount = 8 * 700;
+        int[] set = { 0, 8 * 255 + 3, 8 * 600, cellCount - 1 };
+        BitSet row = new BitSet(cellCount);
+        for (int cell : set)
+            row.set(cell);
+
+        byte[][] rows = new byte[cellCount][];
+        rows[0] = PotentiallyVisibleSet.compress(row);
+        for (int i = 1; i < cellCount; i++)
+            rows[i] = PotentiallyVisibleSet.compress(new BitSet());
+
+        PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(cellCount, rows);
+        assertEquals(row, pvs.getVisibleCells(0), "row");
+        for (int cell = 0; cell < cellCount; cell++)
+            assertEquals(row.get(cell), pvs.isVisible(0, cell), "cell " + cell);
+        assertEquals(new BitSet(), pvs.getVisibleCells(1), "empty row");
+        assertEquals(0, pvs.getVisibleCount(1), "empty row");
+    }
+
+    @Test
+    void cellsOutOfBoundsAreRejected() {
+        PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(2,
+                new byte[][] { PotentiallyVisibleSet.compress(new BitSet()), new byte[] { 3 } });
+        int[][] pairs = { { -1, 0 }, { 2, 0 }, { 0, -1 }, { 0, 2 } };
+        for (int[] pair : pairs) {
+            try {
+                pvs.isVisible(pair[0], pair[1]);
+                fail("isVisible(" + pair[0] + ", " + pair[1] + ") did not throw");
+            } catch (IndexOutOfBoundsException e) {
+                // The cell is checked before any row is read
+                assertFalse(e instanceof ArrayIndexOutOfBoundsException, "unchecked " + e);
+            }
+        }
+    }
+
+    /**
+     * Returns a row mixing dense stretches and long runs of clear bits.
+     */
+    private static BitSet randomRow(Random random, int cellCount) {
+        BitSet row = new BitSet(cellCount);
+        int cell = random.nextInt(cellCount);
+        while (cell < cellCount) {
+            row.set(cell);
+            cell += random.nextInt(4) == 0 ? 1 + random.nextInt(8 * 400) : 1 + random.nextInt(12);
+        }
+        return row;
+    }
+}
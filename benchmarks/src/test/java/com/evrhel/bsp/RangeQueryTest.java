@@ -0,0 +1,137 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares rectangle queries against a brute-force test of every <code>Polygon</code>,
+ * with many rectangles whose edges and corners lie exactly on <code>Polygon</code>s.
+ */
+class RangeQueryTest {
+
+    private static final int QUERIES = 400;
+
+    @Test
+    void rectangleMatchesBruteForce() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<Polygon> polys = randomPolygons(random);
+            BSPTree tree = new BSPTree(polys);
+            List<Polygon> fragments = new ArrayList<>();
+            for (Polygon poly : tree)
+                fragments.add(poly);
+
+            for (int i = 0; i < QUERIES; i++) {
+                float[] rect = randomRectangle(random, fragments);
+                Set<Polygon> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Polygon poly : fragments) {
+                    if (touches(poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY(), rect))
+                        expected.add(poly);
+                }
+
+                Set<Polygon> actual = Collections.newSetFromMap(new IdentityHashMap<>());
+                tree.queryRectangle(rect[0], rect[1], rect[2], rect[3], actual::add);
+                assertEquals(expected, actual, "seed " + seed + ", rectangle " + format(rect));
+            }
+        }
+    }
+
+    @Test
+    void mappedRectangleMatchesBruteForce() throws IOException {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            Path path = Files.createTempFile("range", ".bsp");
+            try {
+                BSPFile.write(new BSPTree(randomPolygons(random)), path);
+                MappedBSPTree tree = BSPFile.map(path);
+                List<Polygon> fragments = new ArrayList<>();
+                for (int i = 0; i < tree.getPolygonCount(); i++)
+                    fragments.add(tree.getPolygon(i));
+
+                int[] dest = new int[tree.getPolygonCount()];
+                for (int i = 0; i < QUERIES; i++) {
+                    float[] rect = randomRectangle(random, fragments);
+                    boolean[] expected = new boolean[dest.length];
+                    for (int j = 0; j < dest.length; j++) {
+                        expected[j] = touches(tree.getStartX(j), tree.getStartY(j), tree.getEndX(j), tree.getEndY(j),
+                                rect);
+                    }
+
+                    boolean[] actual = new boolean[dest.length];
+                    int count = tree.queryRectangle(rect[0], rect[1], rect[2], rect[3], dest);
+                    for (int j = 0; j < count; j++)
+                        actual[dest[j]] = true;
+                    for (int j = 0; j < dest.length; j++) {
+                        if (expected[j] != actual[j])
+                            fail("seed " + seed + ", polygon " + j + ", rectangle " + format(rect));
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static boolean touches(float startX, float startY, float endX, float endY, float[] rect) {
+        return SegmentMath.intersectsRectangle(startX, startY, endX, endY, rect[0], rect[1], rect[2], rect[3]);
+    }
+
+    /**
+     * Mixes axis-aligned <code>Polygon</code>s on a coarse grid, which rectangles can
+     * share edges with, and arbitrary ones, which rectangle corners can land on.
+     */
+    private static List<Polygon> randomPolygons(Random random) {
+        List<Polygon> polys = new ArrayList<>();
+        for (int i = 50 + random.nextInt(151); i > 0; i--) {
+            if (random.nextBoolean()) {
+                float x = random.nextInt(21) * 5 + 0.1f, y = random.nextInt(21) * 5 + 0.3f;
+                float length = (1 + random.nextInt(6)) * 5 * (random.nextBoolean() ? 1 : -1);
+                polys.add(random.nextBoolean()
+                        ? new Polygon(null, x, y, x + length, y)
+                        : new Polygon(null, x, y, x, y + length));
+            } else {
+                float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+                polys.add(new Polygon(null, x, y, x + (random.nextFloat() - 0.5f) * 40,
+                        y + (random.nextFloat() - 0.5f) * 40));
+            }
+        }
+        return polys;
+    }
+
+    /**
+     * Returns <code>{ minX, minY, maxX, maxY }</code>. Most coordinates are taken from
+     * <code>Polygon</code> endpoints, so edges lie on axis-aligned <code>Polygon</code>s
+     * and corners on arbitrary ones, and some rectangles are flat or a single point.
+     */
+    private static float[] randomRectangle(Random random, List<Polygon> polys) {
+        float[] xs = new float[2], ys = new float[2];
+        for (int i = 0; i < 2; i++) {
+            Polygon poly = polys.get(random.nextInt(polys.size()));
+            boolean start = random.nextBoolean();
+            xs[i] = random.nextInt(4) == 0 ? random.nextFloat() * 120 - 10 : start ? poly.getStartX() : poly.getEndX();
+            ys[i] = random.nextInt(4) == 0 ? random.nextFloat() * 120 - 10 : start ? poly.getStartY() : poly.getEndY();
+        }
+        if (random.nextInt(8) == 0)
+            xs[1] = xs[0];
+        if (random.nextInt(8) == 0)
+            ys[1] = ys[0];
+        return new float[] {
+                Math.min(xs[0], xs[1]), Math.min(ys[0], ys[1]), Math.max(xs[0], xs[1]), Math.max(ys[0], ys[1])
+        };
+    }
+
+    private static String format(float[] rect) {
+        return "[" + rect[0] + ", " + rect[1] + ", " + rect[2] + ", " + rect[3] + "]";
+    }
+}
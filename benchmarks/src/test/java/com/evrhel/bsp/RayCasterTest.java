@@ -0,0 +1,116 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks rays lying in the <code>Plane</code> of a node, which run along its
+ * <code>Polygon</code>s instead of crossing them.
+ */
+class RayCasterTest {
+
+    @Test
+    void rayAlongWallHitsIt() {
+        // Either wall may end up in the root, the other below it on the same plane
+        Polygon wall = new Polygon("wall", 0, 0, 10, 0);
+        Polygon other = new Polygon("other", 20, 0, 30, 0);
+        Polygon post = new Polygon("post", 15, -1, 15, 1);
+        List<List<Polygon>> orders = Arrays.asList(
+                Arrays.asList(wall, other, post), Arrays.asList(post, other, wall), Arrays.asList(other, post, wall));
+
+        for (List<Polygon> order : orders) {
+            BSPTree tree = new BSPTree(order);
+            String context = "order " + order;
+
+            RayHit hit = tree.raycast(new Vector2(-5, 0), new Vector2(1, 0), 100);
+            assertTrue(hit != null, context);
+            assertEquals("wall", hit.getPolygon().getName(), context);
+            assertTrue(hit.getDistance() == 5 && hit.getX() == 0 && hit.getY() == 0, context + ": " + hit);
+
+            // Starting within a wall hits it at once
+            hit = tree.raycast(new Vector2(25, 0), new Vector2(-1, 0), 100);
+            assertTrue(hit != null, context);
+            assertEquals("other", hit.getPolygon().getName(), context);
+            assertTrue(hit.getDistance() == 0, context + ": " + hit);
+
+            // The post, split by the plane of the walls, is closer than the wall beyond it
+            hit = tree.raycast(new Vector2(18, 0), new Vector2(-1, 0), 100);
+            assertTrue(hit != null, context);
+            assertTrue(hit.getPolygon().getName().startsWith("post"), context + ": " + hit);
+            assertTrue(hit.getDistance() == 3, context + ": " + hit);
+
+            assertFalse(tree.isVisible(new Vector2(-5, 0), new Vector2(5, 0)), context);
+            assertFalse(tree.isVisible(new Vector2(2, 0), new Vector2(8, 0)), context);
+            assertFalse(tree.isVisible(new Vector2(12, 0), new Vector2(40, 0)), context);
+            assertTrue(tree.isVisible(new Vector2(-5, 0), new Vector2(-1, 0)), context);
+            assertTrue(tree.raycast(new Vector2(-5, 0), new Vector2(1, 0), 4) == null, context);
+        }
+    }
+
+    @Test
+    void raysAlongGridLinesMatchBruteForce() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            List<Polygon> polys = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                int x = random.nextInt(20), y = random.nextInt(20), length = 1 + random.nextInt(6);
+                if (random.nextBoolean())
+                    polys.add(new Polygon("p" + i, x, y, x + length, y));
+                else
+                    polys.add(new Polygon("p" + i, x, y, x, y + length));
+            }
+            Collections.shuffle(polys, random);
+            BSPTree tree = new BSPTree(polys);
+
+            // Rays from grid points along the axes, so most lie in the plane of some wall
+            int[][] directions = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+            for (int i = 0; i < 400; i++) {
+                int x = random.nextInt(24) - 2, y = random.nextInt(24) - 2;
+                int[] dir = directions[random.nextInt(4)];
+                float maxDistance = 1 + random.nextInt(30);
+
+                float expected = Float.POSITIVE_INFINITY;
+                for (Polygon poly : polys)
+                    expected = Math.min(expected, entry(poly, x, y, dir[0], dir[1], maxDistance));
+
+                String context = "seed " + seed + ", ray (" + x + ", " + y + ") towards (" + dir[0] + ", " + dir[1]
+                        + ") up to " + maxDistance;
+                RayHit hit = tree.raycast(new Vector2(x, y), new Vector2(dir[0], dir[1]), maxDistance);
+                if (expected == Float.POSITIVE_INFINITY) {
+                    assertTrue(hit == null, context + ": " + hit);
+                } else {
+                    assertTrue(hit != null, context);
+                    assertTrue(hit.getDistance() == expected, context + ": " + hit + ", expected " + expected);
+                }
+
+                Vector2 to = new Vector2(x + dir[0] * maxDistance, y + dir[1] * maxDistance);
+                assertEquals(expected == Float.POSITIVE_INFINITY, tree.isVisible(new Vector2(x, y), to), context);
+            }
+        }
+    }
+
+    /**
+     * Returns the distance along an axis-aligned ray to where it first touches an
+     * axis-aligned <code>Polygon</code>, or infinity if it does not within
+     * <code>maxDistance</code>.
+     */
+    private static float entry(Polygon poly, int x, int y, int dirX, int dirY, float maxDistance) {
+        // Positions of the polygon along the ray, and its offset across it
+        float t0 = (poly.getStartX() - x) * dirX + (poly.getStartY() - y) * dirY;
+        float t1 = (poly.getEndX() - x) * dirX + (poly.getEndY() - y) * dirY;
+        float s0 = (poly.getStartX() - x) * dirY - (poly.getStartY() - y) * dirX;
+        float s1 = (poly.getEndX() - x) * dirY - (poly.getEndY() - y) * dirX;
+        if (Math.min(s0, s1) > 0 || Math.max(s0, s1) < 0)
+            return Float.POSITIVE_INFINITY;
+
+        float t = Math.max(0, Math.min(t0, t1));
+        return t <= Math.max(t0, t1) && t <= maxDistance ? t : Float.POSITIVE_INFINITY;
+    }
+}
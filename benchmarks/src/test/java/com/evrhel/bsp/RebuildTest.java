@@ -0,0 +1,92 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a tree modified by many insertions and removals stays within a constant
+ * factor of a tree built fresh from the same <code>Polygon</code>s, and holds no
+ * slivers.
+ */
+class RebuildTest {
+
+    private static final int OPERATIONS = 600;
+
+    @Test
+    void mixedOperationsStayCloseToFreshBuild() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<Polygon> live = new ArrayList<>();
+            for (int i = 100 + random.nextInt(301); i > 0; i--)
+                live.add(randomPolygon(random));
+
+            BSPTree tree = new BSPTree(live);
+            for (int i = 0; i < OPERATIONS; i++) {
+                if (random.nextBoolean() && !live.isEmpty()) {
+                    Polygon poly = live.remove(random.nextInt(live.size()));
+                    assertTrue(tree.remove(poly), "remove failed on seed " + seed);
+                } else {
+                    Polygon poly = randomPolygon(random);
+                    live.add(poly);
+                    tree.insert(poly);
+                }
+            }
+
+            TreeStatistics modified = tree.getStatistics();
+            TreeStatistics fresh = new BSPTree(live).getStatistics();
+            String context = "seed " + seed + ": " + modified + " vs fresh " + fresh;
+            assertEquals(live.size(), modified.getInputCount(), context);
+            assertTrue(modified.getPolygonCount() <= 2 * fresh.getPolygonCount(), context);
+            assertTrue(modified.getMaxDepth() <= 3 * fresh.getMaxDepth(), context);
+
+            for (Polygon poly : tree)
+                assertFalse(poly.isSliver(), "sliver " + poly + " on seed " + seed);
+        }
+    }
+
+    @Test
+    void crossingInsertRebuildsBothSides() {
+        // A wall along x = 0 with enough polygons on its plane that it is never rebuilt
+        // itself, and a stack of walls on either side of it
+        List<Polygon> polys = new ArrayList<>();
+        polys.add(new Polygon("root", 0, -1000, 0, 1000));
+        for (int i = 1; i <= 20; i++)
+            polys.add(new Polygon("root" + i, 0, 1000 + i * 10, 0, 1005 + i * 10));
+        for (int i = 0; i < 16; i++) {
+            polys.add(new Polygon("left" + i, -20, i * 10, -10, i * 10));
+            polys.add(new Polygon("right" + i, 10, i * 10, 20, i * 10));
+        }
+
+        BuildOptions options = new BuildOptions().setRebuildThreshold(0.5f).setRebuildImbalance(1);
+        BSPTree tree = new BSPTree(polys, options);
+        BSPNode root = tree.getRoot();
+        BSPNode behind = root.behind(), front = root.front();
+
+        // Bring both sides to their threshold of 0.5 * 16 changes without crossing it
+        for (int i = 0; i < 8; i++) {
+            tree.insert(new Polygon("moreLeft" + i, -20, 5 + i * 10, -10, 5 + i * 10));
+            tree.insert(new Polygon("moreRight" + i, 10, 5 + i * 10, 20, 5 + i * 10));
+        }
+        assertTrue(root.behind() == behind && root.front() == front, "a side was rebuilt too early");
+        assertEquals(8, behind.changes, "behind changes");
+        assertEquals(8, front.changes, "front changes");
+
+        // Each fragment of this one crosses the threshold of its side
+        tree.insert(new Polygon("crossing", -15, 2, 15, 2));
+        assertTrue(root.behind() != behind, "behind side was not rebuilt");
+        assertTrue(root.front() != front, "front side was not rebuilt");
+        assertEquals(0, root.behind().changes, "behind changes");
+        assertEquals(0, root.front().changes, "front changes");
+        assertEquals(18, root.changes, "root changes");
+    }
+
+    private static Polygon randomPolygon(Random random) {
+        float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+        return new Polygon(null, x, y, x + (random.nextFloat() - 0.5f) * 40, y + (random.nextFloat() - 0.5f) * 40);
+    }
+}
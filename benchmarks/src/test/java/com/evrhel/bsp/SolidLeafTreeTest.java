@@ -0,0 +1,141 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the cells, <code>Portal</code>s and visibility of a small map of three rooms.
+ * Rooms A (top left) and C (bottom left) are separated by a solid block, and each opens
+ * through a short door, D1 and D2, into room B on the right:
+ * <pre>
+ *  10 +----------+-+--------+
+ *     |    A     | |        |
+ *   9 |          +-+        |
+ *     |          D1         |
+ *   7 |          +-+        |
+ *   6 +----------+ |        |
+ *     |  solid     |   B    |
+ *   4 +----------+ |        |
+ *   3 |          +-+        |
+ *     |          D2         |
+ *   1 |          +-+        |
+ *     |    C     | |        |
+ *   0 +----------+-+--------+
+ *     0         10 11      20
+ * </pre>
+ * Sight lines entering B through one door travel right and cannot leave through the
+ * other, so A and D1 see neither C nor D2, and the other way around.
+ */
+class SolidLeafTreeTest {
+
+    private static final int A = 0, B = 1, C = 2, D1 = 3, D2 = 4;
+    private static final float[][] CENTERS = { { 5, 8 }, { 15, 5 }, { 5, 2 }, { 10.5f, 8 }, { 10.5f, 2 } };
+    private static final String[] NAMES = { "A", "B", "C", "D1", "D2" };
+
+    private static final boolean[][] VISIBLE = {
+            //          A      B      C      D1     D2
+            /* A  */ { true,  true,  false, true,  false },
+            /* B  */ { true,  true,  true,  true,  true  },
+            /* C  */ { false, true,  true,  false, true  },
+            /* D1 */ { true,  true,  false, true,  false },
+            /* D2 */ { false, true,  true,  false, true  },
+    };
+
+    @Test
+    void cellsAndPortals() {
+        SolidLeafTree tree = new SolidLeafTree(new BSPTree(map()));
+        assertEquals(5, tree.getCellCount(), "cell count");
+
+        int[] cells = cells(tree);
+        assertEquals(5, Arrays.stream(cells).distinct().count(), "rooms in distinct cells");
+        assertEquals(SolidLeafTree.SOLID, tree.getCell(5, 5), "separating block");
+        assertEquals(SolidLeafTree.SOLID, tree.getCell(10.5f, 5), "wall between the doors");
+        assertEquals(SolidLeafTree.SOLID, tree.getCell(-1, 5), "outside");
+
+        // Each door connects to the room on either side of it, and nothing else is open
+        List<Portal> portals = tree.getPortals();
+        assertEquals(4, portals.size(), "portal count " + portals);
+        assertTrue(connects(portals, cells[A], cells[D1]), "A to D1");
+        assertTrue(connects(portals, cells[D1], cells[B]), "D1 to B");
+        assertTrue(connects(portals, cells[C], cells[D2]), "C to D2");
+        assertTrue(connects(portals, cells[D2], cells[B]), "D2 to B");
+
+        for (Portal portal : portals) {
+            float length = portal.getEnd().sub(portal.getStart()).length();
+            assertTrue(Math.abs(length - 2) < 1e-4f, "door width " + portal);
+        }
+    }
+
+    @Test
+    void visibilityMatchesHandComputed() {
+        SolidLeafTree tree = new SolidLeafTree(new BSPTree(map()));
+        PotentiallyVisibleSet pvs = tree.getVisibility();
+        int[] cells = cells(tree);
+        assertEquals(5, pvs.getCellCount(), "cell count");
+
+        for (int from = 0; from < 5; from++) {
+            int count = 0;
+            BitSet row = pvs.getVisibleCells(cells[from]);
+            for (int to = 0; to < 5; to++) {
+                String pair = NAMES[from] + " -> " + NAMES[to];
+                assertEquals(VISIBLE[from][to], pvs.isVisible(cells[from], cells[to]), pair);
+                assertEquals(VISIBLE[from][to], row.get(cells[to]), pair);
+
+                Vector2 fromPoint = new Vector2(CENTERS[from][0], CENTERS[from][1]);
+                Vector2 toPoint = new Vector2(CENTERS[to][0], CENTERS[to][1]);
+                assertEquals(VISIBLE[from][to], tree.isPotentiallyVisible(fromPoint, toPoint), pair);
+                if (VISIBLE[from][to])
+                    count++;
+            }
+            assertEquals(count, pvs.getVisibleCount(cells[from]), "visible from " + NAMES[from]);
+        }
+    }
+
+    /**
+     * Returns the walls of the map as one loop around its empty space, facing inwards.
+     * They are ordered so that splitting on the first <code>Polygon</code> cuts first
+     * along x = 10, then each side into its rooms.
+     */
+    private static List<Polygon> map() {
+        float[][] walls = {
+                { 10, 0, 10, 1 },
+                // x < 10: the separating block, then A and C
+                { 0, 6, 10, 6 }, { 10, 10, 0, 10 }, { 0, 10, 0, 6 },
+                { 10, 4, 0, 4 }, { 0, 0, 10, 0 }, { 0, 4, 0, 0 },
+                // x > 10: the doors' outer wall, B, then the doors
+                { 11, 7, 11, 3 }, { 11, 0, 20, 0 }, { 20, 0, 20, 10 }, { 20, 10, 11, 10 },
+                { 10, 7, 11, 7 }, { 11, 9, 10, 9 }, { 11, 3, 10, 3 }, { 10, 1, 11, 1 },
+                // On planes already split on
+                { 10, 9, 10, 10 }, { 10, 6, 10, 7 }, { 10, 3, 10, 4 }, { 11, 1, 11, 0 }, { 11, 10, 11, 9 },
+        };
+
+        List<Polygon> polys = new ArrayList<>();
+        for (float[] wall : walls)
+            polys.add(new Polygon(null, wall[0], wall[1], wall[2], wall[3]));
+        return polys;
+    }
+
+    private static int[] cells(SolidLeafTree tree) {
+        int[] cells = new int[CENTERS.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = tree.getCell(CENTERS[i][0], CENTERS[i][1]);
+            assertTrue(cells[i] != SolidLeafTree.SOLID, NAMES[i] + " is solid");
+        }
+        return cells;
+    }
+
+    private static boolean connects(List<Portal> portals, int first, int second) {
+        for (Portal portal : portals) {
+            if ((portal.getFrontCell() == first && portal.getBehindCell() == second)
+                    || (portal.getFrontCell() == second && portal.getBehindCell() == first))
+                return true;
+        }
+        return false;
+    }
+}
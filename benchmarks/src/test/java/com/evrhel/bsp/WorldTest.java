@@ -0,0 +1,58 @@
+package com.evrhel.bsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how <code>World.worldFromFile</code> reports lines which cannot be parsed.
+ */
+class WorldTest {
+
+    private static final List<String> LINES = Arrays.asList(
+            "0 0 10 0 floor",
+            "10 0 ten 10",
+            "10 10 0 10 ceiling");
+
+    @Test
+    void malformedLinesAreReported() throws IOException {
+        Path path = Files.createTempFile("world", ".txt");
+        try {
+            Files.write(path, LINES, StandardCharsets.UTF_8);
+            List<ParseError> errors = new ArrayList<>();
+            World world = World.worldFromFile(path.toString(), new BuildOptions(), errors);
+
+            assertEquals(2, world.getPolys().size(), "polygons");
+            assertEquals(1, errors.size(), "errors " + errors);
+            assertEquals(2, errors.get(0).getLine(), "line");
+            assertEquals("10 0 ten 10", errors.get(0).getText(), "text");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void malformedLinesFailWithoutSink() throws IOException {
+        Path path = Files.createTempFile("world", ".txt");
+        try {
+            Files.write(path, LINES, StandardCharsets.UTF_8);
+            try {
+                World.worldFromFile(path.toString(), new BuildOptions());
+                fail("malformed line was accepted");
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getCause().getMessage().contains("ten"), e.getCause().getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
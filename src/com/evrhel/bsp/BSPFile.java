@@ -0,0 +1,168 @@
+package com.evrhel.bsp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes compiled BSP trees in a compact, versioned binary format, so a tree
+ * can be built once and loaded without running the builder again.
+ * <p>
+ * Every value is a little-endian 4-byte <code>int</code> or <code>float</code>. A file
+ * is laid out as:
+ * <pre>
+ * header   int magic, version, nodeCount, polyCount, stringCount
+ * nodes    nodeCount records of
+ *          float nx, ny, d
+ *          int behind, front, polyStart, polyEnd
+ *          float minX, minY, maxX, maxY
+ * polys    polyCount records of
+ *          float startX, startY, endX, endY
+ *          int name
+ * strings  int offsets[stringCount + 1], then the UTF-8 bytes of every name
+ * </pre>
+ * Nodes are in the pre-order of <code>CompiledBSPTree</code>, so every child index is
+ * greater than its parent's and missing children are <code>CompiledBSPTree.NONE</code>.
+ * Each node's <code>Polygon</code>s are the records from <code>polyStart</code> up to
+ * <code>polyEnd</code>, and its bounds cover its whole subtree. A <code>Polygon</code>'s
+ * name is an index into the string table, or <code>-1</code> if it has none. Name
+ * <code>i</code> is the bytes from <code>offsets[i]</code> up to
+ * <code>offsets[i + 1]</code>, relative to the end of the offsets.
+ */
+public class BSPFile {
+
+    /**
+     * The first 4 bytes of every file, <code>"BSPT"</code> in ASCII.
+     */
+    public static final int MAGIC = 0x54505342;
+
+    /**
+     * The version of the format written by this class, and the only one it reads.
+     */
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 20;
+
+    static final int NODE_SIZE = 44;
+    static final int NODE_PLANE_X = 0, NODE_PLANE_Y = 4, NODE_PLANE_D = 8;
+    static final int NODE_BEHIND = 12, NODE_FRONT = 16, NODE_POLY_START = 20, NODE_POLY_END = 24;
+    static final int NODE_MIN_X = 28, NODE_MIN_Y = 32, NODE_MAX_X = 36, NODE_MAX_Y = 40;
+
+    static final int POLY_SIZE = 20;
+    static final int POLY_START_X = 0, POLY_START_Y = 4, POLY_END_X = 8, POLY_END_Y = 12, POLY_NAME = 16;
+
+    /**
+     * Compiles a <code>BSPTree</code> and writes it to a file.
+     *
+     * @param tree The <code>BSPTree</code> to write.
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(BSPTree tree, Path path) throws IOException {
+        write(tree.compile(), path);
+    }
+
+    /**
+     * Writes a <code>CompiledBSPTree</code> to a file. Names shared by several
+     * <code>Polygon</code>s are stored once.
+     *
+     * @param tree The <code>CompiledBSPTree</code> to write.
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException If the file could not be written or the tree is too large for
+     *                     the format.
+     */
+    public static void write(CompiledBSPTree tree, Path path) throws IOException {
+        int nodeCount = tree.getNodeCount();
+        int polyCount = tree.getPolygonCount();
+
+        // Build the string table
+        Map<String, Integer> indices = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] names = new int[polyCount];
+        long stringBytes = 0;
+        for (int i = 0; i < polyCount; i++) {
+            String name = tree.polys[i].getName();
+            if (name == null) {
+                names[i] = -1;
+                continue;
+            }
+
+            Integer index = indices.get(name);
+            if (index == null) {
+                index = strings.size();
+                indices.put(name, index);
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                strings.add(bytes);
+                stringBytes += bytes.length;
+            }
+            names[i] = index;
+        }
+
+        long size = HEADER_SIZE + (long)nodeCount * NODE_SIZE + (long)polyCount * POLY_SIZE
+                + 4L * (strings.size() + 1) + stringBytes;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Tree is too large to write: " + size + " bytes");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(polyCount).putInt(strings.size());
+
+        for (int i = 0; i < nodeCount; i++) {
+            buffer.putFloat(tree.planeX[i]).putFloat(tree.planeY[i]).putFloat(tree.planeD[i]);
+            buffer.putInt(tree.behind[i]).putInt(tree.front[i]).putInt(tree.polyStart[i]).putInt(tree.polyEnd[i]);
+            buffer.putFloat(tree.minX[i]).putFloat(tree.minY[i]).putFloat(tree.maxX[i]).putFloat(tree.maxY[i]);
+        }
+
+        for (int i = 0; i < polyCount; i++) {
+            buffer.putFloat(tree.startX[i]).putFloat(tree.startY[i]).putFloat(tree.endX[i]).putFloat(tree.endY[i]);
+            buffer.putInt(names[i]);
+        }
+
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] bytes : strings) {
+            offset += bytes.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] bytes : strings)
+            buffer.put(bytes);
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Memory-maps a file written by <code>write</code>. The file is validated once, then
+     * traversed in place by the returned tree without being read into objects.
+     *
+     * @param path The file to map.
+     * @return A new <code>MappedBSPTree</code> over the file.
+     * @throws IOException If the file could not be mapped, is not in this format, or is
+     *                     malformed.
+     */
+    public static MappedBSPTree map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File is too large to map: " + size + " bytes");
+
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedBSPTree(buffer);
+        }
+    }
+
+    private BSPFile() { }
+}
@@ -0,0 +1,229 @@
+package com.evrhel.bsp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines a single node of a <code>BSPTree</code>. A node stores its splitting
+ * <code>Plane</code> along with every <code>Polygon</code> lying on that plane.
+ * <p>
+ * In a lazily built tree, a child may be pending: only the <code>Polygon</code>s it will
+ * be built from are kept, and <code>behind()</code> and <code>front()</code> build it on
+ * first access. Any number of threads may race to build the same child; each builds its
+ * own, and the first to install it with a compare-and-set wins.
+ */
+class BSPNode {
+
+    private static final VarHandle BEHIND, FRONT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BEHIND = lookup.findVarHandle(BSPNode.class, "behind", BSPNode.class);
+            FRONT = lookup.findVarHandle(BSPNode.class, "front", BSPNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Builds the pending children of nodes in a lazily built tree.
+     */
+    interface SubtreeBuilder {
+
+        /**
+         * Builds a node from the <code>Polygon</code>s of a pending child. The node
+         * must be complete before it is returned, as other threads may see it as soon as
+         * it is installed.
+         *
+         * @param parent The node the child belongs to.
+         * @param polys The non-empty <code>Polygon</code>s of the child, not to be modified.
+         * @return The new node.
+         */
+        BSPNode build(BSPNode parent, List<Polygon> polys);
+    }
+
+    final Plane plane;
+    final List<Polygon> polys;
+    BSPNode parent;
+    BSPNode behind, front;
+    int size; // number of polygons in this node's subtree
+    int id; // identifier unique within the tree
+    float minX, minY, maxX, maxY; // bounds of the polygons in this node's subtree
+    int builtSize; // size when this subtree was last built
+    float builtImbalance; // imbalance when this subtree was last built
+    int changes; // polygons inserted into or removed from this subtree since it was built
+    SubtreeBuilder builder; // builds pending children, null unless lazily built
+    volatile List<Polygon> pendingBehind, pendingFront; // polygons of children not yet built
+
+    BSPNode(Plane plane) {
+        this.plane = plane;
+        this.polys = new ArrayList<>();
+    }
+
+    void add(Polygon poly) {
+        this.polys.add(poly);
+    }
+
+    /**
+     * Recomputes the polygon count and bounds of this node's subtree from its own
+     * polygons and those already computed for its children. Pending children count the
+     * <code>Polygon</code>s they will be built from, before any are split.
+     */
+    void update() {
+        this.minX = this.minY = Float.POSITIVE_INFINITY;
+        this.maxX = this.maxY = Float.NEGATIVE_INFINITY;
+        includeAll(this.polys);
+
+        if (this.behind != null)
+            include(this.behind.minX, this.behind.minY, this.behind.maxX, this.behind.maxY);
+        else if (this.pendingBehind != null)
+            includeAll(this.pendingBehind);
+
+        if (this.front != null)
+            include(this.front.minX, this.front.minY, this.front.maxX, this.front.maxY);
+        else if (this.pendingFront != null)
+            includeAll(this.pendingFront);
+
+        updateSize();
+    }
+
+    /**
+     * Recomputes the polygon count of this node's subtree, leaving its bounds, which
+     * building pending children does not change.
+     */
+    void updateSize() {
+        int size = this.polys.size();
+        if (this.behind != null)
+            size += this.behind.size;
+        else if (this.pendingBehind != null)
+            size += this.pendingBehind.size();
+
+        if (this.front != null)
+            size += this.front.size;
+        else if (this.pendingFront != null)
+            size += this.pendingFront.size();
+        this.size = size;
+    }
+
+    /**
+     * Records the current shape of this node's subtree as freshly built.
+     */
+    void built() {
+        this.builtSize = this.size;
+        this.builtImbalance = imbalance();
+        this.changes = 0;
+    }
+
+    /**
+     * Returns the fraction of this node's subtree held by its larger child.
+     *
+     * @return The fraction, in <code>[0, 1]</code>.
+     */
+    float imbalance() {
+        if (this.size == 0) return 0;
+        int behindSize = this.behind != null ? this.behind.size : 0;
+        int frontSize = this.front != null ? this.front.size : 0;
+        return (float)Math.max(behindSize, frontSize) / this.size;
+    }
+
+    /**
+     * Returns whether this node holds no <code>Polygon</code>s and has no children,
+     * so it can be unlinked from the tree.
+     *
+     * @return <code>true</code> if this node is empty.
+     */
+    boolean isEmpty() {
+        return this.polys.isEmpty() && this.behind == null && this.front == null
+                && this.pendingBehind == null && this.pendingFront == null;
+    }
+
+    private void includeAll(List<Polygon> polys) {
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            Polygon poly = polys.get(i);
+            include(Math.min(poly.getStartX(), poly.getEndX()), Math.min(poly.getStartY(), poly.getEndY()),
+                    Math.max(poly.getStartX(), poly.getEndX()), Math.max(poly.getStartY(), poly.getEndY()));
+        }
+    }
+
+    private void include(float minX, float minY, float maxX, float maxY) {
+        this.minX = Math.min(this.minX, minX);
+        this.minY = Math.min(this.minY, minY);
+        this.maxX = Math.max(this.maxX, maxX);
+        this.maxY = Math.max(this.maxY, maxY);
+    }
+
+    /**
+     * Returns the squared distance from a point to the bounds of this node's subtree.
+     *
+     * @return The squared distance, 0 if the point is within the bounds.
+     */
+    float boundsDistanceSquared(float x, float y) {
+        float dx = Math.max(0, Math.max(this.minX - x, x - this.maxX));
+        float dy = Math.max(0, Math.max(this.minY - y, y - this.maxY));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the child of this node behind its plane, building it first if it is
+     * pending.
+     *
+     * @return The behind child, or <code>null</code> if none exists.
+     */
+    BSPNode behind() {
+        BSPNode child = (BSPNode)BEHIND.getAcquire(this);
+        if (child == null && this.builder != null)
+            child = resolve(RelativePosition.BEHIND, this.builder);
+        return child;
+    }
+
+    /**
+     * Returns the child of this node in front of its plane, building it first if it is
+     * pending.
+     *
+     * @return The front child, or <code>null</code> if none exists.
+     */
+    BSPNode front() {
+        BSPNode child = (BSPNode)FRONT.getAcquire(this);
+        if (child == null && this.builder != null)
+            child = resolve(RelativePosition.FRONT, this.builder);
+        return child;
+    }
+
+    /**
+     * Returns the polygons a child will be built from.
+     *
+     * @param side <code>RelativePosition.BEHIND</code> or <code>RelativePosition.FRONT</code>.
+     * @return The polygons, or <code>null</code> if the child is not pending.
+     */
+    List<Polygon> pending(int side) {
+        return side == RelativePosition.BEHIND ? this.pendingBehind : this.pendingFront;
+    }
+
+    /**
+     * Builds a child if it is still pending and installs it, unless another thread
+     * installs one first.
+     *
+     * @param side <code>RelativePosition.BEHIND</code> or <code>RelativePosition.FRONT</code>.
+     * @param builder Builds the child from its polygons.
+     * @return The child installed, or <code>null</code> if none exists.
+     */
+    BSPNode resolve(int side, SubtreeBuilder builder) {
+        VarHandle handle = side == RelativePosition.BEHIND ? BEHIND : FRONT;
+        List<Polygon> polys = pending(side);
+        if (polys == null)
+            return (BSPNode)handle.getAcquire(this);
+
+        BSPNode child = builder.build(this, polys);
+        if (!handle.compareAndSet(this, null, child))
+            return (BSPNode)handle.getAcquire(this);
+
+        if (side == RelativePosition.BEHIND)
+            this.pendingBehind = null;
+        else
+            this.pendingFront = null;
+        return child;
+    }
+}
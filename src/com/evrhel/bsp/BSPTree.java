@@ -1,14 +1,36 @@
 package com.evrhel.bsp;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Defines a BSP tree.
  */
 public class BSPTree implements Iterable<Polygon> {
 
-    private final BSPNode root;
+    /**
+     * Subtrees smaller than this are never rebuilt for being unbalanced, and are
+     * treated as this large when deciding whether they changed enough to rebuild.
+     */
+    private static final int REBUILD_MINIMUM = 16;
+
+    private static final int ORDER_TASK_SIZE = 8; // viewpoints ordered by each task of a batch
+
+    private BSPNode root;
+    private final BuildOptions options;
     private int polyCount;
+    private int nodeCount;
+    private int nextId; // next unused node identifier
+    private int modCount; // number of modifications, for invalidating iterators and caches
+    private int inputCount; // number of polygons built from or inserted, less those removed
+    private long buildNanos; // time taken by the initial build
+    private volatile LazyBuilder lazy; // builds pending subtrees, null once none are left
 
     /**
      * Creates a BSP tree from a <code>List</code> of <code>Polygon</code>s.
@@ -16,7 +38,38 @@ public class BSPTree implements Iterable<Polygon> {
      * @param polys The <code>Polygon</code>s to generate the BSP tree from.
      */
     public BSPTree(List<Polygon> polys) {
-        this.root = genTree(new LinkedList<>(polys));
+        this(polys, new BuildOptions());
+    }
+
+    /**
+     * Creates a BSP tree from a <code>List</code> of <code>Polygon</code>s using the
+     * given <code>BuildOptions</code>.
+     *
+     * @param polys The <code>Polygon</code>s to generate the BSP tree from.
+     * @param options The options controlling how the tree is built.
+     */
+    public BSPTree(List<Polygon> polys, BuildOptions options) {
+        BuildEvent event = new BuildEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        this.options = new BuildOptions(options);
+        if (this.options.isLazy() && !polys.isEmpty()) {
+            LazyBuilder lazy = new LazyBuilder();
+            this.root = lazy.build(null, new ArrayList<>(polys));
+            this.nodeCount = 1;
+            this.lazy = lazy;
+        } else {
+            this.root = build(new ArrayList<>(polys));
+            this.nodeCount = number(this.root, 0);
+            this.nextId = this.nodeCount;
+        }
+        this.polyCount = this.root != null ? this.root.size : 0;
+        this.inputCount = polys.size();
+
+        this.buildNanos = System.nanoTime() - start;
+        event.end();
+        commit(event, polys.size(), this.root, this.nodeCount, false);
     }
 
     /**
@@ -25,9 +78,522 @@ public class BSPTree implements Iterable<Polygon> {
      * @return The <code>Polygon</code> count.
      */
     public int getPolygonCount() {
+        materialize();
         return this.polyCount;
     }
 
+    /**
+     * Returns the depth of this tree, the number of nodes on its longest path from the
+     * root.
+     *
+     * @return The depth, 0 if this tree is empty.
+     * @see #getStatistics()
+     */
+    public int getDepth() {
+        return getStatistics().getMaxDepth();
+    }
+
+    /**
+     * Returns statistics on the shape of this tree and the cost of building it. This
+     * walks every node, without recursing, so it is safe on degenerate trees as deep as
+     * they are large.
+     *
+     * @return A new <code>TreeStatistics</code>.
+     */
+    public TreeStatistics getStatistics() {
+        materialize();
+        return statistics(this.root, this.polyCount, this.inputCount, this.buildNanos);
+    }
+
+    /**
+     * Inserts a <code>Polygon</code> without rebuilding the tree. The
+     * <code>Polygon</code> is pushed down from the root, split by every plane it crosses
+     * on the way, and each fragment is stored at the node whose plane it lies on or in a
+     * new leaf node where it leaves the tree.
+     * <p>
+     * Every node counts the fragments inserted into and removed from its subtree. The
+     * highest subtree along the way which has changed by more than
+     * <code>BuildOptions.getRebuildThreshold()</code> of its size, or which has become
+     * more unbalanced than <code>BuildOptions.getRebuildImbalance()</code>, is rebuilt
+     * from the fragments it holds.
+     * <p>
+     * Cell identifiers may change and iterators over this tree become invalid. The tree
+     * must not be queried while it is being modified.
+     *
+     * @param poly The <code>Polygon</code> to insert, which must not already be in this
+     *             tree.
+     */
+    public void insert(Polygon poly) {
+        if (poly == null)
+            throw new NullPointerException("poly");
+        materialize();
+
+        List<BSPNode> rebuild = new ArrayList<>();
+        if (this.root == null)
+            this.root = newLeaf(poly, null);
+        else
+            insert(this.root, poly, rebuild);
+        this.inputCount++;
+        modified(rebuild);
+    }
+
+    /**
+     * Removes a <code>Polygon</code> along with every fragment split from it without
+     * rebuilding the tree. Only subtrees whose bounds and planes admit the
+     * <code>Polygon</code> are searched. Nodes left with no <code>Polygon</code>s and no
+     * children are unlinked, and nodes left with no <code>Polygon</code>s but with
+     * children keep partitioning space until their subtree is rebuilt, as described by
+     * <code>insert(Polygon)</code>.
+     * <p>
+     * Cell identifiers may change and iterators over this tree become invalid. The tree
+     * must not be queried while it is being modified.
+     *
+     * @param poly The <code>Polygon</code> to remove. Passing a fragment returned by this
+     *             tree removes the <code>Polygon</code> it was split from.
+     * @return <code>true</code> if anything was removed.
+     */
+    public boolean remove(Polygon poly) {
+        if (poly == null)
+            throw new NullPointerException("poly");
+        materialize();
+        if (this.root == null)
+            return false;
+
+        Polygon origin = poly.origin;
+
+        // Fragments lie on the origin's line up to rounding of their endpoints
+        float scale = Math.max(Math.max(Math.abs(origin.getStartX()), Math.abs(origin.getStartY())),
+                Math.max(Math.abs(origin.getEndX()), Math.abs(origin.getEndY())));
+        float slack = 1e-5f * (1 + scale);
+
+        List<BSPNode> rebuild = new ArrayList<>();
+        if (remove(this.root, origin, slack, rebuild) == 0)
+            return false;
+
+        if (this.root.isEmpty()) {
+            this.root = null;
+            this.nodeCount = 0;
+            rebuild.clear();
+        }
+        this.inputCount--;
+        modified(rebuild);
+        return true;
+    }
+
+    /**
+     * Returns the identifier of the leaf cell containing a point. A cell is one of the
+     * convex regions left empty by the tree: a missing child of some node. Points lying
+     * exactly on a node's plane are placed in front of it. Locating a point costs one
+     * plane test per level of the tree and performs no allocation.
+     * <p>
+     * Identifiers are stable until this tree is next modified and are always less than
+     * <code>getCellLimit()</code>, so they can be used to index arrays.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The cell identifier.
+     */
+    public int locate(float x, float y) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        int cell = locate(this.root, x, y);
+        TreeMetrics.endQuery(event, "locate", this);
+        return cell;
+    }
+
+    private static int locate(BSPNode node, float x, float y) {
+        if (node == null) return 0;
+
+        while (true) {
+            TreeMetrics.nodeVisited();
+            TreeMetrics.planeTested();
+
+            BSPNode next;
+            int side;
+            if (node.plane.distanceTo(x, y) < 0) {
+                next = node.behind();
+                side = RelativePosition.BEHIND;
+            } else {
+                next = node.front();
+                side = RelativePosition.FRONT;
+            }
+
+            if (next == null)
+                return cellOf(node, side);
+            node = next;
+        }
+    }
+
+    /**
+     * Returns the leaf cell containing a point along with the path of plane sides
+     * taken to reach it.
+     *
+     * @param point The point.
+     * @return The <code>PointLocation</code> of <code>point</code>.
+     * @see #locate(float, float)
+     */
+    public PointLocation locate(Vector2 point) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        List<Plane> planes = new ArrayList<>();
+        int[] sides = new int[16];
+
+        BSPNode node = this.root;
+        int cell = 0;
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            TreeMetrics.planeTested();
+
+            int side = node.plane.distanceTo(point.x, point.y) < 0 ? RelativePosition.BEHIND : RelativePosition.FRONT;
+            if (planes.size() == sides.length)
+                sides = Arrays.copyOf(sides, sides.length * 2);
+            sides[planes.size()] = side;
+            planes.add(node.plane);
+
+            BSPNode next = side == RelativePosition.BEHIND ? node.behind() : node.front();
+            if (next == null)
+                cell = cellOf(node, side);
+            node = next;
+        }
+
+        TreeMetrics.endQuery(event, "locatePath", this);
+        return new PointLocation(cell, planes.toArray(new Plane[0]), Arrays.copyOf(sides, planes.size()));
+    }
+
+    /**
+     * Locates the leaf cells containing a batch of points.
+     *
+     * @param x The x-coordinates of the points.
+     * @param y The y-coordinates of the points.
+     * @param offset The index of the first point to locate.
+     * @param count The number of points to locate.
+     * @param dest Receives the cell identifier of each point, at the same index as the point.
+     * @see #locate(float, float)
+     */
+    public void locate(float[] x, float[] y, int offset, int count, int[] dest) {
+        for (int i = offset, end = offset + count; i < end; i++)
+            dest[i] = locate(x[i], y[i]);
+    }
+
+    /**
+     * Returns an exclusive upper bound on the cell identifiers returned by
+     * <code>locate</code>. A lazily built tree first builds every pending subtree, as
+     * the bound depends on them.
+     *
+     * @return The bound.
+     */
+    public int getCellLimit() {
+        materialize();
+        return Math.max(1, this.nextId * 2);
+    }
+
+    /**
+     * Finds the first <code>Polygon</code> hit by a ray. Nodes are visited front-to-back
+     * along the ray and the search stops at the first hit, so only the nodes the ray
+     * passes through before the hit are tested.
+     *
+     * @param origin The origin of the ray.
+     * @param direction The direction of the ray, need not be normalized.
+     * @param maxDistance The maximum distance along the ray to search, in multiples of
+     *                    the length of <code>direction</code>.
+     * @return The <code>RayHit</code>, or <code>null</code> if nothing was hit.
+     */
+    public RayHit raycast(Vector2 origin, Vector2 direction, float maxDistance) {
+        RayHit hit = new RayHit();
+        return raycast(origin.x, origin.y, direction.x, direction.y, maxDistance, hit) ? hit : null;
+    }
+
+    /**
+     * Finds the first <code>Polygon</code> hit by a ray without allocating.
+     *
+     * @param originX The x-coordinate of the origin of the ray.
+     * @param originY The y-coordinate of the origin of the ray.
+     * @param dirX The x-component of the direction of the ray.
+     * @param dirY The y-component of the direction of the ray.
+     * @param maxDistance The maximum distance along the ray to search, in multiples of
+     *                    the length of the direction.
+     * @param hit Receives the hit. Its <code>Polygon</code> is <code>null</code> if
+     *            nothing was hit.
+     * @return <code>true</code> if a <code>Polygon</code> was hit.
+     * @see #raycast(Vector2, Vector2, float)
+     */
+    public boolean raycast(float originX, float originY, float dirX, float dirY, float maxDistance, RayHit hit) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        hit.clear();
+        boolean result = RayCaster.cast(this.root, originX, originY, dirX, dirY, 0, maxDistance, hit);
+        TreeMetrics.endQuery(event, "raycast", this);
+        return result;
+    }
+
+    /**
+     * Casts a batch of rays, all with the same maximum distance.
+     *
+     * @param originX The x-coordinates of the origins of the rays.
+     * @param originY The y-coordinates of the origins of the rays.
+     * @param dirX The x-components of the directions of the rays.
+     * @param dirY The y-components of the directions of the rays.
+     * @param maxDistance The maximum distance along each ray to search.
+     * @param offset The index of the first ray to cast.
+     * @param count The number of rays to cast.
+     * @param hits Receives the hit of each ray, at the same index as the ray. Missing
+     *             elements are created, existing ones are reused.
+     * @return The number of rays which hit a <code>Polygon</code>.
+     * @see #raycast(float, float, float, float, float, RayHit)
+     */
+    public int raycast(float[] originX, float[] originY, float[] dirX, float[] dirY, float maxDistance,
+                       int offset, int count, RayHit[] hits) {
+        int hitCount = 0;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            if (hits[i] == null)
+                hits[i] = new RayHit();
+            if (raycast(originX[i], originY[i], dirX[i], dirY[i], maxDistance, hits[i]))
+                hitCount++;
+        }
+        return hitCount;
+    }
+
+    /**
+     * Returns whether the segment between two points is unobstructed by every
+     * <code>Polygon</code> in this tree. The search stops at the first obstruction.
+     *
+     * @param from The first point.
+     * @param to The second point.
+     * @return <code>true</code> if no <code>Polygon</code> touches the segment.
+     */
+    public boolean isVisible(Vector2 from, Vector2 to) {
+        return isVisible(from.x, from.y, to.x, to.y);
+    }
+
+    /**
+     * Returns whether the segment between two points is unobstructed without allocating.
+     *
+     * @param fromX The x-coordinate of the first point.
+     * @param fromY The y-coordinate of the first point.
+     * @param toX The x-coordinate of the second point.
+     * @param toY The y-coordinate of the second point.
+     * @return <code>true</code> if no <code>Polygon</code> touches the segment.
+     * @see #isVisible(Vector2, Vector2)
+     */
+    public boolean isVisible(float fromX, float fromY, float toX, float toY) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        boolean result = !RayCaster.cast(this.root, fromX, fromY, toX - fromX, toY - fromY, 0, 1, null);
+        TreeMetrics.endQuery(event, "isVisible", this);
+        return result;
+    }
+
+    /**
+     * Tests a batch of segments for obstructions.
+     *
+     * @param fromX The x-coordinates of the first points.
+     * @param fromY The y-coordinates of the first points.
+     * @param toX The x-coordinates of the second points.
+     * @param toY The y-coordinates of the second points.
+     * @param offset The index of the first segment to test.
+     * @param count The number of segments to test.
+     * @param dest Receives whether each segment is unobstructed, at the same index as
+     *             the segment.
+     * @see #isVisible(float, float, float, float)
+     */
+    public void isVisible(float[] fromX, float[] fromY, float[] toX, float[] toY,
+                          int offset, int count, boolean[] dest) {
+        for (int i = offset, end = offset + count; i < end; i++)
+            dest[i] = isVisible(fromX[i], fromY[i], toX[i], toY[i]);
+    }
+
+    /**
+     * Returns every <code>Polygon</code> touching an axis-aligned rectangle. Subtrees
+     * whose bounds miss the rectangle, or which lie on the far side of a plane the
+     * rectangle does not cross, are skipped entirely.
+     *
+     * @param min The minimum coordinates of the rectangle.
+     * @param max The maximum coordinates of the rectangle.
+     * @return A new <code>List</code> of the <code>Polygon</code>s.
+     */
+    public List<Polygon> queryRectangle(Vector2 min, Vector2 max) {
+        List<Polygon> result = new ArrayList<>();
+        queryRectangle(min.x, min.y, max.x, max.y, result::add);
+        return result;
+    }
+
+    /**
+     * Visits every <code>Polygon</code> touching an axis-aligned rectangle, in an
+     * arbitrary order.
+     *
+     * @param minX The minimum x-coordinate of the rectangle.
+     * @param minY The minimum y-coordinate of the rectangle.
+     * @param maxX The maximum x-coordinate of the rectangle.
+     * @param maxY The maximum y-coordinate of the rectangle.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every matching <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the query.
+     * @see #queryRectangle(Vector2, Vector2)
+     */
+    public boolean queryRectangle(float minX, float minY, float maxX, float maxY, PolygonVisitor visitor) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        boolean result = RangeQuery.rectangle(this.root, minX, minY, maxX, maxY, visitor);
+        TreeMetrics.endQuery(event, "queryRectangle", this);
+        return result;
+    }
+
+    /**
+     * Returns every <code>Polygon</code> touching a circle. Subtrees whose bounds miss
+     * the circle, or which lie on the far side of a plane the circle does not cross,
+     * are skipped entirely.
+     *
+     * @param center The center of the circle.
+     * @param radius The radius of the circle.
+     * @return A new <code>List</code> of the <code>Polygon</code>s.
+     */
+    public List<Polygon> queryCircle(Vector2 center, float radius) {
+        List<Polygon> result = new ArrayList<>();
+        queryCircle(center.x, center.y, radius, result::add);
+        return result;
+    }
+
+    /**
+     * Visits every <code>Polygon</code> touching a circle, in an arbitrary order.
+     *
+     * @param x The x-coordinate of the center of the circle.
+     * @param y The y-coordinate of the center of the circle.
+     * @param radius The radius of the circle.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every matching <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the query.
+     * @see #queryCircle(Vector2, float)
+     */
+    public boolean queryCircle(float x, float y, float radius, PolygonVisitor visitor) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        boolean result = RangeQuery.circle(this.root, x, y, radius, visitor);
+        TreeMetrics.endQuery(event, "queryCircle", this);
+        return result;
+    }
+
+    /**
+     * Finds the <code>Polygon</code> closest to a point.
+     *
+     * @param point The point.
+     * @return The <code>ClosestPolygon</code>, or <code>null</code> if this tree is empty.
+     */
+    public ClosestPolygon nearest(Vector2 point) {
+        ClosestPolygon result = new ClosestPolygon();
+        return nearest(point.x, point.y, Float.POSITIVE_INFINITY, result) ? result : null;
+    }
+
+    /**
+     * Finds the <code>Polygon</code> closest to a point within a maximum distance,
+     * without allocating. The side of each plane containing the point is searched first,
+     * and the far side is skipped when the plane is farther away than the closest
+     * <code>Polygon</code> found so far.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param maxDistance The maximum distance to search, may be infinite.
+     * @param result Receives the closest <code>Polygon</code>. Its <code>Polygon</code>
+     *               is <code>null</code> if none was found.
+     * @return <code>true</code> if a <code>Polygon</code> was found.
+     * @see #nearest(Vector2)
+     */
+    public boolean nearest(float x, float y, float maxDistance, ClosestPolygon result) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        result.set(null, maxDistance * maxDistance, Float.NaN, Float.NaN);
+        NearestQuery.nearest(this.root, x, y, result);
+        TreeMetrics.endQuery(event, "nearest", this);
+        return result.getPolygon() != null;
+    }
+
+    /**
+     * Finds the <code>k</code> <code>Polygon</code>s closest to a point.
+     *
+     * @param point The point.
+     * @param k The maximum number of <code>Polygon</code>s to find, must be positive.
+     * @return A new <code>List</code> of at most <code>k</code> <code>ClosestPolygon</code>s,
+     * closest first.
+     */
+    public List<ClosestPolygon> nearest(Vector2 point, int k) {
+        return nearest(point, k, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the <code>k</code> <code>Polygon</code>s closest to a point within a
+     * maximum distance.
+     *
+     * @param point The point.
+     * @param k The maximum number of <code>Polygon</code>s to find, must be positive.
+     * @param maxDistance The maximum distance to search, may be infinite.
+     * @return A new <code>List</code> of at most <code>k</code> <code>ClosestPolygon</code>s,
+     * closest first.
+     */
+    public List<ClosestPolygon> nearest(Vector2 point, int k, float maxDistance) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        QueryEvent event = TreeMetrics.beginQuery();
+        List<ClosestPolygon> result = NearestQuery.nearest(this.root, point.x, point.y, k, maxDistance);
+        TreeMetrics.endQuery(event, "nearestK", this);
+        return result;
+    }
+
+    /**
+     * Sweeps a circle from one point to another and finds the first <code>Polygon</code>
+     * it touches. Each node's plane is offset by the radius during the search, so
+     * subtrees the circle cannot reach are rejected without testing their
+     * <code>Polygon</code>s.
+     *
+     * @param from The center of the circle at the start of the sweep.
+     * @param to The center of the circle at the end of the sweep.
+     * @param radius The radius of the circle.
+     * @return The <code>SweepHit</code>, or <code>null</code> if the circle touched nothing.
+     */
+    public SweepHit sweepCircle(Vector2 from, Vector2 to, float radius) {
+        SweepHit hit = new SweepHit();
+        return sweepCircle(from.x, from.y, to.x, to.y, radius, hit) ? hit : null;
+    }
+
+    /**
+     * Sweeps a circle from one point to another without allocating.
+     *
+     * @param fromX The x-coordinate of the center at the start of the sweep.
+     * @param fromY The y-coordinate of the center at the start of the sweep.
+     * @param toX The x-coordinate of the center at the end of the sweep.
+     * @param toY The y-coordinate of the center at the end of the sweep.
+     * @param radius The radius of the circle.
+     * @param hit Receives the first impact. Its <code>Polygon</code> is <code>null</code>
+     *            if the circle touched nothing.
+     * @return <code>true</code> if a <code>Polygon</code> was touched.
+     * @see #sweepCircle(Vector2, Vector2, float)
+     */
+    public boolean sweepCircle(float fromX, float fromY, float toX, float toY, float radius, SweepHit hit) {
+        QueryEvent event = TreeMetrics.beginQuery();
+        hit.set(null, Float.POSITIVE_INFINITY, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+        SweepQuery.sweep(this.root, fromX, fromY, toX - fromX, toY - fromY, radius, 0, 1, hit);
+        TreeMetrics.endQuery(event, "sweepCircle", this);
+        return hit.getPolygon() != null;
+    }
+
+    /**
+     * Returns the visible fragments of the <code>Polygon</code>s of this tree from a
+     * viewpoint, nearest first. The tree is traversed front-to-back while a 1D buffer of
+     * covered view angles is kept: <code>Polygon</code>s are cut down to the parts of
+     * them nearer walls leave uncovered, subtrees whose bounds fall in covered angles
+     * are skipped, and the traversal stops once the whole field of view is covered.
+     * <p>
+     * <code>Polygon</code>s which are entirely visible are returned as they are. Partly
+     * visible ones are returned as new <code>Polygon</code>s with the same name and normal,
+     * leaving out slivers too narrow to see where they meet a nearer wall.
+     *
+     * @param position The viewpoint.
+     * @param direction The view direction, need not be normalized.
+     * @param fov The field of view in degrees, in <code>(0, 180)</code>.
+     * @return A new <code>List</code> of the visible <code>Polygon</code>s.
+     */
+    public List<Polygon> visibleSet(Vector2 position, Vector2 direction, float fov) {
+        if (!(fov > 0 && fov < 180))
+            throw new IllegalArgumentException("fov must be in (0, 180)");
+
+        QueryEvent event = TreeMetrics.beginQuery();
+        List<Polygon> result = new ArrayList<>();
+        new VisibilityQuery(position.x, position.y, direction.x, direction.y, fov, result).visit(this.root);
+        TreeMetrics.endQuery(event, "visibleSet", this);
+        return result;
+    }
+
     /**
      * Returns an iterator which returns <code>Polygon</code>s back-to-front
      * relative to the give position.
@@ -36,11 +602,155 @@ public class BSPTree implements Iterable<Polygon> {
      * @return A new <code>Iterator</code> over the <code>Polygon</code>s.
      */
     public Iterator<Polygon> iterator(Vector2 position) {
-        Queue<Polygon> polys = new LinkedList<>();
-        genPolyList(polys, position, this.root);
+        materialize();
+        List<Polygon> polys = new ArrayList<>(this.polyCount);
+        traverseBackToFront(position.x, position.y, polys::add);
         return polys.iterator();
     }
 
+    /**
+     * Visits the <code>Polygon</code>s of this tree back-to-front relative to a position,
+     * in the same order as <code>iterator(Vector2)</code>. The traversal streams straight
+     * from the tree and performs no allocation.
+     *
+     * @param position The position to determine the order of the traversal.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the traversal.
+     */
+    public boolean traverseBackToFront(Vector2 position, PolygonVisitor visitor) {
+        return traverseBackToFront(position.x, position.y, visitor);
+    }
+
+    /**
+     * Visits the <code>Polygon</code>s of this tree back-to-front relative to a position.
+     *
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the traversal.
+     * @see #traverseBackToFront(Vector2, PolygonVisitor)
+     */
+    public boolean traverseBackToFront(float x, float y, PolygonVisitor visitor) {
+        materialize();
+        QueryEvent event = TreeMetrics.beginQuery();
+        boolean result = backToFront(this.root, x, y, visitor);
+        TreeMetrics.endQuery(event, "traverseBackToFront", this);
+        return result;
+    }
+
+    /**
+     * Visits the <code>Polygon</code>s of this tree front-to-back relative to a position,
+     * in the reverse of the order of <code>iterator(Vector2)</code>. The traversal streams
+     * straight from the tree and performs no allocation.
+     *
+     * @param position The position to determine the order of the traversal.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the traversal.
+     */
+    public boolean traverseFrontToBack(Vector2 position, PolygonVisitor visitor) {
+        return traverseFrontToBack(position.x, position.y, visitor);
+    }
+
+    /**
+     * Visits the <code>Polygon</code>s of this tree front-to-back relative to a position.
+     *
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     * @param visitor The <code>PolygonVisitor</code> receiving the <code>Polygon</code>s.
+     * @return <code>true</code> if every <code>Polygon</code> was visited, or
+     * <code>false</code> if <code>visitor</code> stopped the traversal.
+     * @see #traverseFrontToBack(Vector2, PolygonVisitor)
+     */
+    public boolean traverseFrontToBack(float x, float y, PolygonVisitor visitor) {
+        materialize();
+        QueryEvent event = TreeMetrics.beginQuery();
+        boolean result = frontToBack(this.root, x, y, visitor);
+        TreeMetrics.endQuery(event, "traverseFrontToBack", this);
+        return result;
+    }
+
+    /**
+     * Writes the <code>Polygon</code>s of this tree back-to-front relative to a position
+     * into an array, in the same order as <code>iterator(Vector2)</code>. This performs
+     * no allocation.
+     *
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     * @param dest The destination array, must be able to hold <code>getPolygonCount()</code>
+     *             <code>Polygon</code>s.
+     * @return The number of <code>Polygon</code>s written to <code>dest</code>, fewer than
+     * <code>getPolygonCount()</code> if the position lies on the plane of some of them.
+     */
+    public int order(float x, float y, Polygon[] dest) {
+        materialize();
+        QueryEvent event = TreeMetrics.beginQuery();
+        int count = order(this.root, x, y, dest, 0);
+        TreeMetrics.endQuery(event, "order", this);
+        return count;
+    }
+
+    /**
+     * Orders the <code>Polygon</code>s of this tree back-to-front for a batch of
+     * positions in parallel, as <code>order(float, float, Polygon[])</code> does for one.
+     * The batch is divided into tasks of a few positions each, which are run on an
+     * <code>Executor</code> such as <code>ForkJoinPool.commonPool()</code> or, from JDK 21,
+     * one starting a virtual thread per task.
+     * <p>
+     * The destination arrays are reused from one batch to the next, so ordering the same
+     * number of positions again allocates nothing but the tasks. This tree must not be
+     * modified until the returned future completes.
+     *
+     * @param x The x-coordinates of the positions.
+     * @param y The y-coordinates of the positions.
+     * @param offset The index of the first position to order for.
+     * @param count The number of positions to order for.
+     * @param dest Receives the ordering for each position, at the same index as the
+     *             position. Missing arrays and arrays too short to hold
+     *             <code>getPolygonCount()</code> <code>Polygon</code>s are replaced.
+     * @param counts Receives the number of <code>Polygon</code>s in each ordering.
+     * @param executor The <code>Executor</code> running the tasks.
+     * @return A new <code>CompletableFuture</code> completing once every ordering is
+     * written, or exceptionally if any task failed.
+     */
+    public CompletableFuture<Void> order(float[] x, float[] y, int offset, int count, Polygon[][] dest, int[] counts,
+                                         Executor executor) {
+        if (executor == null)
+            throw new NullPointerException("executor");
+        Objects.checkFromIndexSize(offset, count, x.length);
+        Objects.checkFromIndexSize(offset, count, y.length);
+        Objects.checkFromIndexSize(offset, count, dest.length);
+        Objects.checkFromIndexSize(offset, count, counts.length);
+        materialize();
+
+        // Allocate up front, so tasks only ever write to their own elements
+        for (int i = offset, end = offset + count; i < end; i++) {
+            if (dest[i] == null || dest[i].length < this.polyCount)
+                dest[i] = new Polygon[this.polyCount];
+        }
+
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[(count + ORDER_TASK_SIZE - 1) / ORDER_TASK_SIZE];
+        for (int task = 0; task < tasks.length; task++) {
+            int start = offset + task * ORDER_TASK_SIZE, end = Math.min(start + ORDER_TASK_SIZE, offset + count);
+            tasks[task] = CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++)
+                    counts[i] = order(x[i], y[i], dest[i]);
+            }, executor);
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    /**
+     * Compiles this tree into a <code>CompiledBSPTree</code>.
+     *
+     * @return A new <code>CompiledBSPTree</code> with the same structure as this tree.
+     */
+    public CompiledBSPTree compile() {
+        return new CompiledBSPTree(this);
+    }
+
     /**
      * Returns an <code>Iterator</code> over this tree. The <code>Iterator</code> returns
      * <code>Polygon</code>s in an arbitrary order.
@@ -49,24 +759,219 @@ public class BSPTree implements Iterable<Polygon> {
      */
     @Override
     public Iterator<Polygon> iterator() {
+        materialize();
         return new BSPIterator();
     }
 
-    private BSPNode genTree(Queue<Polygon> polys) {
+    /**
+     * Returns a <code>Spliterator</code> over this tree, in the same order as
+     * <code>iterator()</code>. It splits at the children of nodes and reports exact
+     * sizes, so it parallelizes well.
+     *
+     * @return A new <code>Spliterator</code>.
+     */
+    @Override
+    public Spliterator<Polygon> spliterator() {
+        return new TreeSpliterator(this, null);
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> over the <code>Polygon</code>s of this tree,
+     * in an arbitrary order.
+     *
+     * @return A new <code>Stream</code>.
+     */
+    public Stream<Polygon> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel <code>Stream</code> over the <code>Polygon</code>s of this tree,
+     * in an arbitrary order. The stream divides the work between the subtrees of nodes.
+     *
+     * @return A new <code>Stream</code>.
+     */
+    public Stream<Polygon> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Returns an ordered, sequential <code>Stream</code> over the <code>Polygon</code>s of
+     * this tree back-to-front relative to a position, in the same order as
+     * <code>iterator(Vector2)</code>. Unlike that iterator, it does not collect the
+     * ordering first, and it stays ordered when made parallel.
+     *
+     * @param position The position to determine the order of the <code>Stream</code>.
+     * @return A new <code>Stream</code>.
+     */
+    public Stream<Polygon> stream(Vector2 position) {
+        if (position == null)
+            throw new NullPointerException("position");
+        return StreamSupport.stream(new TreeSpliterator(this, position), false);
+    }
+
+    /**
+     * Returns the root node for operations over the whole tree, first building every
+     * pending subtree.
+     */
+    BSPNode getRoot() {
+        materialize();
+        return this.root;
+    }
+
+    /**
+     * Returns the number of times this tree has been modified, so dependent caches can
+     * tell when they are stale.
+     */
+    int getModCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Returns the number of nodes without building pending subtrees, so it only counts
+     * the root of a lazily built tree until the rest is built.
+     */
+    int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the number of fragments without building pending subtrees, so it counts
+     * the <code>Polygon</code>s of a lazily built tree before they are split until the
+     * rest is built.
+     */
+    int getFragmentCount() {
+        return this.polyCount;
+    }
+
+    /**
+     * Builds every subtree of a lazily built tree on an <code>Executor</code>, so that
+     * later queries and operations over the whole tree find it already built. Queries
+     * may run while the tree is being built, and build the subtrees they need
+     * themselves as usual.
+     *
+     * @param executor The <code>Executor</code> to build on.
+     * @return A new <code>CompletableFuture</code> completing once the whole tree is
+     * built, already complete if this tree was not built lazily or is already built.
+     * @see BuildOptions#setLazy(boolean)
+     */
+    public CompletableFuture<Void> warm(Executor executor) {
+        if (executor == null)
+            throw new NullPointerException("executor");
+        if (this.lazy == null)
+            return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(this::materialize, executor);
+    }
+
+    /**
+     * Builds every pending subtree of a lazily built tree and brings the counts and
+     * identifiers of the tree up to date. Concurrent calls wait for the first, and
+     * queries may build subtrees concurrently.
+     */
+    private void materialize() {
+        LazyBuilder lazy = this.lazy;
+        if (lazy == null) return;
+
+        synchronized (lazy) {
+            if (this.lazy == null) return;
+
+            complete(this.root, lazy);
+            this.polyCount = this.root.size;
+            this.nodeCount = countNodes(this.root);
+            this.nextId = lazy.ids.get();
+            this.lazy = null;
+        }
+    }
+
+    /**
+     * Builds the pending children of a subtree, all at once rather than a level at a
+     * time, and recounts its polygons.
+     */
+    private void complete(BSPNode node, LazyBuilder lazy) {
+        for (int side = RelativePosition.BEHIND; side <= RelativePosition.FRONT; side++) {
+            BSPNode child = node.resolve(side, (parent, polys) -> {
+                BSPNode subtree = build(new ArrayList<>(polys));
+                subtree.parent = parent;
+                number(subtree, lazy.ids.getAndAdd(countNodes(subtree)));
+                return subtree;
+            });
+            if (child != null && child.builder != null)
+                complete(child, lazy);
+        }
+
+        // Fragments split off while building are only now counted; bounds are unchanged
+        node.updateSize();
+        node.built();
+        node.builder = null;
+    }
+
+    private static int cellOf(BSPNode node, int side) {
+        return node.id * 2 + side;
+    }
+
+    /**
+     * Assigns identifiers to a subtree in pre-order.
+     *
+     * @return The next unused identifier.
+     */
+    private static int number(BSPNode node, int next) {
+        if (node == null) return next;
+        node.id = next++;
+        next = number(node.behind(), next);
+        return number(node.front(), next);
+    }
+
+    private static int countNodes(BSPNode node) {
+        if (node == null) return 0;
+        return 1 + countNodes(node.behind()) + countNodes(node.front());
+    }
+
+    private BSPNode build(List<Polygon> polys) {
+        ForkJoinPool pool = this.options.getPool();
+        if (pool != null && polys.size() >= this.options.getParallelThreshold())
+            return pool.invoke(new BuildTask(polys));
+        return genTree(polys);
+    }
+
+    private BSPNode genTree(List<Polygon> polys) {
         if (polys.isEmpty()) return null;
 
+        List<Polygon> behind = new ArrayList<>(), front = new ArrayList<>();
+        BSPNode node = partition(polys, behind, front);
+        link(node, genTree(behind), genTree(front));
+        return node;
+    }
+
+    /**
+     * Chooses a splitting plane for a non-empty list of <code>Polygon</code>s and
+     * partitions the rest of them around it.
+     *
+     * @param polys The <code>Polygon</code>s to partition.
+     * @param behind Receives the <code>Polygon</code>s behind the plane.
+     * @param front Receives the <code>Polygon</code>s in front of the plane.
+     * @return A new node with no children holding the <code>Polygon</code>s on the plane.
+     */
+    private BSPNode partition(List<Polygon> polys, List<Polygon> behind, List<Polygon> front) {
         Polygon[] split = new Polygon[2];
-        Queue<Polygon> behind = new LinkedList<>(), front = new LinkedList<>();
 
-        Polygon rootPoly = polys.remove();
+        int rootIndex = this.options.getSplitter().select(polys, this.options.getClassifier());
+        if (rootIndex < 0 || rootIndex >= polys.size())
+            throw new IllegalStateException("Splitter chose an index out of range: " + rootIndex);
+
+        Polygon rootPoly = polys.get(rootIndex);
         Plane rootPlane = new Plane(rootPoly);
 
+        // Classify every polygon against the plane in one batch
+        int[] positions = new int[polys.size()];
+        new SegmentArrays(polys).classify(this.options.getClassifier(), rootPlane, 0, polys.size(), positions);
+
         BSPNode node = new BSPNode(rootPlane);
         node.add(rootPoly);
-        while (!polys.isEmpty()) {
-            Polygon child = polys.remove();
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            if (i == rootIndex) continue;
+            Polygon child = polys.get(i);
 
-            int pos = RelativePosition.positionOf(rootPlane, child);
+            int pos = positions[i];
             switch (pos) {
             case RelativePosition.BEHIND:
                 behind.add(child);
@@ -75,10 +980,18 @@ public class BSPTree implements Iterable<Polygon> {
                 front.add(child);
                 break;
             case RelativePosition.INTERSECT:
-                if (!child.split(rootPlane, split))
-                    throw new IllegalStateException("Polygon couldn't be split when it intersects plane");
-                behind.add(split[RelativePosition.BEHIND]);
-                front.add(split[RelativePosition.FRONT]);
+                switch (split(child, rootPlane, split)) {
+                case RelativePosition.BEHIND:
+                    behind.add(child);
+                    break;
+                case RelativePosition.FRONT:
+                    front.add(child);
+                    break;
+                default:
+                    behind.add(split[RelativePosition.BEHIND]);
+                    front.add(split[RelativePosition.FRONT]);
+                    break;
+                }
                 break;
             case RelativePosition.ON:
                 node.add(child);
@@ -86,67 +999,535 @@ public class BSPTree implements Iterable<Polygon> {
             }
         }
 
-        node.behind = genTree(behind);
-        if (node.behind != null)
-            node.behind.parent = node;
+        return node;
+    }
+
+    /**
+     * Splits a <code>Polygon</code> crossing a plane. A piece which would be a sliver is
+     * not split off; the <code>Polygon</code> goes whole to the side of the other piece
+     * instead, so inserting and rebuilding never accumulate slivers.
+     *
+     * @param dest Receives the pieces, indexed by side, if the <code>Polygon</code> is split.
+     * @return <code>RelativePosition.INTERSECT</code> if the <code>Polygon</code> was
+     * split, otherwise the side it belongs to whole.
+     */
+    private static int split(Polygon poly, Plane plane, Polygon[] dest) {
+        if (!poly.split(plane, dest))
+            throw new IllegalStateException("Polygon couldn't be split when it intersects plane");
 
-        node.front = genTree(front);
-        if (node.front != null)
-            node.front.parent = node;
+        Polygon behind = dest[RelativePosition.BEHIND], front = dest[RelativePosition.FRONT];
+        if (!behind.isSliver() && !front.isSliver())
+            return RelativePosition.INTERSECT;
+        return lengthSquared(behind) > lengthSquared(front) ? RelativePosition.BEHIND : RelativePosition.FRONT;
+    }
 
-        return node;
+    private static float lengthSquared(Polygon poly) {
+        float dx = poly.getEndX() - poly.getStartX(), dy = poly.getEndY() - poly.getStartY();
+        return dx * dx + dy * dy;
     }
 
-    private void genPolyList(Queue<Polygon> polyQueue, Vector2 position, BSPNode node) {
-        if (node == null) return;
+    private static void link(BSPNode node, BSPNode behind, BSPNode front) {
+        node.behind = behind;
+        if (behind != null)
+            behind.parent = node;
+
+        node.front = front;
+        if (front != null)
+            front.parent = node;
 
-        int relativePosition = RelativePosition.positionOf(node.plane, position);
-        switch (relativePosition) {
+        node.update();
+        node.built();
+    }
+
+    /**
+     * Inserts a <code>Polygon</code> into a subtree.
+     *
+     * @param rebuild Receives the highest nodes whose subtrees should be rebuilt.
+     * @return The number of fragments added to the subtree.
+     */
+    private int insert(BSPNode node, Polygon poly, List<BSPNode> rebuild) {
+        int added;
+        switch (RelativePosition.positionOf(node.plane, poly)) {
+        case RelativePosition.BEHIND:
+            added = insertChild(node, RelativePosition.BEHIND, poly, rebuild);
+            break;
         case RelativePosition.FRONT:
-            genPolyList(polyQueue, position, node.behind);
-            polyQueue.addAll(node.polys);
-            genPolyList(polyQueue, position, node.front);
+            added = insertChild(node, RelativePosition.FRONT, poly, rebuild);
             break;
-        case RelativePosition.BEHIND:
-            genPolyList(polyQueue, position, node.front);
-            polyQueue.addAll(node.polys);
-            genPolyList(polyQueue, position, node.behind);
+        case RelativePosition.INTERSECT:
+            Polygon[] split = new Polygon[2];
+            int side = split(poly, node.plane, split);
+            if (side != RelativePosition.INTERSECT) {
+                added = insertChild(node, side, poly, rebuild);
+            } else {
+                added = insertChild(node, RelativePosition.BEHIND, split[RelativePosition.BEHIND], rebuild)
+                        + insertChild(node, RelativePosition.FRONT, split[RelativePosition.FRONT], rebuild);
+            }
             break;
-        case RelativePosition.ON:
-            genPolyList(polyQueue, position, node.front);
-            genPolyList(polyQueue, position, node.behind);
+        default:
+            node.add(poly);
+            added = 1;
             break;
         }
+
+        node.changes += added;
+        node.update();
+        if (needsRebuild(node))
+            replaceRebuilds(node, rebuild);
+        return added;
+    }
+
+    private int insertChild(BSPNode node, int side, Polygon poly, List<BSPNode> rebuild) {
+        BSPNode child = side == RelativePosition.BEHIND ? node.behind() : node.front();
+        if (child != null)
+            return insert(child, poly, rebuild);
+
+        child = newLeaf(poly, node);
+        if (side == RelativePosition.BEHIND)
+            node.behind = child;
+        else
+            node.front = child;
+        return 1;
+    }
+
+    private BSPNode newLeaf(Polygon poly, BSPNode parent) {
+        BSPNode node = new BSPNode(new Plane(poly));
+        node.add(poly);
+        node.parent = parent;
+        node.id = this.nextId++;
+        node.update();
+        node.built();
+        this.nodeCount++;
+        return node;
+    }
+
+    /**
+     * Removes the fragments of a <code>Polygon</code> from a subtree, unlinking children
+     * left empty.
+     *
+     * @param rebuild Receives the highest nodes whose subtrees should be rebuilt.
+     * @return The number of fragments removed from the subtree.
+     */
+    private int remove(BSPNode node, Polygon origin, float slack, List<BSPNode> rebuild) {
+        if (node == null) return 0;
+
+        float startX = origin.getStartX(), startY = origin.getStartY();
+        float endX = origin.getEndX(), endY = origin.getEndY();
+        if (Math.min(startX, endX) - slack > node.maxX || Math.max(startX, endX) + slack < node.minX
+                || Math.min(startY, endY) - slack > node.maxY || Math.max(startY, endY) + slack < node.minY)
+            return 0;
+
+        int removed = node.polys.size();
+        node.polys.removeIf(poly -> poly.origin == origin);
+        removed -= node.polys.size();
+
+        float startDist = node.plane.distanceTo(startX, startY);
+        float endDist = node.plane.distanceTo(endX, endY);
+        if (Math.min(startDist, endDist) <= slack) {
+            removed += remove(node.behind(), origin, slack, rebuild);
+            if (node.behind != null && node.behind.isEmpty()) {
+                node.behind.parent = null;
+                node.behind = null;
+                this.nodeCount--;
+            }
+        }
+        if (Math.max(startDist, endDist) >= -slack) {
+            removed += remove(node.front(), origin, slack, rebuild);
+            if (node.front != null && node.front.isEmpty()) {
+                node.front.parent = null;
+                node.front = null;
+                this.nodeCount--;
+            }
+        }
+
+        if (removed == 0) return 0;
+
+        node.changes += removed;
+        node.update();
+        if (!node.isEmpty() && needsRebuild(node))
+            replaceRebuilds(node, rebuild);
+        return removed;
+    }
+
+    /**
+     * Schedules a node's subtree for rebuilding. Nodes are visited after their children,
+     * so nodes already scheduled within the subtree are replaced by it. Split and removed
+     * <code>Polygon</code>s reach both sides of a node, so nodes scheduled elsewhere are
+     * kept.
+     */
+    private static void replaceRebuilds(BSPNode node, List<BSPNode> rebuild) {
+        rebuild.removeIf(scheduled -> isWithin(scheduled, node));
+        rebuild.add(node);
+    }
+
+    private static boolean isWithin(BSPNode node, BSPNode ancestor) {
+        for (; node != null; node = node.parent) {
+            if (node == ancestor)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean needsRebuild(BSPNode node) {
+        if (node.changes > this.options.getRebuildThreshold() * Math.max(node.builtSize, REBUILD_MINIMUM))
+            return true;
+        if (node.size < REBUILD_MINIMUM)
+            return false;
+
+        // Require the subtree to have drifted halfway from its built balance towards a
+        // chain, so splitters which build unbalanced trees do not rebuild on every change
+        float imbalance = node.imbalance();
+        return imbalance > this.options.getRebuildImbalance()
+                && imbalance > (1 + node.builtImbalance) / 2;
+    }
+
+    /**
+     * Finishes a modification, rebuilding the subtrees which crossed a threshold.
+     */
+    private void modified(List<BSPNode> rebuild) {
+        for (BSPNode node : rebuild)
+            rebuild(node);
+
+        this.polyCount = this.root != null ? this.root.size : 0;
+
+        // Identifiers of unlinked nodes are lost, renumber once too many are
+        if (this.nextId > 2 * this.nodeCount + REBUILD_MINIMUM)
+            this.nextId = number(this.root, 0);
+
+        this.modCount++;
+    }
+
+    private void rebuild(BSPNode node) {
+        BuildEvent event = new BuildEvent();
+        event.begin();
+
+        List<Polygon> fragments = new ArrayList<>(node.size);
+        collect(node, fragments);
+        List<Polygon> polys = reassemble(fragments);
+
+        BSPNode parent = node.parent;
+        BSPNode replacement = build(polys);
+        event.end();
+        replacement.parent = parent;
+        if (parent == null)
+            this.root = replacement;
+        else if (parent.behind == node)
+            parent.behind = replacement;
+        else
+            parent.front = replacement;
+        node.parent = null;
+
+        int first = this.nextId;
+        this.nextId = number(replacement, first);
+        this.nodeCount += this.nextId - first - countNodes(node);
+        commit(event, polys.size(), replacement, this.nextId - first, true);
+
+        // Splitting may have changed the number of fragments
+        for (BSPNode ancestor = parent; ancestor != null; ancestor = ancestor.parent)
+            ancestor.update();
+    }
+
+    /**
+     * Commits a <code>BuildEvent</code> if it is enabled, only then measuring the depth
+     * of the built subtree.
+     */
+    private static void commit(BuildEvent event, int polygons, BSPNode root, int nodes, boolean rebuild) {
+        if (!event.shouldCommit()) return;
+        event.polygons = polygons;
+        event.fragments = root != null ? root.size : 0;
+        event.nodes = nodes;
+        event.depth = statistics(root, 0, 0, 0).getMaxDepth();
+        event.rebuild = rebuild;
+        event.commit();
+    }
+
+    /**
+     * Measures a subtree, walking it without recursing. Pending subtrees are not built
+     * and count as missing.
+     */
+    private static TreeStatistics statistics(BSPNode root, int polyCount, int inputCount, long buildNanos) {
+        int nodes = 0, leaves = 0, maxDepth = 0;
+        long leafDepths = 0;
+        if (root != null) {
+            BSPNode[] stack = new BSPNode[64];
+            int[] depths = new int[64];
+            stack[0] = root;
+            depths[0] = 1;
+
+            int top = 1;
+            while (top > 0) {
+                BSPNode node = stack[--top];
+                int depth = depths[top];
+                nodes++;
+                maxDepth = Math.max(maxDepth, depth);
+                if (node.behind == null && node.front == null) {
+                    leaves++;
+                    leafDepths += depth;
+                    continue;
+                }
+
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                if (node.behind != null) {
+                    stack[top] = node.behind;
+                    depths[top++] = depth + 1;
+                }
+                if (node.front != null) {
+                    stack[top] = node.front;
+                    depths[top++] = depth + 1;
+                }
+            }
+        }
+
+        return new TreeStatistics(nodes, leaves, polyCount, inputCount, maxDepth,
+                leaves == 0 ? 0 : (double)leafDepths / leaves, buildNanos);
     }
 
-    private class BSPNode {
-        List<Polygon> polys;
-        Plane plane;
-        BSPNode parent;
-        BSPNode behind, front;
+    /**
+     * Joins the fragments of each <code>Polygon</code> back together where they meet, so
+     * a rebuilt subtree splits its <code>Polygon</code>s afresh rather than splitting
+     * fragments further. A <code>Polygon</code> with every fragment in the subtree is
+     * restored whole, and one with fragments elsewhere is clipped to the pieces here.
+     * Slivers left by earlier splits are dropped.
+     *
+     * @param fragments The fragments of a subtree.
+     * @return A new <code>List</code> of the joined <code>Polygon</code>s, in the order
+     * of their first fragments.
+     */
+    private static List<Polygon> reassemble(List<Polygon> fragments) {
+        Map<Polygon, List<Polygon>> byOrigin = new IdentityHashMap<>();
+        List<Polygon> origins = new ArrayList<>();
+        for (Polygon fragment : fragments) {
+            List<Polygon> pieces = byOrigin.get(fragment.origin);
+            if (pieces == null) {
+                pieces = new ArrayList<>(1);
+                byOrigin.put(fragment.origin, pieces);
+                origins.add(fragment.origin);
+            }
+            pieces.add(fragment);
+        }
+
+        List<Polygon> result = new ArrayList<>(origins.size());
+        for (Polygon origin : origins)
+            reassemble(origin, byOrigin.get(origin), result);
+        return result;
+    }
 
-        BSPNode(Plane plane) {
-            this.plane = plane;
-            this.polys = new ArrayList<>();
+    private static void reassemble(Polygon origin, List<Polygon> pieces, List<Polygon> dest) {
+        float dirX = origin.getEndX() - origin.getStartX(), dirY = origin.getEndY() - origin.getStartY();
+        float lengthSquared = dirX * dirX + dirY * dirY;
+        if ((pieces.size() == 1 && pieces.get(0) == origin) || !(lengthSquared > 0)) {
+            dest.addAll(pieces);
+            return;
         }
 
-        void add(Polygon poly) {
-            this.polys.add(poly);
-            BSPTree.this.polyCount++;
+        // Parameters along the origin, within which pieces are considered to touch
+        float[] from = new float[pieces.size()];
+        for (int i = 0; i < from.length; i++) {
+            Polygon piece = pieces.get(i);
+            from[i] = ((piece.getStartX() - origin.getStartX()) * dirX
+                    + (piece.getStartY() - origin.getStartY()) * dirY) / lengthSquared;
+        }
+        Integer[] order = new Integer[pieces.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> from[i]));
+
+        float scale = Math.max(Math.max(Math.abs(origin.getStartX()), Math.abs(origin.getStartY())),
+                Math.max(Math.abs(origin.getEndX()), Math.abs(origin.getEndY())));
+        float tolerance = Polygon.SLIVER_EPSILON * (1 + scale) / (float)Math.sqrt(lengthSquared);
+
+        for (int start = 0; start < order.length; ) {
+            Polygon first = pieces.get(order[start]), last = first;
+            float runTo = to(origin, last, dirX, dirY, lengthSquared);
+            int end = start + 1;
+            for (; end < order.length && from[order[end]] <= runTo + tolerance; end++) {
+                Polygon piece = pieces.get(order[end]);
+                float pieceTo = to(origin, piece, dirX, dirY, lengthSquared);
+                if (pieceTo > runTo) {
+                    runTo = pieceTo;
+                    last = piece;
+                }
+            }
+
+            Polygon joined;
+            if (from[order[start]] <= tolerance && runTo >= 1 - tolerance)
+                joined = origin;
+            else if (first == last)
+                joined = first;
+            else
+                joined = origin.fragment(first, last);
+            if (joined == origin || !joined.isSliver())
+                dest.add(joined);
+            start = end;
+        }
+    }
+
+    private static float to(Polygon origin, Polygon piece, float dirX, float dirY, float lengthSquared) {
+        return ((piece.getEndX() - origin.getStartX()) * dirX
+                + (piece.getEndY() - origin.getStartY()) * dirY) / lengthSquared;
+    }
+
+    private static void collect(BSPNode node, List<Polygon> dest) {
+        if (node == null) return;
+        collect(node.behind(), dest);
+        dest.addAll(node.polys);
+        collect(node.front(), dest);
+    }
+
+    private static boolean backToFront(BSPNode node, float x, float y, PolygonVisitor visitor) {
+        if (node == null) return true;
+        TreeMetrics.nodeVisited();
+        TreeMetrics.planeTested();
+
+        switch (RelativePosition.positionOf(node.plane, x, y)) {
+        case RelativePosition.FRONT:
+            return backToFront(node.behind(), x, y, visitor)
+                    && visitAll(node.polys, visitor)
+                    && backToFront(node.front(), x, y, visitor);
+        case RelativePosition.BEHIND:
+            return backToFront(node.front(), x, y, visitor)
+                    && visitAll(node.polys, visitor)
+                    && backToFront(node.behind(), x, y, visitor);
+        default:
+            return backToFront(node.front(), x, y, visitor)
+                    && backToFront(node.behind(), x, y, visitor);
+        }
+    }
+
+    private static boolean frontToBack(BSPNode node, float x, float y, PolygonVisitor visitor) {
+        if (node == null) return true;
+        TreeMetrics.nodeVisited();
+        TreeMetrics.planeTested();
+
+        switch (RelativePosition.positionOf(node.plane, x, y)) {
+        case RelativePosition.FRONT:
+            return frontToBack(node.front(), x, y, visitor)
+                    && visitAllReversed(node.polys, visitor)
+                    && frontToBack(node.behind(), x, y, visitor);
+        case RelativePosition.BEHIND:
+            return frontToBack(node.behind(), x, y, visitor)
+                    && visitAllReversed(node.polys, visitor)
+                    && frontToBack(node.front(), x, y, visitor);
+        default:
+            return frontToBack(node.behind(), x, y, visitor)
+                    && frontToBack(node.front(), x, y, visitor);
+        }
+    }
+
+    private static int order(BSPNode node, float x, float y, Polygon[] dest, int count) {
+        if (node == null) return count;
+        TreeMetrics.nodeVisited();
+        TreeMetrics.planeTested();
+
+        switch (RelativePosition.positionOf(node.plane, x, y)) {
+        case RelativePosition.FRONT:
+            count = order(node.behind(), x, y, dest, count);
+            count = copyAll(node.polys, dest, count);
+            return order(node.front(), x, y, dest, count);
+        case RelativePosition.BEHIND:
+            count = order(node.front(), x, y, dest, count);
+            count = copyAll(node.polys, dest, count);
+            return order(node.behind(), x, y, dest, count);
+        default:
+            count = order(node.front(), x, y, dest, count);
+            return order(node.behind(), x, y, dest, count);
+        }
+    }
+
+    private static int copyAll(List<Polygon> polys, Polygon[] dest, int count) {
+        for (int i = 0, size = polys.size(); i < size; i++)
+            dest[count++] = polys.get(i);
+        return count;
+    }
+
+    private static boolean visitAll(List<Polygon> polys, PolygonVisitor visitor) {
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            if (!visitor.visit(polys.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean visitAllReversed(List<Polygon> polys, PolygonVisitor visitor) {
+        for (int i = polys.size() - 1; i >= 0; i--) {
+            if (!visitor.visit(polys.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds a subtree on a <code>ForkJoinPool</code>, building the behind and front
+     * subtrees of each node concurrently. Inputs smaller than the parallel threshold
+     * are built sequentially.
+     */
+    private class BuildTask extends RecursiveTask<BSPNode> {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<Polygon> polys;
+
+        BuildTask(List<Polygon> polys) {
+            this.polys = polys;
+        }
+
+        @Override
+        protected BSPNode compute() {
+            if (this.polys.size() < BSPTree.this.options.getParallelThreshold())
+                return genTree(this.polys);
+
+            List<Polygon> behind = new ArrayList<>(), front = new ArrayList<>();
+            BSPNode node = partition(this.polys, behind, front);
+
+            BuildTask behindTask = new BuildTask(behind);
+            behindTask.fork();
+            BSPNode frontNode = new BuildTask(front).compute();
+            link(node, behindTask.join(), frontNode);
+
+            return node;
+        }
+    }
+
+    /**
+     * Builds the subtrees of a lazily built tree a node at a time, leaving the children
+     * of each new node pending in turn. Every node takes a fresh identifier, so nodes
+     * built by threads which lost a race leave gaps.
+     */
+    private class LazyBuilder implements BSPNode.SubtreeBuilder {
+
+        final AtomicInteger ids = new AtomicInteger();
+
+        @Override
+        public BSPNode build(BSPNode parent, List<Polygon> polys) {
+            List<Polygon> behind = new ArrayList<>(), front = new ArrayList<>();
+            BSPNode node = partition(polys, behind, front);
+            node.parent = parent;
+            node.id = this.ids.getAndIncrement();
+            node.pendingBehind = behind.isEmpty() ? null : behind;
+            node.pendingFront = front.isEmpty() ? null : front;
+            node.builder = this;
+            node.update();
+            node.built();
+            return node;
         }
     }
 
     private class BSPIterator implements Iterator<Polygon> {
 
+        final int expectedModCount;
         BSPNode next;
         Iterator<Polygon> currentIterator;
 
         BSPIterator() {
+            this.expectedModCount = BSPTree.this.modCount;
             this.next = BSPTree.this.root;
             if (this.next != null) {
-                while (this.next.behind != null)
-                    this.next = this.next.behind;
-                this.currentIterator = this.next.polys.iterator();
+                while (this.next.behind() != null)
+                    this.next = this.next.behind();
+                skipEmpty();
             }
         }
 
@@ -157,36 +1538,51 @@ public class BSPTree implements Iterable<Polygon> {
 
         @Override
         public Polygon next() {
+            if (BSPTree.this.modCount != this.expectedModCount)
+                throw new ConcurrentModificationException();
             if (!hasNext())
                 throw new NoSuchElementException();
 
             Polygon result = this.currentIterator.next();
             if (!this.currentIterator.hasNext()) {
                 this.currentIterator = null;
-                if (this.next.front != null) {
-                    this.next = this.next.front;
-                    while (this.next.behind != null)
-                        this.next = this.next.behind;
-                } else {
-                    do {
-                        if (this.next.parent == null) {
-                            this.next = null;
-                            break;
-                        }
-
-                        if (this.next.parent.behind == this.next) {
-                            this.next = this.next.parent;
-                            break;
-                        }
+                advance();
+                skipEmpty();
+            }
+            return result;
+        }
 
+        /**
+         * Moves to the first node from the current one holding any polygons, which
+         * nodes emptied by <code>remove</code> may not.
+         */
+        private void skipEmpty() {
+            while (this.next != null && this.next.polys.isEmpty())
+                advance();
+            if (this.next != null)
+                this.currentIterator = this.next.polys.iterator();
+        }
+
+        private void advance() {
+            if (this.next.front() != null) {
+                this.next = this.next.front();
+                while (this.next.behind() != null)
+                    this.next = this.next.behind();
+            } else {
+                do {
+                    if (this.next.parent == null) {
+                        this.next = null;
+                        break;
+                    }
+
+                    if (this.next.parent.behind() == this.next) {
                         this.next = this.next.parent;
-                    } while (true);
-                }
+                        break;
+                    }
 
-                if (this.next != null)
-                    this.currentIterator = this.next.polys.iterator();
+                    this.next = this.next.parent;
+                } while (true);
             }
-            return result;
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.evrhel.bsp;
+
+import jdk.jfr.*;
+
+/**
+ * A JDK Flight Recorder event for building a <code>BSPTree</code>, or rebuilding one
+ * of its subtrees after <code>insert</code> or <code>remove</code>.
+ */
+@Name("com.evrhel.bsp.Build")
+@Label("BSP Build")
+@Category("BSP")
+@Description("Building a BSP tree or rebuilding one of its subtrees")
+@StackTrace(false)
+class BuildEvent extends Event {
+
+    @Label("Polygons")
+    @Description("Number of polygons the build started from")
+    int polygons;
+
+    @Label("Fragments")
+    @Description("Number of polygons in the built tree, after splitting")
+    int fragments;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Rebuild")
+    @Description("Whether this rebuilt a subtree of an existing tree")
+    boolean rebuild;
+}
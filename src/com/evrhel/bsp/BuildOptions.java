@@ -0,0 +1,309 @@
+package com.evrhel.bsp;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Defines the options used when building a <code>BSPTree</code>. Setters return this
+ * object so calls may be chained:
+ * <pre>
+ * BSPTree tree = new BSPTree(polys, new BuildOptions()
+ *         .setSplitter(SplitterStrategy.minimizeSplits()));
+ * </pre>
+ */
+public class BuildOptions {
+
+    /**
+     * The default minimum number of <code>Polygon</code>s a subtree must have to be
+     * built in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 512;
+
+    /**
+     * The default fraction of a subtree's size which may change through insertions and
+     * removals before the subtree is rebuilt.
+     */
+    public static final float DEFAULT_REBUILD_THRESHOLD = 0.5f;
+
+    /**
+     * The default fraction of a subtree's <code>Polygon</code>s its larger child may
+     * hold before the subtree is rebuilt.
+     */
+    public static final float DEFAULT_REBUILD_IMBALANCE = 0.8f;
+
+    /**
+     * The default distance within which segments are considered collinear, touching or
+     * degenerate when simplifying a <code>World</code>.
+     */
+    public static final float DEFAULT_SIMPLIFY_TOLERANCE = 1e-4f;
+
+    private SplitterStrategy splitter;
+    private ForkJoinPool pool;
+    private int parallelThreshold;
+    private PlaneClassifier classifier;
+    private float rebuildThreshold;
+    private float rebuildImbalance;
+    private boolean simplify;
+    private float simplifyTolerance;
+    private boolean lazy;
+
+    /**
+     * Creates a new <code>BuildOptions</code> with the default settings.
+     */
+    public BuildOptions() {
+        this.splitter = SplitterStrategy.first();
+        this.parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+        this.classifier = PlaneClassifier.getDefault();
+        this.rebuildThreshold = DEFAULT_REBUILD_THRESHOLD;
+        this.rebuildImbalance = DEFAULT_REBUILD_IMBALANCE;
+        this.simplifyTolerance = DEFAULT_SIMPLIFY_TOLERANCE;
+    }
+
+    /**
+     * Creates a copy of another <code>BuildOptions</code>.
+     *
+     * @param other The <code>BuildOptions</code> to copy.
+     */
+    public BuildOptions(BuildOptions other) {
+        this.splitter = other.splitter;
+        this.pool = other.pool;
+        this.parallelThreshold = other.parallelThreshold;
+        this.classifier = other.classifier;
+        this.rebuildThreshold = other.rebuildThreshold;
+        this.rebuildImbalance = other.rebuildImbalance;
+        this.simplify = other.simplify;
+        this.simplifyTolerance = other.simplifyTolerance;
+        this.lazy = other.lazy;
+    }
+
+    /**
+     * Returns the strategy used to choose splitting <code>Polygon</code>s.
+     *
+     * @return The <code>SplitterStrategy</code>.
+     */
+    public SplitterStrategy getSplitter() {
+        return this.splitter;
+    }
+
+    /**
+     * Sets the strategy used to choose splitting <code>Polygon</code>s. Defaults to
+     * <code>SplitterStrategy.first()</code>.
+     *
+     * @param splitter The non-<code>null</code> <code>SplitterStrategy</code>.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setSplitter(SplitterStrategy splitter) {
+        if (splitter == null)
+            throw new NullPointerException("splitter");
+        this.splitter = splitter;
+        return this;
+    }
+
+    /**
+     * Returns the pool used to build the tree in parallel.
+     *
+     * @return The <code>ForkJoinPool</code>, or <code>null</code> if the tree is built
+     * sequentially.
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Sets the pool used to build the tree in parallel. Once the root has been
+     * partitioned, the subtrees behind and in front of each node are built concurrently
+     * on this pool. The resulting tree is identical to a sequentially built one.
+     * Defaults to <code>null</code>, building sequentially.
+     *
+     * @param pool The <code>ForkJoinPool</code>, or <code>null</code> to build sequentially.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Returns the minimum number of <code>Polygon</code>s a subtree must have to be
+     * built in parallel.
+     *
+     * @return The threshold.
+     */
+    public int getParallelThreshold() {
+        return this.parallelThreshold;
+    }
+
+    /**
+     * Sets the minimum number of <code>Polygon</code>s a subtree must have to be built
+     * in parallel. Smaller subtrees are built sequentially, as forking them costs more
+     * than it saves. Defaults to <code>DEFAULT_PARALLEL_THRESHOLD</code>.
+     *
+     * @param parallelThreshold The threshold, must be at least 1.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1)
+            throw new IllegalArgumentException("parallelThreshold must be at least 1");
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the classifier used to partition <code>Polygon</code>s around each node's
+     * plane.
+     *
+     * @return The <code>PlaneClassifier</code>.
+     */
+    public PlaneClassifier getClassifier() {
+        return this.classifier;
+    }
+
+    /**
+     * Sets the classifier used to partition <code>Polygon</code>s around each node's
+     * plane. Defaults to <code>PlaneClassifier.getDefault()</code>.
+     *
+     * @param classifier The non-<code>null</code> <code>PlaneClassifier</code>.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setClassifier(PlaneClassifier classifier) {
+        if (classifier == null)
+            throw new NullPointerException("classifier");
+        this.classifier = classifier;
+        return this;
+    }
+
+    /**
+     * Returns the fraction of a subtree's size which may change through
+     * <code>BSPTree.insert</code> and <code>BSPTree.remove</code> before the subtree is
+     * rebuilt.
+     *
+     * @return The threshold.
+     */
+    public float getRebuildThreshold() {
+        return this.rebuildThreshold;
+    }
+
+    /**
+     * Sets the fraction of a subtree's size which may change through
+     * <code>BSPTree.insert</code> and <code>BSPTree.remove</code> before the subtree is
+     * rebuilt. Every fragment inserted into or removed from a subtree counts as one
+     * change, so split-heavy insertions and removals leaving hollow nodes behind both
+     * bring a rebuild closer. Lower values keep the tree closer to a fresh build at the
+     * cost of more frequent rebuilds. Defaults to <code>DEFAULT_REBUILD_THRESHOLD</code>.
+     *
+     * @param rebuildThreshold The threshold, must be positive.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setRebuildThreshold(float rebuildThreshold) {
+        if (!(rebuildThreshold > 0))
+            throw new IllegalArgumentException("rebuildThreshold must be positive");
+        this.rebuildThreshold = rebuildThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the fraction of a subtree's <code>Polygon</code>s its larger child may
+     * hold before the subtree is rebuilt.
+     *
+     * @return The imbalance.
+     */
+    public float getRebuildImbalance() {
+        return this.rebuildImbalance;
+    }
+
+    /**
+     * Sets the fraction of a subtree's <code>Polygon</code>s its larger child may hold
+     * before the subtree is rebuilt. A subtree is only rebuilt once it is more
+     * unbalanced than both this value and its own balance when it was last built, as
+     * the splitter may not produce balanced trees at all. Defaults to
+     * <code>DEFAULT_REBUILD_IMBALANCE</code>.
+     *
+     * @param rebuildImbalance The imbalance, must be in <code>(0.5, 1]</code>.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setRebuildImbalance(float rebuildImbalance) {
+        if (!(rebuildImbalance > 0.5f && rebuildImbalance <= 1))
+            throw new IllegalArgumentException("rebuildImbalance must be in (0.5, 1]");
+        this.rebuildImbalance = rebuildImbalance;
+        return this;
+    }
+
+    /**
+     * Returns whether a <code>World</code> simplifies its <code>Polygon</code>s before
+     * building its tree.
+     *
+     * @return <code>true</code> if <code>Polygon</code>s are simplified.
+     */
+    public boolean isSimplify() {
+        return this.simplify;
+    }
+
+    /**
+     * Sets whether a <code>World</code> simplifies its <code>Polygon</code>s before
+     * building its tree. Simplifying drops degenerate <code>Polygon</code>s and merges
+     * those facing the same way along the same line which overlap or touch, so the
+     * tree has fewer planes to split along. <code>BSPTree</code> itself always builds
+     * from the <code>Polygon</code>s it is given. Defaults to <code>false</code>.
+     *
+     * @param simplify Whether to simplify.
+     * @return This <code>BuildOptions</code>.
+     * @see World#getSources(Polygon)
+     */
+    public BuildOptions setSimplify(boolean simplify) {
+        this.simplify = simplify;
+        return this;
+    }
+
+    /**
+     * Returns the distance within which segments are considered collinear, touching or
+     * degenerate when simplifying.
+     *
+     * @return The tolerance.
+     */
+    public float getSimplifyTolerance() {
+        return this.simplifyTolerance;
+    }
+
+    /**
+     * Sets the distance within which segments are considered collinear, touching or
+     * degenerate when simplifying. Segments are merged when both ends of each lie within
+     * this distance of a common line and the gap between them is no larger. Defaults
+     * to <code>DEFAULT_SIMPLIFY_TOLERANCE</code>.
+     *
+     * @param simplifyTolerance The tolerance, must be finite and not negative.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setSimplifyTolerance(float simplifyTolerance) {
+        if (!(simplifyTolerance >= 0 && simplifyTolerance < Float.POSITIVE_INFINITY))
+            throw new IllegalArgumentException("simplifyTolerance must be finite and not negative");
+        this.simplifyTolerance = simplifyTolerance;
+        return this;
+    }
+
+    /**
+     * Returns whether subtrees are built only when first needed.
+     *
+     * @return <code>true</code> if the tree is built lazily.
+     */
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * Sets whether subtrees are built only when first needed. A lazily built tree
+     * partitions only around its root when created, and each node keeps the
+     * <code>Polygon</code>s behind and in front of it until a query first descends into
+     * them. Queries which only visit part of the tree, such as locating a point or
+     * casting a ray, then only pay to build that part, which greatly shortens the time
+     * to the first query on large worlds. Operations over the whole tree, such as
+     * traversals, iterators, statistics and modifications, first build every pending
+     * subtree, as does <code>BSPTree.warm(Executor)</code> in the background. The tree
+     * built is identical to one built eagerly. Defaults to <code>false</code>.
+     *
+     * @param lazy Whether to build lazily.
+     * @return This <code>BuildOptions</code>.
+     */
+    public BuildOptions setLazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+}
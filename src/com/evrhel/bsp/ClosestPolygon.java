@@ -0,0 +1,87 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines the result of a nearest-polygon query against a <code>BSPTree</code>: a
+ * <code>Polygon</code>, its distance from the query point and the point on it closest
+ * to the query point. A <code>ClosestPolygon</code> may be reused across queries to
+ * avoid allocating.
+ */
+public class ClosestPolygon {
+
+    private Polygon polygon;
+    private float distanceSquared;
+    private float x, y;
+
+    /**
+     * Creates an empty <code>ClosestPolygon</code> to be filled in by
+     * <code>BSPTree.nearest</code>.
+     */
+    public ClosestPolygon() { }
+
+    ClosestPolygon(Polygon polygon, float distanceSquared, float x, float y) {
+        set(polygon, distanceSquared, x, y);
+    }
+
+    void set(Polygon polygon, float distanceSquared, float x, float y) {
+        this.polygon = polygon;
+        this.distanceSquared = distanceSquared;
+        this.x = x;
+        this.y = y;
+    }
+
+    float getDistanceSquared() {
+        return this.distanceSquared;
+    }
+
+    /**
+     * Returns the closest <code>Polygon</code>.
+     *
+     * @return The <code>Polygon</code>, or <code>null</code> if none was found.
+     */
+    public Polygon getPolygon() {
+        return this.polygon;
+    }
+
+    /**
+     * Returns the distance from the query point to the <code>Polygon</code>.
+     *
+     * @return The distance.
+     */
+    public float getDistance() {
+        return (float)Math.sqrt(this.distanceSquared);
+    }
+
+    /**
+     * Returns the point on the <code>Polygon</code> closest to the query point.
+     *
+     * @return The closest point.
+     */
+    public Vector2 getPoint() {
+        return new Vector2(this.x, this.y);
+    }
+
+    /**
+     * Returns the x-coordinate of the point on the <code>Polygon</code> closest to the
+     * query point.
+     *
+     * @return The x-coordinate.
+     */
+    public float getX() {
+        return this.x;
+    }
+
+    /**
+     * Returns the y-coordinate of the point on the <code>Polygon</code> closest to the
+     * query point.
+     *
+     * @return The y-coordinate.
+     */
+    public float getY() {
+        return this.y;
+    }
+
+    @Override
+    public String toString() {
+        return "ClosestPolygon[polygon=" + this.polygon + ",distance=" + getDistance() + ",point=" + getPoint() + "]";
+    }
+}
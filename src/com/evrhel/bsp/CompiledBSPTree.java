@@ -0,0 +1,240 @@
+package com.evrhel.bsp;
+
+import java.util.*;
+
+/**
+ * Defines an immutable, compiled form of a <code>BSPTree</code>. Nodes are stored in
+ * parallel primitive arrays instead of as an object graph: each node's plane is kept as
+ * the coefficients <code>(nx, ny, d)</code> of <code>nx * x + ny * y = d</code>, child
+ * links are indices into the node arrays, each node's subtree bounds are kept alongside,
+ * and the endpoints of every <code>Polygon</code> are kept in their own coordinate arrays.
+ * <p>
+ * Nodes are laid out in pre-order so a node's behind child immediately follows it.
+ * <code>Polygon</code>s are laid out in the same order as <code>BSPTree.iterator()</code>
+ * returns them, with the <code>Polygon</code>s of each node stored contiguously.
+ */
+public class CompiledBSPTree implements Iterable<Polygon> {
+
+    /**
+     * Index used for a missing child.
+     */
+    public static final int NONE = -1;
+
+    final float[] planeX, planeY, planeD;
+    final int[] behind, front;
+    final int[] polyStart, polyEnd;
+    final float[] minX, minY, maxX, maxY;
+
+    final float[] startX, startY, endX, endY;
+    final Polygon[] polys;
+
+    /**
+     * Compiles a <code>BSPTree</code>.
+     *
+     * @param tree The <code>BSPTree</code> to compile.
+     */
+    public CompiledBSPTree(BSPTree tree) {
+        int nodeCount = countNodes(tree.getRoot());
+        int polyCount = tree.getPolygonCount();
+
+        this.planeX = new float[nodeCount];
+        this.planeY = new float[nodeCount];
+        this.planeD = new float[nodeCount];
+        this.behind = new int[nodeCount];
+        this.front = new int[nodeCount];
+        this.polyStart = new int[nodeCount];
+        this.polyEnd = new int[nodeCount];
+        this.minX = new float[nodeCount];
+        this.minY = new float[nodeCount];
+        this.maxX = new float[nodeCount];
+        this.maxY = new float[nodeCount];
+
+        this.startX = new float[polyCount];
+        this.startY = new float[polyCount];
+        this.endX = new float[polyCount];
+        this.endY = new float[polyCount];
+        this.polys = new Polygon[polyCount];
+
+        int[] counters = new int[2]; // next node index, next polygon index
+        compileNode(tree.getRoot(), counters);
+    }
+
+    /**
+     * Returns the number of nodes in this tree.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return this.planeX.length;
+    }
+
+    /**
+     * Returns the number of <code>Polygon</code>s in this tree.
+     *
+     * @return The <code>Polygon</code> count.
+     */
+    public int getPolygonCount() {
+        return this.polys.length;
+    }
+
+    /**
+     * Returns the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The <code>Polygon</code>.
+     */
+    public Polygon getPolygon(int index) {
+        return this.polys[index];
+    }
+
+    /**
+     * Returns the x-coordinate of the start of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getStartX(int index) {
+        return this.startX[index];
+    }
+
+    /**
+     * Returns the y-coordinate of the start of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getStartY(int index) {
+        return this.startY[index];
+    }
+
+    /**
+     * Returns the x-coordinate of the end of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getEndX(int index) {
+        return this.endX[index];
+    }
+
+    /**
+     * Returns the y-coordinate of the end of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getEndY(int index) {
+        return this.endY[index];
+    }
+
+    /**
+     * Writes the indices of the <code>Polygon</code>s of this tree back-to-front relative
+     * to a position into an array. This performs no allocation.
+     *
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     * @param dest The destination array, must be able to hold <code>getPolygonCount()</code>
+     *             indices.
+     * @return The number of indices written to <code>dest</code>.
+     */
+    public int order(float x, float y, int[] dest) {
+        if (this.planeX.length == 0) return 0;
+        return order(0, x, y, dest, 0);
+    }
+
+    /**
+     * Returns an iterator which returns <code>Polygon</code>s back-to-front
+     * relative to the give position. The order is the same as
+     * <code>BSPTree.iterator(Vector2)</code>.
+     *
+     * @param position The position to determine the order of the <code>Iterator</code>.
+     * @return A new <code>Iterator</code> over the <code>Polygon</code>s.
+     */
+    public Iterator<Polygon> iterator(Vector2 position) {
+        int[] indices = new int[this.polys.length];
+        int count = order(position.x, position.y, indices);
+
+        List<Polygon> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add(this.polys[indices[i]]);
+        return result.iterator();
+    }
+
+    /**
+     * Returns an <code>Iterator</code> over this tree. The <code>Iterator</code> returns
+     * <code>Polygon</code>s in an arbitrary order, which is the same as
+     * <code>BSPTree.iterator()</code>.
+     *
+     * @return A new <code>Iterator</code>.
+     */
+    @Override
+    public Iterator<Polygon> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(this.polys)).iterator();
+    }
+
+    private int order(int node, float x, float y, int[] dest, int count) {
+        float prod = this.planeX[node] * x + this.planeY[node] * y - this.planeD[node];
+        if (prod > 0) {
+            if (this.behind[node] != NONE)
+                count = order(this.behind[node], x, y, dest, count);
+            count = emit(node, dest, count);
+            if (this.front[node] != NONE)
+                count = order(this.front[node], x, y, dest, count);
+        } else if (prod < 0) {
+            if (this.front[node] != NONE)
+                count = order(this.front[node], x, y, dest, count);
+            count = emit(node, dest, count);
+            if (this.behind[node] != NONE)
+                count = order(this.behind[node], x, y, dest, count);
+        } else {
+            if (this.front[node] != NONE)
+                count = order(this.front[node], x, y, dest, count);
+            if (this.behind[node] != NONE)
+                count = order(this.behind[node], x, y, dest, count);
+        }
+        return count;
+    }
+
+    private int emit(int node, int[] dest, int count) {
+        for (int i = this.polyStart[node]; i < this.polyEnd[node]; i++)
+            dest[count++] = i;
+        return count;
+    }
+
+    private int compileNode(BSPNode node, int[] counters) {
+        if (node == null) return NONE;
+
+        int index = counters[0]++;
+
+        this.planeX[index] = node.plane.getNormalX();
+        this.planeY[index] = node.plane.getNormalY();
+        this.planeD[index] = node.plane.getDistance();
+        this.minX[index] = node.minX;
+        this.minY[index] = node.minY;
+        this.maxX[index] = node.maxX;
+        this.maxY[index] = node.maxY;
+
+        this.behind[index] = compileNode(node.behind(), counters);
+
+        // Polygons are placed in-order so the arbitrary order matches BSPTree
+        this.polyStart[index] = counters[1];
+        for (Polygon poly : node.polys) {
+            int i = counters[1]++;
+            this.startX[i] = poly.getStartX();
+            this.startY[i] = poly.getStartY();
+            this.endX[i] = poly.getEndX();
+            this.endY[i] = poly.getEndY();
+            this.polys[i] = poly;
+        }
+        this.polyEnd[index] = counters[1];
+
+        this.front[index] = compileNode(node.front(), counters);
+
+        return index;
+    }
+
+    private static int countNodes(BSPNode node) {
+        if (node == null) return 0;
+        return 1 + countNodes(node.behind()) + countNodes(node.front());
+    }
+}
@@ -0,0 +1,174 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines a convex polygon, cut from a box by successive <code>Plane</code>s, which
+ * remembers the <code>Plane</code> each of its edges came from.
+ */
+class ConvexRegion {
+
+    /**
+     * Source of the edges of the initial box.
+     */
+    static final int BOX = -1;
+
+    private float[] xs, ys;
+    private int[] sources; // source of the edge from each vertex to the next
+    private int count;
+
+    ConvexRegion(float minX, float minY, float maxX, float maxY) {
+        this.xs = new float[] { minX, maxX, maxX, minX };
+        this.ys = new float[] { minY, minY, maxY, maxY };
+        this.sources = new int[] { BOX, BOX, BOX, BOX };
+        this.count = 4;
+    }
+
+    private ConvexRegion(ConvexRegion other) {
+        this.xs = other.xs.clone();
+        this.ys = other.ys.clone();
+        this.sources = other.sources.clone();
+        this.count = other.count;
+    }
+
+    ConvexRegion copy() {
+        return new ConvexRegion(this);
+    }
+
+    boolean isEmpty() {
+        return this.count < 3;
+    }
+
+    boolean hasEdge(int source) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.sources[i] == source)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the width of this region, as twice its area over its perimeter. This is
+     * close to the distance between the long sides of a thin region.
+     */
+    float width() {
+        float area = 0, perimeter = 0;
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1) % this.count;
+            area += this.xs[i] * this.ys[j] - this.xs[j] * this.ys[i];
+            perimeter += (float)Math.hypot(this.xs[j] - this.xs[i], this.ys[j] - this.ys[i]);
+        }
+        return perimeter > 0 ? Math.abs(area) / perimeter : 0;
+    }
+
+    /**
+     * Finds the direction of the longest edge of this region.
+     *
+     * @param dest Receives the unit direction.
+     */
+    void axis(float[] dest) {
+        float best = -1;
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1) % this.count;
+            float dx = this.xs[j] - this.xs[i], dy = this.ys[j] - this.ys[i];
+            float length = (float)Math.sqrt(dx * dx + dy * dy);
+            if (length > best && length > 0) {
+                best = length;
+                dest[0] = dx / length;
+                dest[1] = dy / length;
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest distance from a vertex to a plane, measured towards the
+     * side of the plane the region is on.
+     */
+    float distanceTo(Plane plane, boolean front) {
+        float min = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < this.count; i++) {
+            float dist = plane.distanceTo(this.xs[i], this.ys[i]);
+            min = Math.min(min, front ? dist : -dist);
+        }
+        return min;
+    }
+
+    /**
+     * Finds where the line of a plane crosses this region, as positions along the
+     * direction <code>(-normalY, normalX)</code>. The point at position <code>t</code> is
+     * <code>normal * distance + (-normalY, normalX) * t</code>.
+     *
+     * @param range Receives the first and last position.
+     * @return Whether the line crosses this region.
+     */
+    boolean span(Plane plane, float[] range) {
+        float nx = plane.getNormalX(), ny = plane.getNormalY();
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1) % this.count;
+            float di = plane.distanceTo(this.xs[i], this.ys[i]);
+            float dj = plane.distanceTo(this.xs[j], this.ys[j]);
+
+            float x, y;
+            if (di == 0) {
+                x = this.xs[i];
+                y = this.ys[i];
+            } else if ((di < 0 && dj > 0) || (di > 0 && dj < 0)) {
+                float t = di / (di - dj);
+                x = this.xs[i] + (this.xs[j] - this.xs[i]) * t;
+                y = this.ys[i] + (this.ys[j] - this.ys[i]) * t;
+            } else {
+                continue;
+            }
+
+            float t = nx * y - ny * x;
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+
+        range[0] = min;
+        range[1] = max;
+        return min < max;
+    }
+
+    /**
+     * Keeps the part of this region on one side of a plane.
+     */
+    void clip(Plane plane, boolean front, int source) {
+        // A convex region gains at most one vertex, but rounding can add more
+        float[] xs = new float[this.count * 2], ys = new float[this.count * 2];
+        int[] sources = new int[this.count * 2];
+        int count = 0;
+
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1) % this.count;
+            float di = plane.distanceTo(this.xs[i], this.ys[i]);
+            float dj = plane.distanceTo(this.xs[j], this.ys[j]);
+            if (!front) {
+                di = -di;
+                dj = -dj;
+            }
+
+            if (di >= 0) {
+                xs[count] = this.xs[i];
+                ys[count] = this.ys[i];
+                sources[count++] = this.sources[i];
+                if (dj < 0) {
+                    float t = di / (di - dj);
+                    xs[count] = this.xs[i] + (this.xs[j] - this.xs[i]) * t;
+                    ys[count] = this.ys[i] + (this.ys[j] - this.ys[i]) * t;
+                    sources[count++] = source;
+                }
+            } else if (dj >= 0) {
+                float t = di / (di - dj);
+                xs[count] = this.xs[i] + (this.xs[j] - this.xs[i]) * t;
+                ys[count] = this.ys[i] + (this.ys[j] - this.ys[i]) * t;
+                sources[count++] = this.sources[i];
+            }
+        }
+
+        this.xs = xs;
+        this.ys = ys;
+        this.sources = sources;
+        this.count = count;
+    }
+}
@@ -0,0 +1,165 @@
+package com.evrhel.bsp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the <code>Portal</code>s between the leaves of a <code>SolidLeafTree</code>
+ * and the walls facing each leaf, while the tree is being built. The cells of the
+ * <code>Portal</code>s added here are leaf indices.
+ * <p>
+ * Nearly coincident planes leave slivers: leaves narrower than the tolerance, which can
+ * run across a wall whose split left a gap of the same width. A sliver is collapsed by
+ * connecting the leaves on its two long sides wherever their <code>Portal</code>s
+ * overlap along it.
+ */
+class LeafGraph {
+
+    private final float epsilon;
+    private final List<List<Portal>> portals; // portals bordering each leaf
+    private final List<List<Polygon>> walls;
+    private final float[][] slivers; // direction along each sliver, null for other leaves
+
+    LeafGraph(int leafCount, float epsilon) {
+        this.epsilon = epsilon;
+        this.portals = new ArrayList<>(leafCount);
+        this.walls = new ArrayList<>(leafCount);
+        for (int i = 0; i < leafCount; i++) {
+            this.portals.add(new ArrayList<>());
+            this.walls.add(new ArrayList<>());
+        }
+        this.slivers = new float[leafCount][];
+    }
+
+    void addPortal(Portal portal) {
+        this.portals.get(portal.frontCell).add(portal);
+        this.portals.get(portal.behindCell).add(portal);
+    }
+
+    void addWall(int leaf, Polygon poly) {
+        List<Polygon> leafWalls = this.walls.get(leaf);
+        if (!leafWalls.contains(poly))
+            leafWalls.add(poly);
+    }
+
+    /**
+     * Records the region of a leaf, marking it as a sliver if it is too narrow.
+     */
+    void setRegion(int leaf, ConvexRegion region) {
+        if (region.width() <= this.epsilon) {
+            float[] axis = { 1, 0 };
+            region.axis(axis);
+            this.slivers[leaf] = axis;
+        }
+    }
+
+    boolean isSliver(int leaf) {
+        return this.slivers[leaf] != null;
+    }
+
+    List<Polygon> getWalls(int leaf) {
+        return this.walls.get(leaf);
+    }
+
+    /**
+     * Returns every <code>Portal</code>, each once.
+     */
+    List<Portal> getPortals() {
+        List<Portal> result = new ArrayList<>();
+        for (int i = 0; i < this.portals.size(); i++) {
+            for (Portal portal : this.portals.get(i)) {
+                if (portal.frontCell == i)
+                    result.add(portal);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Labels each leaf with a representative of the leaves connected to it.
+     */
+    int[] components() {
+        int[] parents = new int[this.portals.size()];
+        for (int i = 0; i < parents.length; i++)
+            parents[i] = i;
+
+        for (Portal portal : getPortals())
+            parents[find(parents, portal.frontCell)] = find(parents, portal.behindCell);
+
+        for (int i = 0; i < parents.length; i++)
+            parents[i] = find(parents, i);
+        return parents;
+    }
+
+    private static int find(int[] parents, int leaf) {
+        while (parents[leaf] != leaf) {
+            parents[leaf] = parents[parents[leaf]];
+            leaf = parents[leaf];
+        }
+        return leaf;
+    }
+
+    /**
+     * Collapses every sliver, leaving it without <code>Portal</code>s.
+     */
+    void collapseSlivers() {
+        for (int i = 0; i < this.slivers.length; i++) {
+            if (this.slivers[i] != null)
+                collapse(i);
+        }
+    }
+
+    private void collapse(int sliver) {
+        float ax = this.slivers[sliver][0], ay = this.slivers[sliver][1];
+
+        List<Portal> sides = new ArrayList<>();
+        for (Portal portal : this.portals.get(sliver)) {
+            this.portals.get(other(portal, sliver)).remove(portal);
+
+            // Portals across the ends of the sliver lead nowhere new
+            float across = outwardX(portal, sliver) * -ay + outwardY(portal, sliver) * ax;
+            if (Math.abs(across) >= 0.5f)
+                sides.add(portal);
+        }
+        this.portals.get(sliver).clear();
+
+        for (Portal a : sides) {
+            float aAcross = outwardX(a, sliver) * -ay + outwardY(a, sliver) * ax;
+            if (aAcross <= 0)
+                continue;
+
+            float a0 = a.startX * ax + a.startY * ay, a1 = a.endX * ax + a.endY * ay;
+            for (Portal b : sides) {
+                float bAcross = outwardX(b, sliver) * -ay + outwardY(b, sliver) * ax;
+                int aLeaf = other(a, sliver), bLeaf = other(b, sliver);
+                if (bAcross >= 0 || aLeaf == bLeaf)
+                    continue;
+
+                float b0 = b.startX * ax + b.startY * ay, b1 = b.endX * ax + b.endY * ay;
+                float lo = Math.max(Math.min(a0, a1), Math.min(b0, b1));
+                float hi = Math.min(Math.max(a0, a1), Math.max(b0, b1));
+                if (hi - lo <= this.epsilon)
+                    continue;
+
+                // The overlap, placed on the line of a
+                float u0 = (lo - a0) / (a1 - a0), u1 = (hi - a0) / (a1 - a0);
+                float dx = a.endX - a.startX, dy = a.endY - a.startY;
+                addPortal(new Portal(a.startX + dx * u0, a.startY + dy * u0, a.startX + dx * u1, a.startY + dy * u1,
+                        outwardX(a, sliver), outwardY(a, sliver), aLeaf, bLeaf));
+            }
+        }
+    }
+
+    private static int other(Portal portal, int leaf) {
+        return portal.frontCell == leaf ? portal.behindCell : portal.frontCell;
+    }
+
+    // Normal of a portal pointing out of a leaf
+    private static float outwardX(Portal portal, int leaf) {
+        return portal.frontCell == leaf ? -portal.normalX : portal.normalX;
+    }
+
+    private static float outwardY(Portal portal, int leaf) {
+        return portal.frontCell == leaf ? -portal.normalY : portal.normalY;
+    }
+}
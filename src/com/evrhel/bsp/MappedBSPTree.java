@@ -0,0 +1,327 @@
+package com.evrhel.bsp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Defines a compiled BSP tree read in place from a buffer in the format of
+ * <code>BSPFile</code>, usually a memory-mapped file. Queries read the planes, bounds and
+ * segments directly from the buffer, so opening a tree costs one validation pass and no
+ * <code>Polygon</code> is created unless asked for.
+ * <p>
+ * Indices are the same as those of the <code>CompiledBSPTree</code> which was written.
+ * The buffer is only read with absolute gets, so this class is thread-safe.
+ *
+ * @see BSPFile#map(java.nio.file.Path)
+ */
+public class MappedBSPTree {
+
+    private final ByteBuffer buffer;
+    private final int nodeCount, polyCount, stringCount;
+    private final int nodes, polys, offsets, strings; // offsets of each section
+
+    /**
+     * Opens a tree stored in a buffer, validating it.
+     *
+     * @throws IOException If the buffer does not hold a valid tree.
+     */
+    MappedBSPTree(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int size = buffer.limit();
+        if (size < BSPFile.HEADER_SIZE || buffer.getInt(0) != BSPFile.MAGIC)
+            throw new IOException("Not a BSP file");
+
+        int version = buffer.getInt(4);
+        if (version != BSPFile.VERSION)
+            throw new IOException("Unsupported BSP file version: " + version);
+
+        this.nodeCount = buffer.getInt(8);
+        this.polyCount = buffer.getInt(12);
+        this.stringCount = buffer.getInt(16);
+        if (this.nodeCount < 0 || this.polyCount < 0 || this.stringCount < 0)
+            throw new IOException("Malformed BSP file: negative count");
+
+        long nodes = BSPFile.HEADER_SIZE;
+        long polys = nodes + (long)this.nodeCount * BSPFile.NODE_SIZE;
+        long offsets = polys + (long)this.polyCount * BSPFile.POLY_SIZE;
+        long strings = offsets + 4L * (this.stringCount + 1);
+        if (strings > size)
+            throw new IOException("Malformed BSP file: truncated");
+
+        this.nodes = (int)nodes;
+        this.polys = (int)polys;
+        this.offsets = (int)offsets;
+        this.strings = (int)strings;
+
+        validate(size);
+    }
+
+    /**
+     * Returns the number of nodes in this tree.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the number of <code>Polygon</code>s in this tree.
+     *
+     * @return The <code>Polygon</code> count.
+     */
+    public int getPolygonCount() {
+        return this.polyCount;
+    }
+
+    /**
+     * Returns the x-coordinate of the start of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getStartX(int index) {
+        return this.buffer.getFloat(poly(index) + BSPFile.POLY_START_X);
+    }
+
+    /**
+     * Returns the y-coordinate of the start of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getStartY(int index) {
+        return this.buffer.getFloat(poly(index) + BSPFile.POLY_START_Y);
+    }
+
+    /**
+     * Returns the x-coordinate of the end of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getEndX(int index) {
+        return this.buffer.getFloat(poly(index) + BSPFile.POLY_END_X);
+    }
+
+    /**
+     * Returns the y-coordinate of the end of the <code>Polygon</code> stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The coordinate.
+     */
+    public float getEndY(int index) {
+        return this.buffer.getFloat(poly(index) + BSPFile.POLY_END_Y);
+    }
+
+    /**
+     * Returns the name of the <code>Polygon</code> stored at an index, decoding it from
+     * the string table.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return The name, or <code>null</code> if none exists.
+     */
+    public String getName(int index) {
+        int name = this.buffer.getInt(poly(index) + BSPFile.POLY_NAME);
+        if (name < 0) return null;
+
+        int start = this.buffer.getInt(this.offsets + name * 4);
+        int end = this.buffer.getInt(this.offsets + name * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        this.buffer.get(this.strings + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a <code>Polygon</code> from the one stored at an index.
+     *
+     * @param index The index of the <code>Polygon</code>.
+     * @return A new <code>Polygon</code>.
+     */
+    public Polygon getPolygon(int index) {
+        return new Polygon(getName(index), getStartX(index), getStartY(index), getEndX(index), getEndY(index));
+    }
+
+    /**
+     * Writes the indices of the <code>Polygon</code>s of this tree back-to-front relative
+     * to a position into an array, in the same order as
+     * <code>CompiledBSPTree.order</code>. This performs no allocation.
+     *
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     * @param dest The destination array, must be able to hold <code>getPolygonCount()</code>
+     *             indices.
+     * @return The number of indices written to <code>dest</code>.
+     */
+    public int order(float x, float y, int[] dest) {
+        if (this.nodeCount == 0) return 0;
+        return order(0, x, y, dest, 0);
+    }
+
+    /**
+     * Writes the indices of the <code>Polygon</code>s touching an axis-aligned rectangle
+     * into an array, in an arbitrary order. Subtrees whose bounds miss the rectangle, or
+     * which lie on the far side of a plane the rectangle does not cross, are skipped.
+     * This performs no allocation.
+     *
+     * @param minX The minimum x-coordinate of the rectangle.
+     * @param minY The minimum y-coordinate of the rectangle.
+     * @param maxX The maximum x-coordinate of the rectangle.
+     * @param maxY The maximum y-coordinate of the rectangle.
+     * @param dest The destination array, must be able to hold <code>getPolygonCount()</code>
+     *             indices.
+     * @return The number of indices written to <code>dest</code>.
+     */
+    public int queryRectangle(float minX, float minY, float maxX, float maxY, int[] dest) {
+        if (this.nodeCount == 0) return 0;
+        return queryRectangle(0, minX, minY, maxX, maxY, dest, 0);
+    }
+
+    private int order(int node, float x, float y, int[] dest, int count) {
+        int base = node(node);
+        float prod = this.buffer.getFloat(base + BSPFile.NODE_PLANE_X) * x
+                + this.buffer.getFloat(base + BSPFile.NODE_PLANE_Y) * y
+                - this.buffer.getFloat(base + BSPFile.NODE_PLANE_D);
+        int behind = this.buffer.getInt(base + BSPFile.NODE_BEHIND);
+        int front = this.buffer.getInt(base + BSPFile.NODE_FRONT);
+
+        if (prod > 0) {
+            if (behind != CompiledBSPTree.NONE)
+                count = order(behind, x, y, dest, count);
+            count = emit(base, dest, count);
+            if (front != CompiledBSPTree.NONE)
+                count = order(front, x, y, dest, count);
+        } else if (prod < 0) {
+            if (front != CompiledBSPTree.NONE)
+                count = order(front, x, y, dest, count);
+            count = emit(base, dest, count);
+            if (behind != CompiledBSPTree.NONE)
+                count = order(behind, x, y, dest, count);
+        } else {
+            if (front != CompiledBSPTree.NONE)
+                count = order(front, x, y, dest, count);
+            if (behind != CompiledBSPTree.NONE)
+                count = order(behind, x, y, dest, count);
+        }
+        return count;
+    }
+
+    private int emit(int base, int[] dest, int count) {
+        int end = this.buffer.getInt(base + BSPFile.NODE_POLY_END);
+        for (int i = this.buffer.getInt(base + BSPFile.NODE_POLY_START); i < end; i++)
+            dest[count++] = i;
+        return count;
+    }
+
+    private int queryRectangle(int node, float minX, float minY, float maxX, float maxY, int[] dest, int count) {
+        while (node != CompiledBSPTree.NONE) {
+            int base = node(node);
+            if (this.buffer.getFloat(base + BSPFile.NODE_MAX_X) < minX || this.buffer.getFloat(base + BSPFile.NODE_MIN_X) > maxX
+                    || this.buffer.getFloat(base + BSPFile.NODE_MAX_Y) < minY || this.buffer.getFloat(base + BSPFile.NODE_MIN_Y) > maxY)
+                return count;
+
+            int side = SegmentMath.rectangleSide(this.buffer.getFloat(base + BSPFile.NODE_PLANE_X),
+                    this.buffer.getFloat(base + BSPFile.NODE_PLANE_Y), this.buffer.getFloat(base + BSPFile.NODE_PLANE_D),
+                    minX, minY, maxX, maxY);
+            if (side == RelativePosition.FRONT) {
+                node = this.buffer.getInt(base + BSPFile.NODE_FRONT);
+            } else if (side == RelativePosition.BEHIND) {
+                node = this.buffer.getInt(base + BSPFile.NODE_BEHIND);
+            } else {
+                int end = this.buffer.getInt(base + BSPFile.NODE_POLY_END);
+                for (int i = this.buffer.getInt(base + BSPFile.NODE_POLY_START); i < end; i++) {
+                    if (SegmentMath.intersectsRectangle(getStartX(i), getStartY(i), getEndX(i), getEndY(i),
+                            minX, minY, maxX, maxY))
+                        dest[count++] = i;
+                }
+
+                count = queryRectangle(this.buffer.getInt(base + BSPFile.NODE_BEHIND), minX, minY, maxX, maxY, dest, count);
+                node = this.buffer.getInt(base + BSPFile.NODE_FRONT);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks every index in the buffer once so traversals can trust them. Children must
+     * follow their parent, which also guarantees every traversal terminates, and no node
+     * may have two parents. The polygon ranges of the nodes, taken in-order as
+     * <code>CompiledBSPTree</code> places them, must cover every polygon exactly once, so
+     * no query can return more indices than there are polygons.
+     */
+    private void validate(int size) throws IOException {
+        BitSet referenced = new BitSet(this.nodeCount);
+        for (int i = 0; i < this.nodeCount; i++) {
+            int base = node(i);
+            int behind = this.buffer.getInt(base + BSPFile.NODE_BEHIND);
+            int front = this.buffer.getInt(base + BSPFile.NODE_FRONT);
+            if (behind != CompiledBSPTree.NONE && (behind <= i || behind >= this.nodeCount)
+                    || front != CompiledBSPTree.NONE && (front <= i || front >= this.nodeCount))
+                throw new IOException("Malformed BSP file: bad child of node " + i);
+
+            for (int child : new int[] { behind, front }) {
+                if (child == CompiledBSPTree.NONE) continue;
+                if (referenced.get(child))
+                    throw new IOException("Malformed BSP file: node " + child + " has more than one parent");
+                referenced.set(child);
+            }
+
+            int start = this.buffer.getInt(base + BSPFile.NODE_POLY_START);
+            int end = this.buffer.getInt(base + BSPFile.NODE_POLY_END);
+            if (start < 0 || start > end || end > this.polyCount)
+                throw new IOException("Malformed BSP file: bad polygon range of node " + i);
+        }
+
+        // Each node now has at most one parent, so this visits each node at most once
+        int[] stack = new int[this.nodeCount];
+        int top = 0;
+        int node = this.nodeCount > 0 ? 0 : CompiledBSPTree.NONE;
+        int covered = 0;
+        while (node != CompiledBSPTree.NONE || top > 0) {
+            while (node != CompiledBSPTree.NONE) {
+                stack[top++] = node;
+                node = this.buffer.getInt(node(node) + BSPFile.NODE_BEHIND);
+            }
+
+            node = stack[--top];
+            int base = node(node);
+            if (this.buffer.getInt(base + BSPFile.NODE_POLY_START) != covered)
+                throw new IOException("Malformed BSP file: polygon range of node " + node
+                        + " overlaps another or leaves a gap");
+            covered = this.buffer.getInt(base + BSPFile.NODE_POLY_END);
+            node = this.buffer.getInt(base + BSPFile.NODE_FRONT);
+        }
+        if (covered != this.polyCount)
+            throw new IOException("Malformed BSP file: polygons outside every node");
+
+        for (int i = 0; i < this.polyCount; i++) {
+            int name = this.buffer.getInt(poly(i) + BSPFile.POLY_NAME);
+            if (name < -1 || name >= this.stringCount)
+                throw new IOException("Malformed BSP file: bad name of polygon " + i);
+        }
+
+        int previous = 0;
+        for (int i = 0; i <= this.stringCount; i++) {
+            int offset = this.buffer.getInt(this.offsets + i * 4);
+            if (offset < previous || (i == 0 && offset != 0))
+                throw new IOException("Malformed BSP file: bad string offset " + i);
+            previous = offset;
+        }
+        if ((long)this.strings + previous > size)
+            throw new IOException("Malformed BSP file: truncated");
+    }
+
+    private int node(int index) {
+        return this.nodes + index * BSPFile.NODE_SIZE;
+    }
+
+    private int poly(int index) {
+        Objects.checkIndex(index, this.polyCount);
+        return this.polys + index * BSPFile.POLY_SIZE;
+    }
+}
@@ -0,0 +1,139 @@
+package com.evrhel.bsp;
+
+import java.util.*;
+
+/**
+ * Finds the <code>Polygon</code>s of a <code>BSPTree</code> closest to a point with a
+ * branch-and-bound search. The side of each node's plane containing the point is
+ * searched first. The far side and the node's own <code>Polygon</code>s are only
+ * searched when the distance to the plane is below the current bound, and whole
+ * subtrees are skipped when their bounds are farther than it.
+ */
+class NearestQuery {
+
+    /**
+     * Finds the closest <code>Polygon</code> strictly nearer than the distance already
+     * held in <code>best</code>.
+     */
+    static void nearest(BSPNode node, float x, float y, ClosestPolygon best) {
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            if (node.boundsDistanceSquared(x, y) >= best.getDistanceSquared())
+                return;
+
+            TreeMetrics.planeTested();
+            float dist = node.plane.distanceTo(x, y);
+            BSPNode near, far;
+            if (dist >= 0) {
+                near = node.front();
+                far = node.behind();
+            } else {
+                near = node.behind();
+                far = node.front();
+            }
+
+            nearest(near, x, y, best);
+            if (dist * dist >= best.getDistanceSquared())
+                return; // nothing on or beyond the plane can be closer
+
+            List<Polygon> polys = node.polys;
+            for (int i = 0, size = polys.size(); i < size; i++) {
+                Polygon poly = polys.get(i);
+                float t = SegmentMath.closestParameter(x, y, poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY());
+                float px = poly.getStartX() + (poly.getEndX() - poly.getStartX()) * t;
+                float py = poly.getStartY() + (poly.getEndY() - poly.getStartY()) * t;
+                float distanceSquared = (px - x) * (px - x) + (py - y) * (py - y);
+                if (distanceSquared < best.getDistanceSquared())
+                    best.set(poly, distanceSquared, px, py);
+            }
+
+            node = far;
+        }
+    }
+
+    /**
+     * Finds up to <code>k</code> closest <code>Polygon</code>s within a maximum distance.
+     *
+     * @return The <code>Polygon</code>s, closest first.
+     */
+    static List<ClosestPolygon> nearest(BSPNode node, float x, float y, int k, float maxDistance) {
+        Candidates candidates = new Candidates(k, maxDistance * maxDistance);
+        nearest(node, x, y, candidates);
+        return candidates.toList();
+    }
+
+    private static void nearest(BSPNode node, float x, float y, Candidates candidates) {
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            if (node.boundsDistanceSquared(x, y) >= candidates.bound())
+                return;
+
+            TreeMetrics.planeTested();
+            float dist = node.plane.distanceTo(x, y);
+            BSPNode near, far;
+            if (dist >= 0) {
+                near = node.front();
+                far = node.behind();
+            } else {
+                near = node.behind();
+                far = node.front();
+            }
+
+            nearest(near, x, y, candidates);
+            if (dist * dist >= candidates.bound())
+                return;
+
+            List<Polygon> polys = node.polys;
+            for (int i = 0, size = polys.size(); i < size; i++) {
+                Polygon poly = polys.get(i);
+                float t = SegmentMath.closestParameter(x, y, poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY());
+                float px = poly.getStartX() + (poly.getEndX() - poly.getStartX()) * t;
+                float py = poly.getStartY() + (poly.getEndY() - poly.getStartY()) * t;
+                float distanceSquared = (px - x) * (px - x) + (py - y) * (py - y);
+                if (distanceSquared < candidates.bound())
+                    candidates.offer(poly, distanceSquared, px, py);
+            }
+
+            node = far;
+        }
+    }
+
+    /**
+     * The best <code>k</code> candidates found so far, kept in a max-heap on distance
+     * so the farthest one can be replaced cheaply.
+     */
+    private static class Candidates {
+
+        final PriorityQueue<ClosestPolygon> heap;
+        final int k;
+        final float maxDistanceSquared;
+
+        Candidates(int k, float maxDistanceSquared) {
+            this.heap = new PriorityQueue<>(k,
+                    Comparator.comparingDouble(ClosestPolygon::getDistanceSquared).reversed());
+            this.k = k;
+            this.maxDistanceSquared = maxDistanceSquared;
+        }
+
+        /**
+         * Returns the squared distance a <code>Polygon</code> must be below to be kept.
+         */
+        float bound() {
+            return this.heap.size() < this.k ? this.maxDistanceSquared : this.heap.peek().getDistanceSquared();
+        }
+
+        void offer(Polygon poly, float distanceSquared, float x, float y) {
+            if (this.heap.size() == this.k)
+                this.heap.poll();
+            this.heap.add(new ClosestPolygon(poly, distanceSquared, x, y));
+        }
+
+        List<ClosestPolygon> toList() {
+            List<ClosestPolygon> result = new ArrayList<>(this.heap);
+            result.sort(Comparator.comparingDouble(ClosestPolygon::getDistanceSquared));
+            return result;
+        }
+    }
+
+    private NearestQuery() { }
+}
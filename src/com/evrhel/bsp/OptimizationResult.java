@@ -0,0 +1,153 @@
+package com.evrhel.bsp;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Defines the outcome of <code>TreeOptimizer.optimize</code>: the best tree found, and
+ * the distribution of the scores of every tree built, which shows how much further
+ * searching could be expected to gain.
+ */
+public class OptimizationResult {
+
+    private final BSPTree tree;
+    private final TreeStatistics statistics;
+    private final double score;
+    private final int trial;
+    private final double locateCost;
+    private final double[] scores; // sorted ascending
+    private final int failedTrials;
+    private final long elapsedNanos;
+
+    OptimizationResult(BSPTree tree, TreeStatistics statistics, double score, int trial, double locateCost,
+                       double[] scores, int failedTrials, long elapsedNanos) {
+        this.tree = tree;
+        this.statistics = statistics;
+        this.score = score;
+        this.trial = trial;
+        this.locateCost = locateCost;
+        this.scores = scores;
+        Arrays.sort(this.scores);
+        this.failedTrials = failedTrials;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the tree with the lowest score.
+     *
+     * @return The best <code>BSPTree</code>.
+     */
+    public BSPTree getTree() {
+        return this.tree;
+    }
+
+    /**
+     * Returns the statistics of the best tree.
+     *
+     * @return The <code>TreeStatistics</code> of <code>getTree()</code>.
+     */
+    public TreeStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Returns the score of the best tree.
+     *
+     * @return The lowest score, lower is better.
+     */
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Returns the index of the trial which built the best tree. Passing the same seed
+     * to another <code>TreeOptimizer</code> builds the same tree in the same trial.
+     *
+     * @return The trial index.
+     */
+    public int getTrial() {
+        return this.trial;
+    }
+
+    /**
+     * Returns the mean number of planes the best tree tests to locate a point sampled
+     * uniformly over the bounds of its input.
+     *
+     * @return The expected point query cost.
+     */
+    public double getLocateCost() {
+        return this.locateCost;
+    }
+
+    /**
+     * Returns the number of trees built and scored.
+     *
+     * @return The trial count, not including failed trials.
+     */
+    public int getTrials() {
+        return this.scores.length;
+    }
+
+    /**
+     * Returns the number of trials which failed to build a tree, because the tree was
+     * too deep for the stack.
+     *
+     * @return The failed trial count.
+     */
+    public int getFailedTrials() {
+        return this.failedTrials;
+    }
+
+    /**
+     * Returns the scores of every tree built.
+     *
+     * @return A new array of the scores, in ascending order.
+     */
+    public double[] getScores() {
+        return this.scores.clone();
+    }
+
+    /**
+     * Returns a percentile of the scores of every tree built.
+     *
+     * @param percentile The percentile, in <code>[0, 100]</code>.
+     * @return The score at or below which <code>percentile</code> percent of the trees
+     * scored, by the nearest rank.
+     */
+    public double getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("percentile must be in [0, 100]");
+        return this.scores[(int)Math.round((this.scores.length - 1) * percentile / 100)];
+    }
+
+    /**
+     * Returns the mean score of every tree built.
+     *
+     * @return The mean score.
+     */
+    public double getMeanScore() {
+        double sum = 0;
+        for (double score : this.scores)
+            sum += score;
+        return sum / this.scores.length;
+    }
+
+    /**
+     * Returns how long the search took.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "OptimizationResult[score=%.4f, trial=%d, trials=%d, failed=%d, min=%.4f, p10=%.4f, median=%.4f, "
+                        + "p90=%.4f, max=%.4f, mean=%.4f, locateCost=%.2f, elapsed=%.3f s, %s]",
+                this.score, this.trial, this.scores.length, this.failedTrials, getPercentile(0), getPercentile(10),
+                getPercentile(50), getPercentile(90), getPercentile(100), getMeanScore(), this.locateCost,
+                this.elapsedNanos / 1e9, this.statistics);
+    }
+}
@@ -0,0 +1,263 @@
+package com.evrhel.bsp;
+
+import java.util.*;
+
+/**
+ * Caches the back-to-front orderings of a <code>BSPTree</code> by the leaf cell
+ * containing the viewpoint.
+ * <p>
+ * An ordering depends on which side of every node's plane the viewpoint lies, not only
+ * on the planes along the path to its cell, so one cell can need several orderings.
+ * Each cached ordering is therefore stored with the convex region of viewpoints sharing
+ * it, described by the few planes bounding that region. Nodes without children order
+ * their polygons the same from either side, so their planes do not bound it. A lookup
+ * locates the cell, then tests the viewpoint against the regions cached for it.
+ * <p>
+ * Cells are evicted in least-recently-used order once more than the maximum number are
+ * cached, and every cell is evicted once the tree is modified. Returned orderings are
+ * shared and unmodifiable. This class is thread-safe.
+ */
+public class OrderingCache {
+
+    /**
+     * The number of orderings kept for each cell.
+     */
+    public static final int ORDERINGS_PER_CELL = 4;
+
+    private final BSPTree tree;
+    private final Map<Integer, Deque<Entry>> cells;
+    private long hits, misses;
+    private int modCount; // the tree's modification count the cached orderings belong to
+
+    /**
+     * Creates an empty <code>OrderingCache</code> for a <code>BSPTree</code>.
+     *
+     * @param tree The <code>BSPTree</code> whose orderings are cached.
+     * @param maxCells The maximum number of cells with cached orderings, must be positive.
+     */
+    public OrderingCache(BSPTree tree, int maxCells) {
+        if (maxCells <= 0)
+            throw new IllegalArgumentException("maxCells must be positive");
+
+        this.tree = tree;
+        this.modCount = tree.getModCount();
+        this.cells = new LinkedHashMap<Integer, Deque<Entry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Deque<Entry>> eldest) {
+                return size() > maxCells;
+            }
+        };
+    }
+
+    /**
+     * Returns the <code>Polygon</code>s of the tree back-to-front relative to a position,
+     * in the same order as <code>BSPTree.iterator(Vector2)</code>.
+     *
+     * @param position The position to determine the order.
+     * @return The shared, unmodifiable ordering.
+     */
+    public synchronized List<Polygon> getOrdering(Vector2 position) {
+        if (this.modCount != this.tree.getModCount()) {
+            this.cells.clear();
+            this.modCount = this.tree.getModCount();
+        }
+
+        int cell = this.tree.locate(position.x, position.y);
+
+        Deque<Entry> entries = this.cells.get(cell);
+        if (entries != null) {
+            for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.contains(position.x, position.y)) {
+                    // Move to the front so the most recent ordering is tested first
+                    it.remove();
+                    entries.addFirst(entry);
+                    this.hits++;
+                    return entry.ordering;
+                }
+            }
+        }
+
+        this.misses++;
+
+        List<Polygon> polys = new ArrayList<>(this.tree.getPolygonCount());
+        this.tree.traverseBackToFront(position.x, position.y, polys::add);
+        List<Polygon> ordering = Collections.unmodifiableList(polys);
+
+        Entry entry = Entry.create(this.tree.getRoot(), position.x, position.y, ordering);
+        if (entry != null) {
+            if (entries == null) {
+                entries = new ArrayDeque<>(ORDERINGS_PER_CELL);
+                this.cells.put(cell, entries);
+            } else if (entries.size() == ORDERINGS_PER_CELL) {
+                entries.removeLast();
+            }
+            entries.addFirst(entry);
+        }
+
+        return ordering;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of lookups which had to traverse the tree.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Removes every cached ordering. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        this.cells.clear();
+    }
+
+    /**
+     * A cached ordering and the convex region of viewpoints sharing it.
+     */
+    private static class Entry {
+
+        private static final float EPSILON = 1e-4f; // relative distance treated as touching
+
+        final List<Polygon> ordering;
+        final Plane[] planes; // planes bounding the region
+        final boolean[] front; // whether the region is in front of each plane
+        final Plane[] crossing; // planes of nodes without children crossing the region
+        final float minX, minY, maxX, maxY;
+
+        Entry(List<Polygon> ordering, Plane[] planes, boolean[] front, Plane[] crossing,
+              float minX, float minY, float maxX, float maxY) {
+            this.ordering = ordering;
+            this.planes = planes;
+            this.front = front;
+            this.crossing = crossing;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(float x, float y) {
+            if (x <= this.minX || x >= this.maxX || y <= this.minY || y >= this.maxY)
+                return false;
+
+            for (int i = 0; i < this.planes.length; i++) {
+                float dist = this.planes[i].distanceTo(x, y);
+                if (this.front[i] ? !(dist > 0) : !(dist < 0))
+                    return false;
+            }
+
+            // A viewpoint on the plane of a node leaves out its polygons
+            for (Plane plane : this.crossing) {
+                if (plane.distanceTo(x, y) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Computes the region of viewpoints sharing the ordering of <code>(x, y)</code> by
+         * clipping a box around the tree with the plane of each node. A node without
+         * children orders its polygons the same from either side, so its plane only has
+         * to be kept if it crosses the region, where viewpoints on it must be turned away.
+         * A plane is only clipped with if it cuts the region, so a miss mostly costs one
+         * distance test per vertex of the region for each node.
+         *
+         * @return The entry, or <code>null</code> if <code>(x, y)</code> lies on a plane.
+         */
+        static Entry create(BSPNode root, float x, float y, List<Polygon> ordering) {
+            // A box around the tree and the viewpoint, with room to spare
+            float minX = x, minY = y, maxX = x, maxY = y;
+            if (root != null) {
+                minX = Math.min(minX, root.minX);
+                minY = Math.min(minY, root.minY);
+                maxX = Math.max(maxX, root.maxX);
+                maxY = Math.max(maxY, root.maxY);
+            }
+            float margin = Math.max(1, Math.max(maxX - minX, maxY - minY));
+            minX -= margin;
+            minY -= margin;
+            maxX += margin;
+            maxY += margin;
+
+            ConvexRegion region = new ConvexRegion(minX, minY, maxX, maxY);
+            float epsilon = EPSILON * margin;
+            List<Plane> candidates = new ArrayList<>();
+            List<Boolean> candidateSides = new ArrayList<>(); // null for the plane of a node without children
+            if (!clip(root, x, y, region, epsilon, candidates, candidateSides))
+                return null;
+
+            // Keep the planes still bounding the region along with any nearly touching it
+            List<Plane> bounding = new ArrayList<>();
+            List<Boolean> boundingSides = new ArrayList<>();
+            List<Plane> crossing = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                Plane plane = candidates.get(i);
+                Boolean side = candidateSides.get(i);
+                if (side == null) {
+                    if (region.distanceTo(plane, plane.distanceTo(x, y) > 0) <= epsilon)
+                        crossing.add(plane);
+                } else if (region.hasEdge(i) || region.distanceTo(plane, side) <= epsilon) {
+                    bounding.add(plane);
+                    boundingSides.add(side);
+                }
+            }
+
+            boolean[] front = new boolean[bounding.size()];
+            for (int i = 0; i < front.length; i++)
+                front[i] = boundingSides.get(i);
+
+            return new Entry(ordering, bounding.toArray(new Plane[0]), front, crossing.toArray(new Plane[0]),
+                    minX, minY, maxX, maxY);
+        }
+
+        /**
+         * Clips a region to the side of each plane in a subtree containing
+         * <code>(x, y)</code>, recording the planes which cut it or nearly touch it.
+         *
+         * @return <code>false</code> if <code>(x, y)</code> lies on a plane or the region
+         *         becomes empty.
+         */
+        private static boolean clip(BSPNode node, float x, float y, ConvexRegion region, float epsilon,
+                                    List<Plane> planes, List<Boolean> sides) {
+            if (node == null) return true;
+
+            float dist = node.plane.distanceTo(x, y);
+            if (dist == 0) return false;
+            boolean front = dist > 0;
+
+            float clearance = region.distanceTo(node.plane, front);
+            if (node.behind() == null && node.front() == null) {
+                if (clearance <= epsilon) {
+                    planes.add(node.plane);
+                    sides.add(null);
+                }
+                return true;
+            }
+
+            if (clearance < 0) {
+                region.clip(node.plane, front, planes.size());
+                if (region.isEmpty())
+                    return false;
+            }
+            if (clearance <= epsilon) {
+                planes.add(node.plane);
+                sides.add(front);
+            }
+
+            return clip(node.behind(), x, y, region, epsilon, planes, sides)
+                    && clip(node.front(), x, y, region, epsilon, planes, sides);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.evrhel.bsp;
+
+/**
+ * Describes a line of a <code>World</code> text file which could not be parsed.
+ *
+ * @see WorldLoader
+ */
+public class ParseError {
+
+    private final long line;
+    private final String message;
+    private final String text;
+
+    /**
+     * Creates a new <code>ParseError</code>.
+     *
+     * @param line The 1-based number of the line.
+     * @param message A description of what is wrong with the line.
+     * @param text The text of the line, with surrounding whitespace removed.
+     */
+    public ParseError(long line, String message, String text) {
+        this.line = line;
+        this.message = message;
+        this.text = text;
+    }
+
+    /**
+     * Returns the 1-based number of the line which could not be parsed.
+     *
+     * @return The line number.
+     */
+    public long getLine() {
+        return this.line;
+    }
+
+    /**
+     * Returns a description of what is wrong with the line.
+     *
+     * @return The message.
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Returns the text of the line, with surrounding whitespace removed.
+     *
+     * @return The text.
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    @Override
+    public String toString() {
+        return "Line " + this.line + ": " + this.message + ": \"" + this.text + "\"";
+    }
+}
@@ -1,11 +1,18 @@
 package com.evrhel.bsp;
 
 /**
- * Defines a 2D plane.
+ * Defines a 2D plane through an origin point with a unit normal <code>(nx, ny)</code>,
+ * which is the set of points satisfying <code>nx * x + ny * y = d</code>. Distances are
+ * measured from the origin rather than through <code>d</code>, as
+ * <code>nx * x + ny * y - d</code> loses most of its precision to cancellation far
+ * from <code>(0, 0)</code>, and points on the plane would no longer measure exactly
+ * <code>0</code>.
  */
 public class Plane {
 
-    private final Vector2 origin, normal;
+    private final float originX, originY;
+    private final float normalX, normalY;
+    private final float distance;
 
     /**
      * Constructs a <code>Plane</code> such that all points contained in
@@ -15,7 +22,7 @@ public class Plane {
      *             from.
      */
     public Plane(Polygon poly) {
-        this(poly.getStart(), poly.getNormal());
+        this(poly.getStartX(), poly.getStartY(), poly.getNormalX(), poly.getNormalY());
     }
 
     /**
@@ -27,8 +34,25 @@ public class Plane {
      * @param normal The normal vector of the <code>Plane</code>.
      */
     public Plane(Vector2 origin, Vector2 normal) {
-        this.origin = new Vector2(origin);
-        this.normal = normal.normalize();
+        this(origin.x, origin.y, normal.x, normal.y);
+    }
+
+    /**
+     * Constructs a <code>Plane</code> using the coordinates of an origin point and a
+     * normal vector.
+     *
+     * @param originX The x-coordinate of the origin.
+     * @param originY The y-coordinate of the origin.
+     * @param normalX The x-component of the normal, need not be normalized.
+     * @param normalY The y-component of the normal, need not be normalized.
+     */
+    public Plane(float originX, float originY, float normalX, float normalY) {
+        float invLength = 1.0f / (float)Math.sqrt(normalX * normalX + normalY * normalY);
+        this.originX = originX;
+        this.originY = originY;
+        this.normalX = normalX * invLength;
+        this.normalY = normalY * invLength;
+        this.distance = this.normalX * originX + this.normalY * originY;
     }
 
     /**
@@ -37,7 +61,25 @@ public class Plane {
      * @return The origin.
      */
     public Vector2 getOrigin() {
-        return new Vector2(this.origin);
+        return new Vector2(this.originX, this.originY);
+    }
+
+    /**
+     * Returns the x-coordinate of the origin of the <code>Plane</code>.
+     *
+     * @return The x-coordinate.
+     */
+    public float getOriginX() {
+        return this.originX;
+    }
+
+    /**
+     * Returns the y-coordinate of the origin of the <code>Plane</code>.
+     *
+     * @return The y-coordinate.
+     */
+    public float getOriginY() {
+        return this.originY;
     }
 
     /**
@@ -46,11 +88,52 @@ public class Plane {
      * @return The normal.
      */
     public Vector2 getNormal() {
-        return new Vector2(this.normal);
+        return new Vector2(this.normalX, this.normalY);
+    }
+
+    /**
+     * Returns the x-component of the unit normal of the <code>Plane</code>.
+     *
+     * @return The x-component.
+     */
+    public float getNormalX() {
+        return this.normalX;
+    }
+
+    /**
+     * Returns the y-component of the unit normal of the <code>Plane</code>.
+     *
+     * @return The y-component.
+     */
+    public float getNormalY() {
+        return this.normalY;
+    }
+
+    /**
+     * Returns the signed distance of the <code>Plane</code> from <code>(0, 0)</code>
+     * along its normal, the <code>d</code> in <code>nx * x + ny * y = d</code>.
+     *
+     * @return The distance.
+     */
+    public float getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Returns the signed distance of a point from this <code>Plane</code>, computed as
+     * <code>dot(p - origin, normal)</code>. The distance is positive in front of the
+     * <code>Plane</code> and negative behind it.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The signed distance.
+     */
+    public float distanceTo(float x, float y) {
+        return this.normalX * (x - this.originX) + this.normalY * (y - this.originY);
     }
 
     @Override
     public String toString() {
-        return "Plane[origin=" + this.origin + ",normal=" + this.normal + "]";
+        return "Plane[origin=" + getOrigin() + ",normal=" + getNormal() + "]";
     }
 }
@@ -0,0 +1,72 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines a batch classifier which determines the <code>RelativePosition</code> of many
+ * segments against one <code>Plane</code> at once. Segments are given in
+ * structure-of-arrays form, with each endpoint coordinate in its own array.
+ * <p>
+ * Results are identical to classifying each segment with
+ * <code>RelativePosition.positionOf(Plane, float, float, float, float)</code>.
+ */
+public abstract class PlaneClassifier {
+
+    private static final PlaneClassifier SCALAR = new ScalarPlaneClassifier();
+    private static final PlaneClassifier DEFAULT = loadDefault();
+
+    /**
+     * Returns the fastest <code>PlaneClassifier</code> available. This is a SIMD
+     * classifier using the <code>jdk.incubator.vector</code> module when that module
+     * is present, and a scalar classifier otherwise.
+     *
+     * @return The <code>PlaneClassifier</code>.
+     */
+    public static PlaneClassifier getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a <code>PlaneClassifier</code> which classifies one segment at a time.
+     *
+     * @return The scalar <code>PlaneClassifier</code>.
+     */
+    public static PlaneClassifier getScalar() {
+        return SCALAR;
+    }
+
+    private static PlaneClassifier loadDefault() {
+        try {
+            return (PlaneClassifier)Class.forName("com.evrhel.bsp.VectorPlaneClassifier")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // The incubator module is not available at runtime
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Classifies a block of segments against a <code>Plane</code>.
+     *
+     * @param plane The <code>Plane</code>.
+     * @param startX The x-coordinates of the start points.
+     * @param startY The y-coordinates of the start points.
+     * @param endX The x-coordinates of the end points.
+     * @param endY The y-coordinates of the end points.
+     * @param offset The index of the first segment to classify.
+     * @param count The number of segments to classify.
+     * @param dest Receives the <code>RelativePosition</code> of each segment, at the same
+     *             index as the segment.
+     */
+    public abstract void classify(Plane plane, float[] startX, float[] startY, float[] endX, float[] endY,
+                                  int offset, int count, int[] dest);
+
+    /**
+     * Classifies segments one at a time. Subclasses use this for the elements left
+     * over after their blocks.
+     */
+    static void classifyScalar(Plane plane, float[] startX, float[] startY, float[] endX, float[] endY,
+                               int from, int to, int[] dest) {
+        for (int i = from; i < to; i++)
+            dest[i] = RelativePosition.positionOf(plane, startX[i], startY[i], endX[i], endY[i]);
+    }
+}
@@ -0,0 +1,65 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines the result of locating a point in a <code>BSPTree</code>: the leaf cell
+ * containing the point and the path of plane sides taken from the root to reach it.
+ */
+public class PointLocation {
+
+    private final int cell;
+    private final Plane[] planes;
+    private final int[] sides;
+
+    PointLocation(int cell, Plane[] planes, int[] sides) {
+        this.cell = cell;
+        this.planes = planes;
+        this.sides = sides;
+    }
+
+    /**
+     * Returns the identifier of the cell containing the point, as returned by
+     * <code>BSPTree.locate</code>.
+     *
+     * @return The cell identifier.
+     */
+    public int getCell() {
+        return this.cell;
+    }
+
+    /**
+     * Returns the number of planes tested to reach the cell.
+     *
+     * @return The depth of the cell.
+     */
+    public int getDepth() {
+        return this.sides.length;
+    }
+
+    /**
+     * Returns a <code>Plane</code> along the path, starting from the root.
+     *
+     * @param level The index along the path, less than <code>getDepth()</code>.
+     * @return The <code>Plane</code> tested at <code>level</code>.
+     */
+    public Plane getPlane(int level) {
+        return this.planes[level];
+    }
+
+    /**
+     * Returns the side of a <code>Plane</code> along the path the point lies on.
+     *
+     * @param level The index along the path, less than <code>getDepth()</code>.
+     * @return <code>RelativePosition.FRONT</code> or <code>RelativePosition.BEHIND</code>.
+     */
+    public int getSide(int level) {
+        return this.sides[level];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder path = new StringBuilder();
+        for (int side : this.sides)
+            path.append(side == RelativePosition.FRONT ? 'F' : 'B');
+        return "PointLocation[cell=" + this.cell + ",path=" + path + "]";
+    }
+}
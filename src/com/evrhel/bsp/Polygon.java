@@ -1,16 +1,17 @@
 package com.evrhel.bsp;
 
-import static com.evrhel.bsp.Vector2.*;
-
 /**
  * Defines a polygon - sort of. This polygon is actually just a line segment but is
  * named this way to indicate the BSP algorithm can be abstracted to higher dimensions.
  */
 public class Polygon {
 
+    static final float SLIVER_EPSILON = 1e-5f; // relative length below which fragments are slivers
+
     private final String name;
-    private final Vector2 start, end;
-    private final Vector2 normal;
+    private final float startX, startY, endX, endY;
+    private final float normalX, normalY;
+    final Polygon origin; // the Polygon this one was split from, or itself
 
     /**
      * Creates a new <code>Polygon</code> with a name and a start and end point.
@@ -20,12 +21,46 @@ public class Polygon {
      * @param end The end point of the <code>Polygon</code>.
      */
     public Polygon(String name, Vector2 start, Vector2 end) {
+        this(name, start.x, start.y, end.x, end.y);
+    }
+
+    /**
+     * Creates a new <code>Polygon</code> with a name and the coordinates of a start and
+     * end point.
+     *
+     * @param name The name of the <code>Polygon</code>, can be <code>null</code>.
+     * @param startX The x-coordinate of the start point.
+     * @param startY The y-coordinate of the start point.
+     * @param endX The x-coordinate of the end point.
+     * @param endY The y-coordinate of the end point.
+     */
+    public Polygon(String name, float startX, float startY, float endX, float endY) {
         this.name = name;
-        this.start = new Vector2(start);
-        this.end = new Vector2(end);
-        this.normal = this.end  .sub(this.start)
-                                .normalize()
-                                .rotate(90);
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+
+        // The normal is the direction rotated 90 degrees counter-clockwise
+        float dx = endX - startX, dy = endY - startY;
+        float invLength = 1.0f / (float)Math.sqrt(dx * dx + dy * dy);
+        this.normalX = -dy * invLength;
+        this.normalY = dx * invLength;
+        this.origin = this;
+    }
+
+    /**
+     * Creates a fragment of another <code>Polygon</code>, sharing its normal.
+     */
+    private Polygon(String name, float startX, float startY, float endX, float endY, Polygon parent) {
+        this.name = name;
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+        this.normalX = parent.normalX;
+        this.normalY = parent.normalY;
+        this.origin = parent.origin;
     }
 
     /**
@@ -44,7 +79,7 @@ public class Polygon {
      * @return The start.
      */
     public Vector2 getStart() {
-        return new Vector2(this.start);
+        return new Vector2(this.startX, this.startY);
     }
 
     /**
@@ -53,7 +88,7 @@ public class Polygon {
      * @return The end.
      */
     public Vector2 getEnd() {
-        return new Vector2(this.end);
+        return new Vector2(this.endX, this.endY);
     }
 
     /**
@@ -62,7 +97,61 @@ public class Polygon {
      * @return The normal vector.
      */
     public Vector2 getNormal() {
-        return new Vector2(this.normal);
+        return new Vector2(this.normalX, this.normalY);
+    }
+
+    /**
+     * Returns the x-coordinate of the starting point of this <code>Polygon</code>.
+     *
+     * @return The x-coordinate.
+     */
+    public float getStartX() {
+        return this.startX;
+    }
+
+    /**
+     * Returns the y-coordinate of the starting point of this <code>Polygon</code>.
+     *
+     * @return The y-coordinate.
+     */
+    public float getStartY() {
+        return this.startY;
+    }
+
+    /**
+     * Returns the x-coordinate of the ending point of this <code>Polygon</code>.
+     *
+     * @return The x-coordinate.
+     */
+    public float getEndX() {
+        return this.endX;
+    }
+
+    /**
+     * Returns the y-coordinate of the ending point of this <code>Polygon</code>.
+     *
+     * @return The y-coordinate.
+     */
+    public float getEndY() {
+        return this.endY;
+    }
+
+    /**
+     * Returns the x-component of this <code>Polygon</code>'s normal vector.
+     *
+     * @return The x-component.
+     */
+    public float getNormalX() {
+        return this.normalX;
+    }
+
+    /**
+     * Returns the y-component of this <code>Polygon</code>'s normal vector.
+     *
+     * @return The y-component.
+     */
+    public float getNormalY() {
+        return this.normalY;
     }
 
     /**
@@ -73,27 +162,44 @@ public class Polygon {
      * and Vector2.NaN() if the polygon is contained in the plane.
      */
     public Vector2 intersection(Plane plane) {
+        float d = intersectionParameter(plane);
+        if (Float.isNaN(d)) return null;
+        if (Float.isInfinite(d)) return Vector2.NaN(); // contained
+
+        return new Vector2(this.startX + (this.endX - this.startX) * d,
+                this.startY + (this.endY - this.startY) * d);
+    }
+
+    /**
+     * Calculates where along this polygon it intersects a plane, without allocating.
+     * The intersection point is <code>start + (end - start) * d</code> for the returned
+     * <code>d</code>.
+     *
+     * @param plane The plane to intersect this polygon with.
+     * @return The parameter <code>d</code> in <code>[0, 1]</code>, <code>Float.NaN</code>
+     * if the plane and polygon do not intersect, and <code>Float.POSITIVE_INFINITY</code>
+     * if the polygon is contained in the plane.
+     */
+    public float intersectionParameter(Plane plane) {
         // represent polygon as
         // l_0 + ld for l_0 = start, l = direction, and d [0, 1]
 
-        Vector2 dir = this.end.sub(this.start);
-        Vector2 planeNormal = plane.getNormal();
-        Vector2 planeOrigin = plane.getOrigin();
+        float dirX = this.endX - this.startX, dirY = this.endY - this.startY;
 
         // intersection along this polygon as if it were an infinitely long line
-        float denominator = dot(dir, planeNormal);
-        if (denominator == 0) return null; // parallel
+        float denominator = dirX * plane.getNormalX() + dirY * plane.getNormalY();
+        if (denominator == 0) return Float.NaN; // parallel
 
-        float numerator = dot(planeOrigin.sub(this.start), planeNormal);
-        if (numerator == 0) return Vector2.NaN(); // contained
+        float numerator = -plane.distanceTo(this.startX, this.startY);
+        if (numerator == 0) return Float.POSITIVE_INFINITY; // contained
 
         float d = numerator / denominator;
 
         // intersection must be within the polygon
         if (d < 0 || d > 1)
-            return null;
+            return Float.NaN;
 
-        return dir.mul(d).add(this.start);
+        return d;
     }
 
     /**
@@ -108,18 +214,25 @@ public class Polygon {
      *             of <code>plane</code>.
      * @return <code>true</code> if the splitting was successful, or <code>false</code>
      * if <code>dest</code> is <code>null</code>, <code>dest.length != 2</code>, or
-     * this <code>Polygon</code> does not intersect <code>plane</code>.
+     * this <code>Polygon</code> does not cross <code>plane</code>.
      */
     public boolean split(Plane plane, Polygon[] dest) {
         if (dest == null || dest.length != 2) return false;
-        Vector2 intersection = intersection(plane);
-        if (intersection == null) return false;
 
-        Polygon first = new Polygon(name + "_1", start, intersection);
-        Polygon second = new Polygon(name + "_2", intersection, end);
+        float startDist = plane.distanceTo(this.startX, this.startY);
+        float endDist = plane.distanceTo(this.endX, this.endY);
+        if (!(startDist < 0 && endDist > 0) && !(startDist > 0 && endDist < 0))
+            return false;
 
-        // Determine relative locations of the two polygons
-        if (RelativePosition.positionOf(plane, first) == RelativePosition.FRONT) {
+        float d = startDist / (startDist - endDist);
+        float x = this.startX + (this.endX - this.startX) * d;
+        float y = this.startY + (this.endY - this.startY) * d;
+
+        Polygon first = new Polygon(this.name + "_1", this.startX, this.startY, x, y, this);
+        Polygon second = new Polygon(this.name + "_2", x, y, this.endX, this.endY, this);
+
+        // The side of the start point decides which half is in front
+        if (startDist > 0) {
             dest[RelativePosition.BEHIND] = second;
             dest[RelativePosition.FRONT] = first;
         } else {
@@ -130,8 +243,48 @@ public class Polygon {
         return true;
     }
 
+    /**
+     * Returns the part of this <code>Polygon</code> between two parameters along it,
+     * with the same name and normal.
+     *
+     * @param from The parameter of the start of the part, in <code>[0, 1]</code>.
+     * @param to The parameter of the end of the part, in <code>[0, 1]</code>.
+     * @return The part.
+     */
+    Polygon fragment(float from, float to) {
+        float dx = this.endX - this.startX, dy = this.endY - this.startY;
+        return new Polygon(this.name, this.startX + dx * from, this.startY + dy * from,
+                this.startX + dx * to, this.startY + dy * to, this);
+    }
+
+    /**
+     * Returns the part of this <code>Polygon</code> from the start of one of its
+     * fragments to the end of another, with the same name and normal.
+     *
+     * @param first The fragment the part starts at.
+     * @param last The fragment the part ends at.
+     * @return The part.
+     */
+    Polygon fragment(Polygon first, Polygon last) {
+        return new Polygon(this.name, first.startX, first.startY, last.endX, last.endY, this);
+    }
+
+    /**
+     * Returns whether this <code>Polygon</code> is too short to be worth keeping as a
+     * fragment, relative to the magnitude of its coordinates.
+     *
+     * @return <code>true</code> if this is a sliver.
+     */
+    boolean isSliver() {
+        float scale = Math.max(Math.max(Math.abs(this.startX), Math.abs(this.startY)),
+                Math.max(Math.abs(this.endX), Math.abs(this.endY)));
+        float epsilon = SLIVER_EPSILON * (1 + scale);
+        float dx = this.endX - this.startX, dy = this.endY - this.startY;
+        return !(dx * dx + dy * dy > epsilon * epsilon);
+    }
+
     @Override
     public String toString() {
-        return "Polygon[name=\"" + this.name + "\", " + this.start + " -> " + this.end + ", normal=" + this.normal + "]";
+        return "Polygon[name=\"" + this.name + "\", " + getStart() + " -> " + getEnd() + ", normal=" + getNormal() + "]";
     }
 }
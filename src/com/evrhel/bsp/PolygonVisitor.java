@@ -0,0 +1,17 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines a callback receiving <code>Polygon</code>s from a traversal of a
+ * <code>BSPTree</code>.
+ */
+@FunctionalInterface
+public interface PolygonVisitor {
+
+    /**
+     * Visits a <code>Polygon</code>.
+     *
+     * @param poly The <code>Polygon</code>.
+     * @return <code>true</code> to continue the traversal, or <code>false</code> to stop it.
+     */
+    boolean visit(Polygon poly);
+}
@@ -0,0 +1,75 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines an opening between two empty cells of a <code>SolidLeafTree</code>. A
+ * <code>Portal</code> lies on the <code>Plane</code> separating its cells, with the
+ * front cell on the side its normal points to.
+ */
+public class Portal {
+
+    final float startX, startY, endX, endY;
+    final float normalX, normalY;
+    final int frontCell, behindCell;
+
+    Portal(float startX, float startY, float endX, float endY, float normalX, float normalY,
+           int frontCell, int behindCell) {
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.frontCell = frontCell;
+        this.behindCell = behindCell;
+    }
+
+    /**
+     * Returns the start of this <code>Portal</code>.
+     *
+     * @return A new <code>Vector2</code> with the start position.
+     */
+    public Vector2 getStart() {
+        return new Vector2(this.startX, this.startY);
+    }
+
+    /**
+     * Returns the end of this <code>Portal</code>.
+     *
+     * @return A new <code>Vector2</code> with the end position.
+     */
+    public Vector2 getEnd() {
+        return new Vector2(this.endX, this.endY);
+    }
+
+    /**
+     * Returns the unit normal of this <code>Portal</code>, pointing into its front cell.
+     *
+     * @return A new <code>Vector2</code> with the normal.
+     */
+    public Vector2 getNormal() {
+        return new Vector2(this.normalX, this.normalY);
+    }
+
+    /**
+     * Returns the cell in front of this <code>Portal</code>.
+     *
+     * @return The index of the front cell.
+     */
+    public int getFrontCell() {
+        return this.frontCell;
+    }
+
+    /**
+     * Returns the cell behind this <code>Portal</code>.
+     *
+     * @return The index of the behind cell.
+     */
+    public int getBehindCell() {
+        return this.behindCell;
+    }
+
+    @Override
+    public String toString() {
+        return "Portal[" + getStart() + " -> " + getEnd() + ", front=" + this.frontCell + ", behind=" + this.behindCell + "]";
+    }
+}
@@ -0,0 +1,350 @@
+package com.evrhel.bsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Computes the <code>PotentiallyVisibleSet</code> of a <code>SolidLeafTree</code> by
+ * flowing sight lines through its <code>Portal</code>s.
+ * <p>
+ * Each <code>Portal</code> is used once in each direction. A quick flood first finds the
+ * cells each directed portal might see, following only portals lying partly in front of
+ * it. The flow from a cell then walks every chain of portals leaving it, clipping each
+ * portal in the chain to the lines separating the first portal of the chain from the
+ * last, and the first portal to the lines separating the last two. A chain stops once it
+ * is clipped away or can see no cell not already found.
+ * Both passes are run in parallel, over directed portals and over source cells.
+ */
+class PortalFlow {
+
+    private static final int GRAIN = 8; // indices handled by a task without splitting
+
+    private final int cellCount;
+    private final int[] toCell;
+    private final float[] leftX, leftY, rightX, rightY; // endpoints as seen from the source cell
+    private final float[] normalX, normalY, distance; // plane with the destination cell in front
+    private final int[][] leaving; // directed portals leaving each cell
+    private final float epsilon;
+    private final int words; // longs in a set of cells
+    private long[][] mightSee;
+
+    /**
+     * Prepares the flow. The portal with index <code>i</code> is used from its front cell
+     * as directed portal <code>2 * i</code> and from its behind cell as <code>2 * i + 1</code>.
+     */
+    PortalFlow(int cellCount, List<Portal> portals, float epsilon) {
+        int count = portals.size() * 2;
+        this.cellCount = cellCount;
+        this.words = (cellCount + 63) >>> 6;
+        this.toCell = new int[count];
+        this.leftX = new float[count];
+        this.leftY = new float[count];
+        this.rightX = new float[count];
+        this.rightY = new float[count];
+        this.normalX = new float[count];
+        this.normalY = new float[count];
+        this.distance = new float[count];
+        this.epsilon = epsilon;
+
+        int[] leavingCount = new int[cellCount];
+        for (Portal portal : portals) {
+            leavingCount[portal.frontCell]++;
+            leavingCount[portal.behindCell]++;
+        }
+        this.leaving = new int[cellCount][];
+        for (int i = 0; i < cellCount; i++)
+            this.leaving[i] = new int[leavingCount[i]];
+        int[] next = new int[cellCount];
+
+        for (int i = 0; i < portals.size(); i++) {
+            Portal portal = portals.get(i);
+            for (int dir = 0; dir < 2; dir++) {
+                int k = i * 2 + dir;
+                boolean forward = dir == 1; // moving from the behind cell to the front cell
+                int from = forward ? portal.behindCell : portal.frontCell;
+                float nx = forward ? portal.normalX : -portal.normalX;
+                float ny = forward ? portal.normalY : -portal.normalY;
+
+                this.toCell[k] = forward ? portal.frontCell : portal.behindCell;
+                this.normalX[k] = nx;
+                this.normalY[k] = ny;
+                this.distance[k] = nx * portal.startX + ny * portal.startY;
+
+                // The start is on the left when (end -> start) turns left of the normal
+                float ex = portal.startX - portal.endX, ey = portal.startY - portal.endY;
+                boolean startLeft = nx * ey - ny * ex > 0;
+                this.leftX[k] = startLeft ? portal.startX : portal.endX;
+                this.leftY[k] = startLeft ? portal.startY : portal.endY;
+                this.rightX[k] = startLeft ? portal.endX : portal.startX;
+                this.rightY[k] = startLeft ? portal.endY : portal.startY;
+
+                this.leaving[from][next[from]++] = k;
+            }
+        }
+    }
+
+    /**
+     * Computes the visible set of every cell.
+     *
+     * @param pool The pool to run in, or <code>null</code> to use the common pool.
+     * @return The compressed visible sets.
+     */
+    PotentiallyVisibleSet compute(ForkJoinPool pool) {
+        if (pool == null)
+            pool = ForkJoinPool.commonPool();
+
+        long[][] mightSee = new long[this.toCell.length][];
+        pool.invoke(new ForEachTask(0, mightSee.length, k -> mightSee[k] = flood(k)));
+        this.mightSee = mightSee;
+
+        byte[][] rows = new byte[this.cellCount][];
+        pool.invoke(new ForEachTask(0, this.cellCount, cell ->
+                rows[cell] = PotentiallyVisibleSet.compress(BitSet.valueOf(flow(cell)))));
+        this.mightSee = null;
+
+        return new PotentiallyVisibleSet(this.cellCount, rows);
+    }
+
+    /**
+     * Finds the cells a directed portal might see: those reachable through portals
+     * lying partly in front of it, which it in turn lies partly behind.
+     */
+    private long[] flood(int source) {
+        long[] cells = new long[this.words];
+        int[] stack = new int[16];
+        int top = 0;
+
+        set(cells, this.toCell[source]);
+        stack[top++] = this.toCell[source];
+
+        while (top > 0) {
+            int cell = stack[--top];
+            for (int k : this.leaving[cell]) {
+                int next = this.toCell[k];
+                if (get(cells, next) || !mightPass(source, k))
+                    continue;
+
+                set(cells, next);
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = next;
+            }
+        }
+        return cells;
+    }
+
+    private boolean mightPass(int source, int k) {
+        return (inFront(source, this.leftX[k], this.leftY[k]) || inFront(source, this.rightX[k], this.rightY[k])) &&
+                (behind(k, this.leftX[source], this.leftY[source]) || behind(k, this.rightX[source], this.rightY[source]));
+    }
+
+    private boolean inFront(int k, float x, float y) {
+        return this.normalX[k] * x + this.normalY[k] * y - this.distance[k] > this.epsilon;
+    }
+
+    private boolean behind(int k, float x, float y) {
+        return this.normalX[k] * x + this.normalY[k] * y - this.distance[k] < -this.epsilon;
+    }
+
+    /**
+     * Finds the cells visible from a cell through chains of portals. Chains are walked
+     * with an explicit stack of <code>Step</code>s, as they may pass through as many
+     * portals as a long corridor has.
+     */
+    private long[] flow(int cell) {
+        long[] visible = new long[this.words];
+        long[] stack = new long[this.words];
+        List<Step> steps = new ArrayList<>();
+        set(visible, cell);
+        set(stack, cell);
+
+        for (int k : this.leaving[cell]) {
+            set(visible, this.toCell[k]);
+            Step first = step(steps, 0);
+            first.cell = this.toCell[k];
+            first.next = 0;
+            first.window[0] = first.pass[0] = this.leftX[k];
+            first.window[1] = first.pass[1] = this.leftY[k];
+            first.window[2] = first.pass[2] = this.rightX[k];
+            first.window[3] = first.pass[3] = this.rightY[k];
+            System.arraycopy(this.mightSee[k], 0, first.might, 0, this.words);
+            set(stack, first.cell);
+            flow(k, steps, visible, stack);
+        }
+        return visible;
+    }
+
+    /**
+     * Walks every chain of portals leaving through <code>source</code> from the first
+     * <code>Step</code>, which has entered the cell on its far side.
+     */
+    private void flow(int source, List<Step> steps, long[] visible, long[] stack) {
+        int depth = 0;
+        while (depth >= 0) {
+            Step step = steps.get(depth);
+            int[] leaving = this.leaving[step.cell];
+            if (step.next == leaving.length) {
+                stack[step.cell >>> 6] &= ~(1L << step.cell);
+                depth--;
+                continue;
+            }
+
+            int k = leaving[step.next++];
+            int next = this.toCell[k];
+            if (get(stack, next) || !get(step.might, next))
+                continue;
+
+            // Stop if nothing new can be seen through this portal
+            Step child = step(steps, depth + 1);
+            long[] portalMight = this.mightSee[k];
+            boolean more = !get(visible, next);
+            for (int i = 0; i < this.words; i++) {
+                child.might[i] = step.might[i] & portalMight[i];
+                more |= (child.might[i] & ~visible[i]) != 0;
+            }
+            if (!more)
+                continue;
+
+            float[] target = child.pass;
+            target[0] = this.leftX[k];
+            target[1] = this.leftY[k];
+            target[2] = this.rightX[k];
+            target[3] = this.rightY[k];
+            if (!clip(target, this.normalX[source], this.normalY[source], this.distance[source]))
+                continue;
+
+            float[] window = step.window, pass = step.pass, nextWindow = child.window;
+            System.arraycopy(window, 0, nextWindow, 0, 4);
+            if (depth > 0) {
+                // Keep the part of the target seen from the window through the pass
+                if (!clipSeparating(target, window[2], window[3], pass[0], pass[1], false) ||
+                        !clipSeparating(target, window[0], window[1], pass[2], pass[3], true))
+                    continue;
+
+                // and the part of the window seeing the target through the pass
+                if (!clipSeparating(nextWindow, target[0], target[1], pass[2], pass[3], false) ||
+                        !clipSeparating(nextWindow, target[2], target[3], pass[0], pass[1], true))
+                    continue;
+            }
+
+            set(visible, next);
+            child.cell = next;
+            child.next = 0;
+            set(stack, next);
+            depth++;
+        }
+    }
+
+    /**
+     * Returns the <code>Step</code> at a depth of a chain, adding it if the chain has
+     * never been this long.
+     */
+    private Step step(List<Step> steps, int depth) {
+        if (steps.size() == depth)
+            steps.add(new Step(this.words));
+        return steps.get(depth);
+    }
+
+    private static boolean get(long[] cells, int cell) {
+        return (cells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private static void set(long[] cells, int cell) {
+        cells[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Clips a segment to the side of the directed line from <code>a</code> to
+     * <code>b</code> given by <code>left</code>. Nearly coincident points give no line and
+     * leave the segment unchanged.
+     */
+    private boolean clipSeparating(float[] segment, float ax, float ay, float bx, float by, boolean left) {
+        float dx = bx - ax, dy = by - ay;
+        float length = (float)Math.sqrt(dx * dx + dy * dy);
+        if (length <= this.epsilon)
+            return true;
+
+        float nx = -dy / length, ny = dx / length;
+        if (!left) {
+            nx = -nx;
+            ny = -ny;
+        }
+        return clip(segment, nx, ny, nx * ax + ny * ay);
+    }
+
+    /**
+     * Clips a segment to the front of the plane <code>nx * x + ny * y = d</code>.
+     *
+     * @return <code>false</code> if nothing of the segment remains.
+     */
+    private boolean clip(float[] segment, float nx, float ny, float d) {
+        float d0 = nx * segment[0] + ny * segment[1] - d;
+        float d1 = nx * segment[2] + ny * segment[3] - d;
+
+        if (d0 < -this.epsilon && d1 < -this.epsilon)
+            return false;
+
+        if (d0 < -this.epsilon) {
+            float t = d0 / (d0 - d1);
+            segment[0] += (segment[2] - segment[0]) * t;
+            segment[1] += (segment[3] - segment[1]) * t;
+        } else if (d1 < -this.epsilon) {
+            float t = d1 / (d1 - d0);
+            segment[2] += (segment[0] - segment[2]) * t;
+            segment[3] += (segment[1] - segment[3]) * t;
+        }
+        return true;
+    }
+
+    /**
+     * One portal of a chain being walked: the cell it entered, the part of it which can be
+     * seen through, and the part of the first portal of the chain seeing it. Steps are
+     * reused between chains.
+     */
+    private static class Step {
+
+        int cell;
+        int next; // index into the portals leaving cell of the next one to follow
+        final float[] window = new float[4]; // part of the source portal
+        final float[] pass = new float[4]; // part of the portal entering cell
+        final long[] might; // cells which might still be seen along the chain
+
+        Step(int words) {
+            this.might = new long[words];
+        }
+    }
+
+    /**
+     * Runs an action for each index of a range, splitting the range between workers.
+     */
+    private static class ForEachTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final IntConsumer action;
+
+        ForEachTask(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= GRAIN) {
+                for (int i = this.from; i < this.to; i++)
+                    this.action.accept(i);
+                return;
+            }
+
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new ForEachTask(this.from, mid, this.action), new ForEachTask(mid, this.to, this.action));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.evrhel.bsp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+
+/**
+ * Defines the cells of a <code>SolidLeafTree</code> potentially visible from each cell.
+ * The set is conservative: a cell reported as not visible cannot be seen from any point
+ * of the source cell, while a cell reported as visible may still be fully occluded.
+ * <p>
+ * Each cell's row is stored as a bitset with runs of zero bytes run-length encoded, so
+ * the size of a row grows with the number of visible cells rather than the number of
+ * cells.
+ */
+public class PotentiallyVisibleSet {
+
+    private final int cellCount;
+    private final int[] offsets;
+    private final byte[] data;
+
+    PotentiallyVisibleSet(int cellCount, byte[][] rows) {
+        this.cellCount = cellCount;
+        this.offsets = new int[cellCount + 1];
+
+        int size = 0;
+        for (int i = 0; i < cellCount; i++) {
+            this.offsets[i] = size;
+            size += rows[i].length;
+        }
+        this.offsets[cellCount] = size;
+
+        this.data = new byte[size];
+        for (int i = 0; i < cellCount; i++)
+            System.arraycopy(rows[i], 0, this.data, this.offsets[i], rows[i].length);
+    }
+
+    /**
+     * Returns the number of cells in this set.
+     *
+     * @return The cell count.
+     */
+    public int getCellCount() {
+        return this.cellCount;
+    }
+
+    /**
+     * Returns the number of bytes used to store this set.
+     *
+     * @return The compressed size in bytes.
+     */
+    public int getCompressedSize() {
+        return this.data.length;
+    }
+
+    /**
+     * Returns whether a cell is potentially visible from another. A cell is always
+     * visible from itself.
+     *
+     * @param from The cell viewed from.
+     * @param to The cell viewed.
+     * @return <code>true</code> if <code>to</code> may be visible from <code>from</code>.
+     * @throws IndexOutOfBoundsException If either cell is out of bounds.
+     */
+    public boolean isVisible(int from, int to) {
+        checkCell(from);
+        checkCell(to);
+
+        int target = to >>> 3;
+        int pos = this.offsets[from], end = this.offsets[from + 1];
+        int index = 0; // uncompressed index of the byte at pos
+
+        while (pos < end) {
+            byte b = this.data[pos++];
+            if (b != 0) {
+                if (index == target)
+                    return (b & (1 << (to & 7))) != 0;
+                index++;
+            } else {
+                index += this.data[pos++] & 0xff;
+                if (index > target)
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cells potentially visible from a cell.
+     *
+     * @param from The cell viewed from.
+     * @return A new <code>BitSet</code> with a bit set for each visible cell.
+     * @throws IndexOutOfBoundsException If <code>from</code> is out of bounds.
+     */
+    public BitSet getVisibleCells(int from) {
+        checkCell(from);
+        BitSet result = new BitSet(this.cellCount);
+        int pos = this.offsets[from], end = this.offsets[from + 1];
+        int index = 0;
+
+        while (pos < end) {
+            byte b = this.data[pos++];
+            if (b != 0) {
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((b & (1 << bit)) != 0)
+                        result.set(index * 8 + bit);
+                }
+                index++;
+            } else {
+                index += this.data[pos++] & 0xff;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of cells potentially visible from a cell.
+     *
+     * @param from The cell viewed from.
+     * @return The visible cell count, including <code>from</code>.
+     * @throws IndexOutOfBoundsException If <code>from</code> is out of bounds.
+     */
+    public int getVisibleCount(int from) {
+        checkCell(from);
+        int count = 0;
+        int pos = this.offsets[from], end = this.offsets[from + 1];
+
+        while (pos < end) {
+            byte b = this.data[pos++];
+            if (b != 0)
+                count += Integer.bitCount(b & 0xff);
+            else
+                pos++;
+        }
+        return count;
+    }
+
+    private void checkCell(int cell) {
+        if (cell < 0 || cell >= this.cellCount)
+            throw new IndexOutOfBoundsException("Cell " + cell + " out of bounds for " + this.cellCount + " cells");
+    }
+
+    /**
+     * Compresses one row of the set. A zero byte is followed by the length of the run of
+     * zero bytes it starts, at most 255. Trailing zero bytes are not stored.
+     */
+    static byte[] compress(BitSet row) {
+        byte[] bytes = row.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int i = 0;
+        while (i < bytes.length) {
+            if (bytes[i] != 0) {
+                out.write(bytes[i++]);
+            } else {
+                int run = 0;
+                while (i < bytes.length && run < 255 && bytes[i] == 0) {
+                    run++;
+                    i++;
+                }
+                out.write(0);
+                out.write(run);
+            }
+        }
+        return out.toByteArray();
+    }
+}
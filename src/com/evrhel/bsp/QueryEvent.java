@@ -0,0 +1,27 @@
+package com.evrhel.bsp;
+
+import jdk.jfr.*;
+
+/**
+ * A JDK Flight Recorder event for a query on a <code>BSPTree</code> which took longer
+ * than the event's threshold. Only emitted while <code>TreeMetrics.ENABLED</code>.
+ */
+@Name("com.evrhel.bsp.SlowQuery")
+@Label("BSP Slow Query")
+@Category("BSP")
+@Description("A query on a BSP tree which took longer than the threshold")
+@Threshold("1 ms")
+class QueryEvent extends Event {
+
+    @Label("Query")
+    @Description("The kind of query, such as locate or raycast")
+    String query;
+
+    @Label("Nodes")
+    @Description("Number of nodes in the tree queried")
+    int nodes;
+
+    @Label("Fragments")
+    @Description("Number of polygons in the tree queried")
+    int fragments;
+}
@@ -0,0 +1,75 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * Finds the <code>Polygon</code>s of a <code>BSPTree</code> touching a region. A subtree
+ * is skipped when its bounds miss the region, and the side of a node's plane the region
+ * does not reach is skipped along with the node's own <code>Polygon</code>s.
+ */
+class RangeQuery {
+
+    static boolean rectangle(BSPNode node, float minX, float minY, float maxX, float maxY, PolygonVisitor visitor) {
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            if (node.maxX < minX || node.minX > maxX || node.maxY < minY || node.minY > maxY)
+                return true;
+
+            TreeMetrics.planeTested();
+
+            Plane plane = node.plane;
+            int side = SegmentMath.rectangleSide(plane.getNormalX(), plane.getNormalY(), plane.getDistance(),
+                    minX, minY, maxX, maxY);
+            if (side == RelativePosition.FRONT) {
+                node = node.front();
+            } else if (side == RelativePosition.BEHIND) {
+                node = node.behind();
+            } else {
+                List<Polygon> polys = node.polys;
+                for (int i = 0, size = polys.size(); i < size; i++) {
+                    Polygon poly = polys.get(i);
+                    if (SegmentMath.intersectsRectangle(poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY(),
+                            minX, minY, maxX, maxY) && !visitor.visit(poly))
+                        return false;
+                }
+
+                if (!rectangle(node.behind(), minX, minY, maxX, maxY, visitor))
+                    return false;
+                node = node.front();
+            }
+        }
+        return true;
+    }
+
+    static boolean circle(BSPNode node, float x, float y, float radius, PolygonVisitor visitor) {
+        float radiusSquared = radius * radius;
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            if (node.boundsDistanceSquared(x, y) > radiusSquared)
+                return true;
+
+            TreeMetrics.planeTested();
+            float dist = node.plane.distanceTo(x, y);
+            if (dist > radius) {
+                node = node.front();
+            } else if (dist < -radius) {
+                node = node.behind();
+            } else {
+                List<Polygon> polys = node.polys;
+                for (int i = 0, size = polys.size(); i < size; i++) {
+                    Polygon poly = polys.get(i);
+                    if (SegmentMath.distanceSquared(x, y, poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY())
+                            <= radiusSquared && !visitor.visit(poly))
+                        return false;
+                }
+
+                if (!circle(node.behind(), x, y, radius, visitor))
+                    return false;
+                node = node.front();
+            }
+        }
+        return true;
+    }
+
+    private RangeQuery() { }
+}
@@ -0,0 +1,146 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * Casts rays against the nodes of a <code>BSPTree</code>. Nodes are visited
+ * front-to-back along the ray, and the side of a node's plane the ray has not reached
+ * yet is only visited if no hit was found on the near side, so the first hit found is
+ * the closest one.
+ */
+class RayCaster {
+
+    /**
+     * Finds the first <code>Polygon</code> hit by the ray <code>origin + direction * t</code>
+     * for <code>t</code> in <code>[tMin, tMax]</code>.
+     *
+     * @param hit Receives the hit, if any. May be <code>null</code> if only whether a hit
+     *            occurs is needed.
+     * @return <code>true</code> if a <code>Polygon</code> was hit.
+     */
+    static boolean cast(BSPNode node, float originX, float originY, float dirX, float dirY,
+                        float tMin, float tMax, RayHit hit) {
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            TreeMetrics.planeTested();
+
+            Plane plane = node.plane;
+            float dist = plane.distanceTo(originX, originY);
+            float denominator = plane.getNormalX() * dirX + plane.getNormalY() * dirY;
+
+            if (denominator == 0) {
+                // Parallel to the plane, the ray stays on one side
+                if (dist < 0) {
+                    node = node.behind();
+                } else if (dist > 0) {
+                    node = node.front();
+                } else {
+                    return castAlong(node, originX, originY, dirX, dirY, tMin, tMax, hit);
+                }
+                continue;
+            }
+
+            // The side the ray starts on is the one it leaves when crossing the plane
+            BSPNode near, far;
+            if (denominator > 0) {
+                near = node.behind();
+                far = node.front();
+            } else {
+                near = node.front();
+                far = node.behind();
+            }
+
+            float t = -dist / denominator;
+            if (t > tMax) {
+                node = near;
+            } else if (t < tMin) {
+                node = far;
+            } else {
+                if (cast(near, originX, originY, dirX, dirY, tMin, t, hit))
+                    return true;
+                if (hitNode(node.polys, originX + dirX * t, originY + dirY * t, t, hit))
+                    return true;
+                node = far;
+                tMin = t;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Casts a ray lying in a node's plane. The ray can run along the node's
+     * <code>Polygon</code>s and touch those of both children, so each is searched only
+     * up to the closest hit found so far.
+     */
+    private static boolean castAlong(BSPNode node, float originX, float originY, float dirX, float dirY,
+                                     float tMin, float tMax, RayHit hit) {
+        boolean found = hitAlong(node.polys, originX, originY, dirX, dirY, tMin, tMax, hit);
+        if (found && hit == null)
+            return true;
+
+        if (cast(node.behind(), originX, originY, dirX, dirY, tMin, found ? hit.getDistance() : tMax, hit)) {
+            if (hit == null)
+                return true;
+            found = true;
+        }
+        return cast(node.front(), originX, originY, dirX, dirY, tMin, found ? hit.getDistance() : tMax, hit)
+                || found;
+    }
+
+    /**
+     * Finds where a ray lying in a node's plane first enters one of its
+     * <code>Polygon</code>s, which is the nearer end of the <code>Polygon</code> or the
+     * start of the ray if the ray starts within it.
+     */
+    private static boolean hitAlong(List<Polygon> polys, float originX, float originY, float dirX, float dirY,
+                                    float tMin, float tMax, RayHit hit) {
+        if (dirX == 0 && dirY == 0)
+            return hitNode(polys, originX, originY, tMin, hit);
+
+        Polygon closest = null;
+        float closestT = Float.POSITIVE_INFINITY;
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            Polygon poly = polys.get(i);
+            if (poly.getStartX() == poly.getEndX() && poly.getStartY() == poly.getEndY()) continue;
+
+            float t0 = SegmentMath.lineParameter(poly.getStartX(), poly.getStartY(), originX, originY, dirX, dirY);
+            float t1 = SegmentMath.lineParameter(poly.getEndX(), poly.getEndY(), originX, originY, dirX, dirY);
+            float t = Math.max(tMin, Math.min(t0, t1));
+            if (t <= Math.max(t0, t1) && t <= tMax && t < closestT) {
+                closest = poly;
+                closestT = t;
+            }
+        }
+
+        if (closest == null)
+            return false;
+        if (hit != null)
+            hit.set(closest, closestT, originX + dirX * closestT, originY + dirY * closestT);
+        return true;
+    }
+
+    /**
+     * Tests whether a point on a node's plane lies within one of its <code>Polygon</code>s.
+     * Zero-length <code>Polygon</code>s have no extent along the plane to hit, so they
+     * are skipped rather than matching every point on it.
+     */
+    private static boolean hitNode(List<Polygon> polys, float x, float y, float t, RayHit hit) {
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            Polygon poly = polys.get(i);
+            float segX = poly.getEndX() - poly.getStartX();
+            float segY = poly.getEndY() - poly.getStartY();
+            float lengthSquared = segX * segX + segY * segY;
+            if (lengthSquared == 0) continue;
+
+            float along = (x - poly.getStartX()) * segX + (y - poly.getStartY()) * segY;
+            if (along >= 0 && along <= lengthSquared) {
+                if (hit != null)
+                    hit.set(poly, t, x, y);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private RayCaster() { }
+}
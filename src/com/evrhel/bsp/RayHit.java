@@ -0,0 +1,80 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines the result of casting a ray against a <code>BSPTree</code>. A
+ * <code>RayHit</code> may be reused across casts to avoid allocating.
+ */
+public class RayHit {
+
+    private Polygon polygon;
+    private float distance;
+    private float x, y;
+
+    /**
+     * Creates an empty <code>RayHit</code> to be filled in by
+     * <code>BSPTree.raycast</code>.
+     */
+    public RayHit() { }
+
+    void clear() {
+        set(null, Float.NaN, Float.NaN, Float.NaN);
+    }
+
+    void set(Polygon polygon, float distance, float x, float y) {
+        this.polygon = polygon;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Returns the <code>Polygon</code> which was hit.
+     *
+     * @return The <code>Polygon</code>, or <code>null</code> if the ray hit nothing.
+     */
+    public Polygon getPolygon() {
+        return this.polygon;
+    }
+
+    /**
+     * Returns the distance along the ray to the hit, in multiples of the length of the
+     * ray's direction. The hit point is <code>origin + direction * distance</code>.
+     *
+     * @return The distance.
+     */
+    public float getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Returns the point where the ray hit the <code>Polygon</code>.
+     *
+     * @return The hit point.
+     */
+    public Vector2 getPoint() {
+        return new Vector2(this.x, this.y);
+    }
+
+    /**
+     * Returns the x-coordinate of the point where the ray hit the <code>Polygon</code>.
+     *
+     * @return The x-coordinate.
+     */
+    public float getX() {
+        return this.x;
+    }
+
+    /**
+     * Returns the y-coordinate of the point where the ray hit the <code>Polygon</code>.
+     *
+     * @return The y-coordinate.
+     */
+    public float getY() {
+        return this.y;
+    }
+
+    @Override
+    public String toString() {
+        return "RayHit[polygon=" + this.polygon + ",distance=" + this.distance + ",point=" + getPoint() + "]";
+    }
+}
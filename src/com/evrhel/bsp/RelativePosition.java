@@ -1,7 +1,5 @@
 package com.evrhel.bsp;
 
-import static com.evrhel.bsp.Vector2.*;
-
 /**
  * Class containing utilities for determining relative locations of objects.
  */
@@ -21,14 +19,20 @@ public class RelativePosition {
      * or in front of the plane, respectively.
      */
     public static int positionOf(Plane plane, Vector2 test) {
-        Vector2 planeNormal = plane.getNormal(), planeOrigin = plane.getOrigin();
-        float prod = dot(planeNormal, test.sub(planeOrigin));
-        if (prod == 0)
-            return ON;
-        else if (prod < 0)
-            return BEHIND;
-        else
-            return FRONT;
+        return positionOf(plane, test.x, test.y);
+    }
+
+    /**
+     * Returns the relative position of a point to a plane without allocating.
+     *
+     * @param plane The plane.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return ON, BEHIND, or FRONT if the point is on the plane, behind the plane,
+     * or in front of the plane, respectively.
+     */
+    public static int positionOf(Plane plane, float x, float y) {
+        return positionOf(plane.distanceTo(x, y));
     }
 
     /**
@@ -40,8 +44,49 @@ public class RelativePosition {
      * intersecting, or on the plane, respectively
      */
     public static int positionOf(Plane plane, Polygon test) {
-        int start = positionOf(plane, test.getStart());
-        int end = positionOf(plane, test.getEnd());
+        return positionOf(plane, test.getStartX(), test.getStartY(), test.getEndX(), test.getEndY());
+    }
+
+    /**
+     * Returns the relative position of a segment to a plane without allocating.
+     *
+     * @param plane The plane.
+     * @param startX The x-coordinate of the start of the segment.
+     * @param startY The y-coordinate of the start of the segment.
+     * @param endX The x-coordinate of the end of the segment.
+     * @param endY The y-coordinate of the end of the segment.
+     * @return BEHIND, FRONT, INTERSECT, or ON if the segment is behind, in front of,
+     * intersecting, or on the plane, respectively
+     */
+    public static int positionOf(Plane plane, float startX, float startY, float endX, float endY) {
+        return combine(positionOf(plane, startX, startY), positionOf(plane, endX, endY));
+    }
+
+    /**
+     * Returns the relative position of a point given its signed distance from a plane.
+     *
+     * @param distance The signed distance, as returned by <code>Plane.distanceTo</code>.
+     * @return ON, BEHIND, or FRONT if the point is on the plane, behind the plane,
+     * or in front of the plane, respectively.
+     */
+    public static int positionOf(float distance) {
+        if (distance == 0)
+            return ON;
+        else if (distance < 0)
+            return BEHIND;
+        else
+            return FRONT;
+    }
+
+    /**
+     * Combines the relative positions of the two endpoints of a segment into the
+     * relative position of the segment.
+     *
+     * @param start The relative position of the start point.
+     * @param end The relative position of the end point.
+     * @return BEHIND, FRONT, INTERSECT, or ON.
+     */
+    public static int combine(int start, int end) {
         if (start == end)
             return start;
         else if (start == ON)
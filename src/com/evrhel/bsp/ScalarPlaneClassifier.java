@@ -0,0 +1,13 @@
+package com.evrhel.bsp;
+
+/**
+ * A <code>PlaneClassifier</code> classifying one segment at a time.
+ */
+class ScalarPlaneClassifier extends PlaneClassifier {
+
+    @Override
+    public void classify(Plane plane, float[] startX, float[] startY, float[] endX, float[] endY,
+                         int offset, int count, int[] dest) {
+        classifyScalar(plane, startX, startY, endX, endY, offset, offset + count, dest);
+    }
+}
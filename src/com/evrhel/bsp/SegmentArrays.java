@@ -0,0 +1,32 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * The endpoints of a list of <code>Polygon</code>s in structure-of-arrays form, as
+ * consumed by a <code>PlaneClassifier</code>.
+ */
+class SegmentArrays {
+
+    final float[] startX, startY, endX, endY;
+
+    SegmentArrays(List<Polygon> polys) {
+        int size = polys.size();
+        this.startX = new float[size];
+        this.startY = new float[size];
+        this.endX = new float[size];
+        this.endY = new float[size];
+
+        for (int i = 0; i < size; i++) {
+            Polygon poly = polys.get(i);
+            this.startX[i] = poly.getStartX();
+            this.startY[i] = poly.getStartY();
+            this.endX[i] = poly.getEndX();
+            this.endY[i] = poly.getEndY();
+        }
+    }
+
+    void classify(PlaneClassifier classifier, Plane plane, int offset, int count, int[] dest) {
+        classifier.classify(plane, this.startX, this.startY, this.endX, this.endY, offset, count, dest);
+    }
+}
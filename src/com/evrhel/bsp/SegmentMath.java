@@ -0,0 +1,119 @@
+package com.evrhel.bsp;
+
+/**
+ * Contains allocation-free distance and overlap tests between line segments and other
+ * primitives.
+ */
+class SegmentMath {
+
+    private static final float RECTANGLE_EPSILON = 1e-6f; // relative rounding error of plane distances
+
+    /**
+     * Returns the parameter in <code>[0, 1]</code> of the point on a segment closest to
+     * another point. The closest point is <code>start + (end - start) * t</code>.
+     */
+    static float closestParameter(float x, float y, float startX, float startY, float endX, float endY) {
+        float segX = endX - startX, segY = endY - startY;
+        if (segX * segX + segY * segY == 0) return 0;
+
+        return Math.max(0, Math.min(1, lineParameter(x, y, startX, startY, segX, segY)));
+    }
+
+    /**
+     * Returns the parameter of the point on the line <code>origin + direction * t</code>
+     * closest to another point, without clamping. The direction must not be zero.
+     */
+    static float lineParameter(float x, float y, float originX, float originY, float dirX, float dirY) {
+        return ((x - originX) * dirX + (y - originY) * dirY) / (dirX * dirX + dirY * dirY);
+    }
+
+    /**
+     * Returns the squared distance from a point to a segment.
+     */
+    static float distanceSquared(float x, float y, float startX, float startY, float endX, float endY) {
+        float t = closestParameter(x, y, startX, startY, endX, endY);
+        float dx = startX + (endX - startX) * t - x;
+        float dy = startY + (endY - startY) * t - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns whether a segment touches an axis-aligned rectangle, by clipping the
+     * segment against each edge of the rectangle.
+     */
+    static boolean intersectsRectangle(float startX, float startY, float endX, float endY,
+                                       float minX, float minY, float maxX, float maxY) {
+        float segX = endX - startX, segY = endY - startY;
+        float enter = 0, exit = 1;
+
+        for (int edge = 0; edge < 4; edge++) {
+            float p, q;
+            switch (edge) {
+            case 0:
+                p = -segX;
+                q = startX - minX;
+                break;
+            case 1:
+                p = segX;
+                q = maxX - startX;
+                break;
+            case 2:
+                p = -segY;
+                q = startY - minY;
+                break;
+            default:
+                p = segY;
+                q = maxY - startY;
+                break;
+            }
+
+            if (p == 0) {
+                if (q < 0) return false; // parallel to the edge and outside of it
+                continue;
+            }
+
+            float t = q / p;
+            if (p < 0) {
+                if (t > exit) return false;
+                if (t > enter) enter = t;
+            } else {
+                if (t < enter) return false;
+                if (t < exit) exit = t;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns which side of a plane an axis-aligned rectangle lies on, by evaluating the
+     * plane at the corners nearest to and farthest from it along the normal. A rectangle
+     * within rounding error of the plane counts as crossing it, so a region touching a
+     * plane only at its boundary still reaches both sides and the plane itself.
+     *
+     * @param normalX The x-component of the plane's normal.
+     * @param normalY The y-component of the plane's normal.
+     * @param distance The plane's distance from the origin along its normal.
+     * @return <code>RelativePosition.FRONT</code> or <code>RelativePosition.BEHIND</code>
+     * if the rectangle lies strictly on one side, otherwise
+     * <code>RelativePosition.INTERSECT</code>.
+     */
+    static int rectangleSide(float normalX, float normalY, float distance,
+                             float minX, float minY, float maxX, float maxY) {
+        float nearX = normalX >= 0 ? minX : maxX, nearY = normalY >= 0 ? minY : maxY;
+        float farX = normalX >= 0 ? maxX : minX, farY = normalY >= 0 ? maxY : minY;
+        float nearDist = normalX * nearX + normalY * nearY - distance;
+        float farDist = normalX * farX + normalY * farY - distance;
+
+        float scale = Math.abs(distance) + Math.abs(normalX) * Math.max(Math.abs(minX), Math.abs(maxX))
+                + Math.abs(normalY) * Math.max(Math.abs(minY), Math.abs(maxY));
+        float tolerance = RECTANGLE_EPSILON * scale;
+        if (nearDist > tolerance)
+            return RelativePosition.FRONT;
+        if (farDist < -tolerance)
+            return RelativePosition.BEHIND;
+        return RelativePosition.INTERSECT;
+    }
+
+    private SegmentMath() { }
+}
@@ -0,0 +1,205 @@
+package com.evrhel.bsp;
+
+import java.util.*;
+
+/**
+ * Simplifies a list of <code>Polygon</code>s before a tree is built from them.
+ * Degenerate <code>Polygon</code>s are dropped, and <code>Polygon</code>s facing the
+ * same way along a common line which overlap or touch are merged into one spanning
+ * them all, which also removes duplicates. <code>Polygon</code>s facing opposite ways
+ * are never merged, as they are different sides of a wall.
+ * <p>
+ * Candidates are found by sorting on the angle of each <code>Polygon</code> and then
+ * on the offset of its line, so simplifying takes <code>O(n log n)</code> time for
+ * typical input. Merging is conservative: <code>Polygon</code>s are only merged when
+ * every end lies within the tolerance of the line of the longest one, and a few
+ * candidates whose angles fall either side of a group boundary may be left unmerged.
+ */
+class Simplifier {
+
+    private static final double ANGLE_TOLERANCE = 1e-3; // spread of angles grouped as candidates, in radians
+
+    /**
+     * Simplifies <code>Polygon</code>s.
+     *
+     * @param polys The <code>Polygon</code>s to simplify.
+     * @param tolerance The distance within which segments are considered collinear,
+     *                  touching or degenerate.
+     * @param sources Receives the <code>Polygon</code>s each resulting one was made from,
+     *                in their order in <code>polys</code>. <code>Polygon</code>s kept as
+     *                they are map to themselves.
+     * @return A new <code>List</code> of the simplified <code>Polygon</code>s, in the
+     * order of the first of their sources. Unmerged <code>Polygon</code>s are returned
+     * as they are rather than copied.
+     */
+    static List<Polygon> simplify(List<Polygon> polys, float tolerance, Map<Polygon, List<Polygon>> sources) {
+        List<Segment> segments = new ArrayList<>(polys.size());
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            Polygon poly = polys.get(i);
+            if (!isDegenerate(poly, tolerance))
+                segments.add(new Segment(i, poly));
+        }
+        segments.sort(Comparator.comparingDouble(segment -> segment.angle));
+
+        // Group by angle, then each angle group by offset, then merge along each line
+        List<Run> runs = new ArrayList<>();
+        for (int start = 0, count = segments.size(); start < count; ) {
+            Segment first = segments.get(start);
+            int end = start + 1;
+            while (end < count && segments.get(end).angle - first.angle <= ANGLE_TOLERANCE)
+                end++;
+
+            // Measure offsets across the first segment's direction at each midpoint.
+            // Tilted segments are off by up to the spread of angles times their distance
+            // from the first, so lines are allowed that much farther apart.
+            List<Segment> angleGroup = new ArrayList<>(segments.subList(start, end));
+            double normalX = -Math.sin(first.angle), normalY = Math.cos(first.angle);
+            double radius = 0;
+            for (Segment segment : angleGroup) {
+                segment.offset = normalX * segment.midX + normalY * segment.midY;
+                radius = Math.max(radius, Math.hypot(segment.midX - first.midX, segment.midY - first.midY));
+            }
+            double gap = 2 * tolerance + (segments.get(end - 1).angle - first.angle) * radius;
+            angleGroup.sort(Comparator.comparingDouble(segment -> segment.offset));
+
+            for (int lineStart = 0; lineStart < angleGroup.size(); ) {
+                int lineEnd = lineStart + 1;
+                while (lineEnd < angleGroup.size()
+                        && angleGroup.get(lineEnd).offset - angleGroup.get(lineEnd - 1).offset <= gap)
+                    lineEnd++;
+
+                mergeLine(new ArrayList<>(angleGroup.subList(lineStart, lineEnd)), tolerance, runs);
+                lineStart = lineEnd;
+            }
+            start = end;
+        }
+
+        // Restore the input order, which the splitter may depend on
+        runs.sort(Comparator.comparingInt(run -> run.sources.get(0).index));
+        List<Polygon> result = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            List<Polygon> runSources = new ArrayList<>(run.sources.size());
+            for (Segment segment : run.sources)
+                runSources.add(segment.poly);
+            sources.put(run.merged, runSources);
+            result.add(run.merged);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a <code>Polygon</code> is too short to be kept.
+     *
+     * @param poly The <code>Polygon</code>.
+     * @param tolerance The length at or below which it is degenerate.
+     * @return <code>true</code> if it is degenerate.
+     */
+    static boolean isDegenerate(Polygon poly, float tolerance) {
+        float dx = poly.getEndX() - poly.getStartX(), dy = poly.getEndY() - poly.getStartY();
+        float lengthSquared = dx * dx + dy * dy;
+        return !(lengthSquared > tolerance * tolerance) || lengthSquared == 0;
+    }
+
+    /**
+     * Merges the segments of a group lying close to one line. The longest segment is
+     * taken as the line, those within the tolerance of it are merged wherever they
+     * overlap or touch, and the rest are grouped again.
+     */
+    private static void mergeLine(List<Segment> group, float tolerance, List<Run> runs) {
+        while (!group.isEmpty()) {
+            Segment reference = group.get(0);
+            for (Segment segment : group) {
+                if (segment.length > reference.length)
+                    reference = segment;
+            }
+
+            List<Segment> line = new ArrayList<>(), rest = new ArrayList<>();
+            for (Segment segment : group) {
+                if (segment.project(reference, tolerance) || segment == reference)
+                    line.add(segment);
+                else
+                    rest.add(segment);
+            }
+
+            line.sort(Comparator.comparingDouble(segment -> segment.startT));
+            for (int start = 0; start < line.size(); ) {
+                Segment first = line.get(start), last = first; // last reaches furthest along the line
+                int end = start + 1;
+                while (end < line.size() && line.get(end).startT <= last.endT + tolerance) {
+                    if (line.get(end).endT > last.endT)
+                        last = line.get(end);
+                    end++;
+                }
+
+                Run run = new Run();
+                run.sources = new ArrayList<>(line.subList(start, end));
+                run.sources.sort(Comparator.comparingInt(segment -> segment.index));
+                if (end - start == 1) {
+                    run.merged = first.poly;
+                } else {
+                    run.merged = new Polygon(run.sources.get(0).poly.getName(),
+                            first.poly.getStartX(), first.poly.getStartY(), last.poly.getEndX(), last.poly.getEndY());
+                }
+                runs.add(run);
+                start = end;
+            }
+
+            group = rest;
+        }
+    }
+
+    /**
+     * A non-degenerate <code>Polygon</code> being simplified.
+     */
+    private static class Segment {
+
+        final int index; // index in the input
+        final Polygon poly;
+        final double angle; // direction from start to end
+        final double midX, midY;
+        final float length;
+        double offset; // signed distance of the midpoint along the normal of its angle group
+        float startT, endT; // parameters of the ends along the current reference line
+
+        Segment(int index, Polygon poly) {
+            this.index = index;
+            this.poly = poly;
+
+            float dx = poly.getEndX() - poly.getStartX(), dy = poly.getEndY() - poly.getStartY();
+            this.length = (float)Math.sqrt(dx * dx + dy * dy);
+            this.angle = Math.atan2(dy, dx);
+            this.midX = (poly.getStartX() + (double)poly.getEndX()) * 0.5;
+            this.midY = (poly.getStartY() + (double)poly.getEndY()) * 0.5;
+        }
+
+        /**
+         * Projects this segment onto the line of a reference segment.
+         *
+         * @return <code>true</code> if both ends lie within the tolerance of the line and
+         * this segment faces the same way.
+         */
+        boolean project(Segment reference, float tolerance) {
+            Polygon ref = reference.poly;
+            float dirX = (ref.getEndX() - ref.getStartX()) / reference.length;
+            float dirY = (ref.getEndY() - ref.getStartY()) / reference.length;
+            float startX = this.poly.getStartX() - ref.getStartX(), startY = this.poly.getStartY() - ref.getStartY();
+            float endX = this.poly.getEndX() - ref.getStartX(), endY = this.poly.getEndY() - ref.getStartY();
+
+            this.startT = dirX * startX + dirY * startY;
+            this.endT = dirX * endX + dirY * endY;
+            return this.endT > this.startT
+                    && Math.abs(dirX * startY - dirY * startX) <= tolerance
+                    && Math.abs(dirX * endY - dirY * endX) <= tolerance;
+        }
+    }
+
+    /**
+     * Overlapping or touching segments along one line, and what they merge into.
+     */
+    private static class Run {
+        List<Segment> sources;
+        Polygon merged;
+    }
+
+    private Simplifier() { }
+}
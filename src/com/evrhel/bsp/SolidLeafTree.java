@@ -0,0 +1,476 @@
+package com.evrhel.bsp;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Defines a solid-leaf form of a <code>BSPTree</code>, with the <code>Portal</code>s
+ * between its cells and the cells potentially visible from each.
+ * <p>
+ * Every missing child of a node is a leaf: a convex region containing no
+ * <code>Polygon</code>. <code>Portal</code>s are found by cutting the line of each node's
+ * <code>Plane</code> to the node's region, removing the parts covered by the node's
+ * <code>Polygon</code>s, and pushing what remains through both subtrees. Nearly collinear
+ * <code>Polygon</code>s measured on opposite sides of a <code>Plane</code> land in
+ * different subtrees, so <code>Polygon</code>s below a node lying within the tolerance of
+ * its <code>Plane</code> cover it as well. Every
+ * <code>Polygon</code> is treated as a wall with empty space in front of it and solid
+ * space behind, so leaves connected through <code>Portal</code>s to the front of some
+ * <code>Polygon</code> are empty and all others are solid. This matches a closed map
+ * whose walls face into its interior; in a map with gaps, the space leaking through them
+ * is empty.
+ * <p>
+ * The empty leaves are the cells of the tree, numbered from <code>0</code> to
+ * <code>getCellCount() - 1</code>. Leaves narrower than a small tolerance, left between
+ * nearly coincident planes, are not cells; the leaves on either side of them are joined
+ * directly. Only space within the bounds of the tree, widened by their size on each side,
+ * is considered. The tree is a snapshot and does not follow later changes to the
+ * <code>BSPTree</code> it was built from.
+ */
+public class SolidLeafTree {
+
+    /**
+     * Cell returned for points in solid space.
+     */
+    public static final int SOLID = -1;
+
+    private static final float EPSILON = 1e-5f; // distance treated as touching, relative to the bounds
+
+    private final float[] planeX, planeY, planeD;
+    private final int[] behind, front; // node index, or -1 - leaf for a leaf
+    private final int[] leafCells; // cell of each leaf, or SOLID
+    private final int cellCount;
+    private final float epsilon;
+
+    private final List<Portal> portals;
+    private final List<List<Portal>> cellPortals;
+    private final List<List<Polygon>> walls;
+    private final PotentiallyVisibleSet visibility;
+
+    /**
+     * Compiles the <code>BSPTree</code> of a <code>World</code>.
+     *
+     * @param world The <code>World</code> to compile.
+     */
+    public SolidLeafTree(World world) {
+        this(world.getBspTree(), null);
+    }
+
+    /**
+     * Compiles the <code>BSPTree</code> of a <code>World</code>, computing visibility in a
+     * given pool.
+     *
+     * @param world The <code>World</code> to compile.
+     * @param pool The pool to compute visibility in, or <code>null</code> to use the common pool.
+     */
+    public SolidLeafTree(World world, ForkJoinPool pool) {
+        this(world.getBspTree(), pool);
+    }
+
+    /**
+     * Compiles a <code>BSPTree</code>.
+     *
+     * @param tree The <code>BSPTree</code> to compile.
+     */
+    public SolidLeafTree(BSPTree tree) {
+        this(tree, null);
+    }
+
+    /**
+     * Compiles a <code>BSPTree</code>, computing visibility in a given pool.
+     *
+     * @param tree The <code>BSPTree</code> to compile.
+     * @param pool The pool to compute visibility in, or <code>null</code> to use the common pool.
+     */
+    public SolidLeafTree(BSPTree tree, ForkJoinPool pool) {
+        BSPNode root = tree.getRoot();
+        int nodeCount = countNodes(root);
+
+        this.planeX = new float[nodeCount];
+        this.planeY = new float[nodeCount];
+        this.planeD = new float[nodeCount];
+        this.behind = new int[nodeCount];
+        this.front = new int[nodeCount];
+
+        BSPNode[] nodes = new BSPNode[nodeCount];
+        int[] counters = new int[2]; // next node index, next leaf
+        if (root != null)
+            compileNode(root, nodes, counters);
+        int leafCount = Math.max(1, counters[1]);
+
+        float margin = root != null ? Math.max(1, Math.max(root.maxX - root.minX, root.maxY - root.minY)) : 1;
+        this.epsilon = EPSILON * margin;
+
+        LeafGraph graph = new LeafGraph(leafCount, this.epsilon);
+        if (root != null) {
+            List<List<Polygon>> blockers = new ArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++)
+                blockers.add(coplanar(nodes[i]));
+
+            generate(0, new ConvexRegion(root.minX - margin, root.minY - margin,
+                    root.maxX + margin, root.maxY + margin), nodes, blockers, graph);
+            graph.collapseSlivers();
+            for (int i = 0; i < nodeCount; i++)
+                addWalls(i, nodes[i], graph);
+        }
+
+        // Leaves are empty if connected to the front of a wall
+        int[] components = graph.components();
+        boolean[] empty = new boolean[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            if (root == null || !graph.getWalls(i).isEmpty())
+                empty[components[i]] = true;
+        }
+
+        this.leafCells = new int[leafCount];
+        int cellCount = 0;
+        for (int i = 0; i < leafCount; i++)
+            this.leafCells[i] = empty[components[i]] && !graph.isSliver(i) ? cellCount++ : SOLID;
+        this.cellCount = cellCount;
+
+        this.portals = new ArrayList<>();
+        this.cellPortals = new ArrayList<>(this.cellCount);
+        this.walls = new ArrayList<>(this.cellCount);
+        for (int i = 0; i < leafCount; i++) {
+            if (this.leafCells[i] != SOLID) {
+                this.cellPortals.add(new ArrayList<>());
+                this.walls.add(graph.getWalls(i));
+            }
+        }
+
+        for (Portal portal : graph.getPortals()) {
+            int frontCell = this.leafCells[portal.frontCell], behindCell = this.leafCells[portal.behindCell];
+            if (frontCell == SOLID || behindCell == SOLID)
+                continue;
+
+            Portal cellPortal = new Portal(portal.startX, portal.startY, portal.endX, portal.endY,
+                    portal.normalX, portal.normalY, frontCell, behindCell);
+            this.portals.add(cellPortal);
+            this.cellPortals.get(frontCell).add(cellPortal);
+            this.cellPortals.get(behindCell).add(cellPortal);
+        }
+
+        this.visibility = new PortalFlow(this.cellCount, this.portals, this.epsilon).compute(pool);
+    }
+
+    /**
+     * Returns the number of empty cells in this tree.
+     *
+     * @return The cell count.
+     */
+    public int getCellCount() {
+        return this.cellCount;
+    }
+
+    /**
+     * Returns the cell containing a point. Points on a <code>Plane</code> are located in
+     * front of it, as with <code>BSPTree.locate</code>.
+     *
+     * @param point The point to locate.
+     * @return The index of the cell, or <code>SOLID</code> if the point is in solid space.
+     */
+    public int getCell(Vector2 point) {
+        return getCell(point.x, point.y);
+    }
+
+    /**
+     * Returns the cell containing a point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The index of the cell, or <code>SOLID</code> if the point is in solid space.
+     */
+    public int getCell(float x, float y) {
+        int code = this.planeX.length == 0 ? -1 : 0;
+        while (code >= 0) {
+            float dist = this.planeX[code] * x + this.planeY[code] * y - this.planeD[code];
+            code = dist < 0 ? this.behind[code] : this.front[code];
+        }
+        return this.leafCells[-1 - code];
+    }
+
+    /**
+     * Returns every <code>Portal</code> of this tree.
+     *
+     * @return An unmodifiable <code>List</code> of the <code>Portal</code>s.
+     */
+    public List<Portal> getPortals() {
+        return Collections.unmodifiableList(this.portals);
+    }
+
+    /**
+     * Returns the <code>Portal</code>s bordering a cell.
+     *
+     * @param cell The index of the cell.
+     * @return An unmodifiable <code>List</code> of the <code>Portal</code>s.
+     */
+    public List<Portal> getPortals(int cell) {
+        return Collections.unmodifiableList(this.cellPortals.get(cell));
+    }
+
+    /**
+     * Returns the <code>Polygon</code>s facing into a cell. A <code>Polygon</code> split
+     * by the tree is returned as the fragments bordering the cell.
+     *
+     * @param cell The index of the cell.
+     * @return An unmodifiable <code>List</code> of the <code>Polygon</code>s.
+     */
+    public List<Polygon> getWalls(int cell) {
+        return Collections.unmodifiableList(this.walls.get(cell));
+    }
+
+    /**
+     * Returns the cells potentially visible from each cell.
+     *
+     * @return The <code>PotentiallyVisibleSet</code> of this tree.
+     */
+    public PotentiallyVisibleSet getVisibility() {
+        return this.visibility;
+    }
+
+    /**
+     * Returns whether a point may be visible from another, according to the cells
+     * containing them.
+     *
+     * @param from The point viewed from.
+     * @param to The point viewed.
+     * @return <code>false</code> if <code>to</code> cannot be visible from <code>from</code>,
+     *         or either point is in solid space.
+     */
+    public boolean isPotentiallyVisible(Vector2 from, Vector2 to) {
+        int fromCell = getCell(from), toCell = getCell(to);
+        if (fromCell == SOLID || toCell == SOLID)
+            return false;
+        return this.visibility.isVisible(fromCell, toCell);
+    }
+
+    /**
+     * Returns the <code>Polygon</code>s facing into the cells potentially visible from a
+     * position. Every <code>Polygon</code> visible from the position is included.
+     *
+     * @param position The position viewed from.
+     * @return A new <code>List</code> of the <code>Polygon</code>s, empty if the position
+     *         is in solid space.
+     */
+    public List<Polygon> potentiallyVisiblePolygons(Vector2 position) {
+        List<Polygon> result = new ArrayList<>();
+        int cell = getCell(position);
+        if (cell == SOLID)
+            return result;
+
+        Set<Polygon> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        BitSet cells = this.visibility.getVisibleCells(cell);
+        for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+            for (Polygon poly : this.walls.get(i)) {
+                if (seen.add(poly))
+                    result.add(poly);
+            }
+        }
+        return result;
+    }
+
+    private int compileNode(BSPNode node, BSPNode[] nodes, int[] counters) {
+        int index = counters[0]++;
+        nodes[index] = node;
+
+        this.planeX[index] = node.plane.getNormalX();
+        this.planeY[index] = node.plane.getNormalY();
+        this.planeD[index] = node.plane.getDistance();
+
+        this.behind[index] = node.behind() != null ? compileNode(node.behind(), nodes, counters) : -1 - counters[1]++;
+        this.front[index] = node.front() != null ? compileNode(node.front(), nodes, counters) : -1 - counters[1]++;
+
+        return index;
+    }
+
+    /**
+     * Finds the <code>Portal</code>s between leaves on the plane of a node and its
+     * descendants, and the regions of the leaves below it.
+     *
+     * @param region The region of the node, which this method may modify.
+     */
+    private void generate(int index, ConvexRegion region, BSPNode[] nodes, List<List<Polygon>> blockers,
+                          LeafGraph graph) {
+        BSPNode node = nodes[index];
+        Plane plane = node.plane;
+
+        float[] range = new float[2];
+        if (region.span(plane, range))
+            addPortals(index, nodes, blockers, range[0], range[1], graph);
+
+        ConvexRegion frontRegion = region.copy();
+        frontRegion.clip(plane, true, index);
+        if (this.front[index] >= 0)
+            generate(this.front[index], frontRegion, nodes, blockers, graph);
+        else
+            graph.setRegion(-1 - this.front[index], frontRegion);
+
+        region.clip(plane, false, index);
+        if (this.behind[index] >= 0)
+            generate(this.behind[index], region, nodes, blockers, graph);
+        else
+            graph.setRegion(-1 - this.behind[index], region);
+    }
+
+    /**
+     * Assigns the <code>Polygon</code>s of a node to the leaves they face. A piece facing
+     * a sliver is moved past it along the <code>Polygon</code>'s normal.
+     */
+    private void addWalls(int index, BSPNode node, LeafGraph graph) {
+        Plane plane = node.plane;
+        float nx = plane.getNormalX(), ny = plane.getNormalY();
+
+        for (Polygon poly : node.polys) {
+            boolean facing = poly.getNormalX() * nx + poly.getNormalY() * ny > 0;
+            float shiftX = poly.getNormalX() * this.epsilon * 2, shiftY = poly.getNormalY() * this.epsilon * 2;
+            push(facing ? this.front[index] : this.behind[index],
+                    poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY(), plane, facing, null,
+                    (leaf, x0, y0, x1, y1) -> {
+                        // Pieces left by splits near corners can face the wrong leaves
+                        float dx = x1 - x0, dy = y1 - y0;
+                        if (dx * dx + dy * dy <= this.epsilon * this.epsilon) return;
+
+                        if (!graph.isSliver(-1 - leaf)) {
+                            graph.addWall(-1 - leaf, poly);
+                            return;
+                        }
+
+                        push(0, x0 + shiftX, y0 + shiftY, x1 + shiftX, y1 + shiftY, plane, facing, null, (shifted, sx0, sy0, sx1, sy1) -> {
+                            if (!graph.isSliver(-1 - shifted))
+                                graph.addWall(-1 - shifted, poly);
+                        });
+                    });
+        }
+    }
+
+    /**
+     * Adds the <code>Portal</code>s between leaves lying on the plane of a node between
+     * positions <code>from</code> and <code>to</code> along it, skipping the
+     * <code>Polygon</code>s lying on it.
+     */
+    private void addPortals(int index, BSPNode[] nodes, List<List<Polygon>> blockers, float from, float to,
+                            LeafGraph graph) {
+        Plane plane = nodes[index].plane;
+        float nx = plane.getNormalX(), ny = plane.getNormalY(), d = plane.getDistance();
+
+        uncovered(blockers.get(index), nx * d - ny * from, ny * d + nx * from, nx * d - ny * to, ny * d + nx * to,
+                (x0, y0, x1, y1) ->
+                push(this.front[index], x0, y0, x1, y1, plane, true, blockers, (frontLeaf, fx0, fy0, fx1, fy1) ->
+                    push(this.behind[index], fx0, fy0, fx1, fy1, plane, false, blockers, (behindLeaf, bx0, by0, bx1, by1) -> {
+                        float dx = bx1 - bx0, dy = by1 - by0;
+                        if (dx * dx + dy * dy > this.epsilon * this.epsilon)
+                            graph.addPortal(new Portal(bx0, by0, bx1, by1, nx, ny, -1 - frontLeaf, -1 - behindLeaf));
+                    })));
+    }
+
+    /**
+     * Returns the <code>Polygon</code>s of a node and those below it lying within the
+     * tolerance of its plane.
+     */
+    private List<Polygon> coplanar(BSPNode node) {
+        List<Polygon> result = new ArrayList<>(node.polys);
+        collectCoplanar(node.behind(), node.plane, result);
+        collectCoplanar(node.front(), node.plane, result);
+        return result;
+    }
+
+    private void collectCoplanar(BSPNode node, Plane plane, List<Polygon> dest) {
+        if (node == null) return;
+
+        // Skip subtrees whose bounds lie entirely on one side of the plane
+        float a = plane.distanceTo(node.minX, node.minY), b = plane.distanceTo(node.maxX, node.minY);
+        float c = plane.distanceTo(node.minX, node.maxY), d = plane.distanceTo(node.maxX, node.maxY);
+        if (Math.min(Math.min(a, b), Math.min(c, d)) > this.epsilon
+                || Math.max(Math.max(a, b), Math.max(c, d)) < -this.epsilon)
+            return;
+
+        for (Polygon poly : node.polys) {
+            if (Math.abs(plane.distanceTo(poly.getStartX(), poly.getStartY())) <= this.epsilon
+                    && Math.abs(plane.distanceTo(poly.getEndX(), poly.getEndY())) <= this.epsilon)
+                dest.add(poly);
+        }
+        collectCoplanar(node.behind(), plane, dest);
+        collectCoplanar(node.front(), plane, dest);
+    }
+
+    /**
+     * Visits the parts of a segment longer than the tolerance which are not covered by
+     * any of a list of collinear <code>Polygon</code>s.
+     */
+    private void uncovered(List<Polygon> polys, float x0, float y0, float x1, float y1, SegmentVisitor visitor) {
+        float dx = x1 - x0, dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) return;
+
+        // Positions along the segment covered by the polygons
+        float[][] covered = new float[polys.size()][];
+        for (int i = 0; i < covered.length; i++) {
+            Polygon poly = polys.get(i);
+            float u0 = ((poly.getStartX() - x0) * dx + (poly.getStartY() - y0) * dy) / lengthSquared;
+            float u1 = ((poly.getEndX() - x0) * dx + (poly.getEndY() - y0) * dy) / lengthSquared;
+            covered[i] = new float[] { Math.min(u0, u1), Math.max(u0, u1) };
+        }
+        Arrays.sort(covered, (a, b) -> Float.compare(a[0], b[0]));
+
+        float minimum = this.epsilon / (float)Math.sqrt(lengthSquared);
+        float cursor = 0;
+        for (int i = 0; i <= covered.length && cursor < 1; i++) {
+            float end = i < covered.length ? Math.min(covered[i][0], 1) : 1;
+            if (end - cursor > minimum)
+                visitor.visit(x0 + dx * cursor, y0 + dy * cursor, x0 + dx * end, y0 + dy * end);
+            if (i < covered.length)
+                cursor = Math.max(cursor, covered[i][1]);
+        }
+    }
+
+    /**
+     * Pushes a segment down a subtree, splitting it by each plane it crosses, and visits
+     * each piece with the leaf it reaches. The subtree lies on the side of
+     * <code>reference</code> given by <code>referenceFront</code>, which decides the side
+     * of planes the segment lies on. If <code>blockers</code> is given, the parts of the
+     * segment covered by the <code>Polygon</code>s of a plane it lies on are removed.
+     */
+    private void push(int code, float x0, float y0, float x1, float y1, Plane reference, boolean referenceFront,
+                      List<List<Polygon>> blockers, LeafVisitor visitor) {
+        if (code < 0) {
+            visitor.visit(code, x0, y0, x1, y1);
+            return;
+        }
+
+        float d0 = this.planeX[code] * x0 + this.planeY[code] * y0 - this.planeD[code];
+        float d1 = this.planeX[code] * x1 + this.planeY[code] * y1 - this.planeD[code];
+
+        if (Math.abs(d0) <= this.epsilon && Math.abs(d1) <= this.epsilon) {
+            boolean aligned = this.planeX[code] * reference.getNormalX() + this.planeY[code] * reference.getNormalY() > 0;
+            int child = aligned == referenceFront ? this.front[code] : this.behind[code];
+            if (blockers != null) {
+                uncovered(blockers.get(code), x0, y0, x1, y1, (ux0, uy0, ux1, uy1) ->
+                        push(child, ux0, uy0, ux1, uy1, reference, referenceFront, blockers, visitor));
+            } else {
+                push(child, x0, y0, x1, y1, reference, referenceFront, null, visitor);
+            }
+        } else if (d0 >= -this.epsilon && d1 >= -this.epsilon) {
+            push(this.front[code], x0, y0, x1, y1, reference, referenceFront, blockers, visitor);
+        } else if (d0 <= this.epsilon && d1 <= this.epsilon) {
+            push(this.behind[code], x0, y0, x1, y1, reference, referenceFront, blockers, visitor);
+        } else {
+            float t = d0 / (d0 - d1);
+            float mx = x0 + (x1 - x0) * t, my = y0 + (y1 - y0) * t;
+            push(d0 > 0 ? this.front[code] : this.behind[code], x0, y0, mx, my, reference, referenceFront, blockers, visitor);
+            push(d0 > 0 ? this.behind[code] : this.front[code], mx, my, x1, y1, reference, referenceFront, blockers, visitor);
+        }
+    }
+
+    private static int countNodes(BSPNode node) {
+        if (node == null) return 0;
+        return 1 + countNodes(node.behind()) + countNodes(node.front());
+    }
+
+    private interface SegmentVisitor {
+        void visit(float x0, float y0, float x1, float y1);
+    }
+
+    private interface LeafVisitor {
+        void visit(int leaf, float x0, float y0, float x1, float y1);
+    }
+}
@@ -0,0 +1,138 @@
+package com.evrhel.bsp;
+
+import java.util.Arrays;
+
+/**
+ * A 1D coverage buffer over an interval of screen coordinates. Covered spans are kept
+ * sorted and disjoint, so testing and inserting cost O(log n) to find the position plus
+ * the number of spans merged. Gaps no wider than a tolerance are treated as covered, so
+ * rounding between walls sharing an endpoint does not leave cracks.
+ */
+class SpanBuffer {
+
+    private final float min, max;
+    private final float tolerance;
+    private float[] starts, ends;
+    private int count;
+
+    SpanBuffer(float min, float max, float tolerance) {
+        this.min = min;
+        this.max = max;
+        this.tolerance = tolerance;
+        this.starts = new float[16];
+        this.ends = new float[16];
+    }
+
+    /**
+     * Returns whether the whole interval of the buffer is covered.
+     */
+    boolean isFull() {
+        return this.count == 1 && this.starts[0] <= this.min + this.tolerance
+                && this.ends[0] >= this.max - this.tolerance;
+    }
+
+    /**
+     * Returns whether every coordinate in <code>[from, to]</code> within the buffer's
+     * interval is covered.
+     */
+    boolean isCovered(float from, float to) {
+        from = Math.max(from, this.min);
+        to = Math.min(to, this.max);
+        if (from >= to) return true;
+
+        int span = find(from + this.tolerance);
+        return span >= 0 && this.ends[span] >= to - this.tolerance;
+    }
+
+    /**
+     * Writes the uncovered parts of <code>[from, to]</code> within the buffer's interval
+     * as pairs of coordinates. Gaps no wider than the tolerance are left out, like the
+     * cracks between covered spans.
+     *
+     * @return The number of coordinates written, twice the number of gaps.
+     */
+    int gaps(float from, float to, float[] dest) {
+        from = Math.max(from, this.min);
+        to = Math.min(to, this.max);
+
+        int written = 0;
+        int span = find(from);
+        float cursor = span >= 0 ? Math.max(from, this.ends[span]) : from;
+        for (int i = span + 1; i < this.count && cursor < to; i++) {
+            float gapEnd = Math.min(this.starts[i], to);
+            if (gapEnd > cursor + this.tolerance) {
+                dest[written++] = cursor;
+                dest[written++] = gapEnd;
+            }
+            cursor = Math.max(cursor, this.ends[i]);
+        }
+        if (cursor < to - this.tolerance) {
+            dest[written++] = cursor;
+            dest[written++] = to;
+        }
+        return written;
+    }
+
+    /**
+     * Returns the maximum number of coordinates <code>gaps</code> may write.
+     */
+    int maxGaps() {
+        return 2 * (this.count + 1);
+    }
+
+    /**
+     * Covers <code>[from, to]</code>, merging it with every span it touches.
+     */
+    void insert(float from, float to) {
+        from = Math.max(from, this.min);
+        to = Math.min(to, this.max);
+        if (from >= to) return;
+
+        // Spans [first, last) are merged into the new one
+        int first = find(from);
+        if (first < 0 || this.ends[first] < from - this.tolerance)
+            first++;
+        int last = first;
+        while (last < this.count && this.starts[last] <= to + this.tolerance)
+            last++;
+
+        if (last > first) {
+            from = Math.min(from, this.starts[first]);
+            to = Math.max(to, this.ends[last - 1]);
+        }
+
+        int removed = last - first;
+        if (removed == 0) {
+            if (this.count == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.count * 2);
+                this.ends = Arrays.copyOf(this.ends, this.count * 2);
+            }
+            System.arraycopy(this.starts, first, this.starts, first + 1, this.count - first);
+            System.arraycopy(this.ends, first, this.ends, first + 1, this.count - first);
+            this.count++;
+        } else if (removed > 1) {
+            System.arraycopy(this.starts, last, this.starts, first + 1, this.count - last);
+            System.arraycopy(this.ends, last, this.ends, first + 1, this.count - last);
+            this.count -= removed - 1;
+        }
+
+        // Snap to the ends of the buffer so it can become full
+        this.starts[first] = from <= this.min + this.tolerance ? this.min : from;
+        this.ends[first] = to >= this.max - this.tolerance ? this.max : to;
+    }
+
+    /**
+     * Returns the index of the last span starting at or before a coordinate, or -1.
+     */
+    private int find(float coordinate) {
+        int low = 0, high = this.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.starts[mid] <= coordinate)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+}
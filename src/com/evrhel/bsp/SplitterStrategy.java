@@ -0,0 +1,102 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * Defines a strategy for choosing the splitting <code>Polygon</code> of each node while
+ * a <code>BSPTree</code> is being built.
+ * <p>
+ * Implementations must be deterministic: the same list must always yield the same index,
+ * no matter which thread calls them.
+ */
+@FunctionalInterface
+public interface SplitterStrategy {
+
+    /**
+     * Chooses the <code>Polygon</code> whose plane will split the others.
+     *
+     * @param polys The non-empty <code>List</code> of <code>Polygon</code>s remaining at a node.
+     * @return The index into <code>polys</code> of the chosen <code>Polygon</code>.
+     */
+    int select(List<Polygon> polys);
+
+    /**
+     * Chooses the <code>Polygon</code> whose plane will split the others, classifying
+     * <code>Polygon</code>s against candidate planes with a given
+     * <code>PlaneClassifier</code>. A <code>BSPTree</code> calls this with the classifier
+     * of its <code>BuildOptions</code>. By default the classifier is ignored.
+     *
+     * @param polys The non-empty <code>List</code> of <code>Polygon</code>s remaining at a node.
+     * @param classifier The <code>PlaneClassifier</code> the tree is built with.
+     * @return The index into <code>polys</code> of the chosen <code>Polygon</code>.
+     */
+    default int select(List<Polygon> polys, PlaneClassifier classifier) {
+        return select(polys);
+    }
+
+    /**
+     * Returns a strategy which always chooses the first <code>Polygon</code>. Input order
+     * alone then determines the shape of the tree.
+     *
+     * @return The strategy.
+     */
+    static SplitterStrategy first() {
+        return polys -> 0;
+    }
+
+    /**
+     * Returns a strategy which chooses the <code>Polygon</code> causing the fewest splits.
+     *
+     * @return The strategy.
+     */
+    static SplitterStrategy minimizeSplits() {
+        return weighted(1.0f, 0.0f);
+    }
+
+    /**
+     * Returns a strategy which chooses the <code>Polygon</code> leaving the most even
+     * number of <code>Polygon</code>s in front of and behind its plane.
+     *
+     * @return The strategy.
+     */
+    static SplitterStrategy balanced() {
+        return weighted(0.0f, 1.0f);
+    }
+
+    /**
+     * Returns a strategy which scores every candidate as
+     * <code>splitWeight * splits + balanceWeight * |front - behind|</code> and chooses
+     * the lowest score.
+     *
+     * @param splitWeight The non-negative weight of each <code>Polygon</code> which must
+     *                    be split.
+     * @param balanceWeight The non-negative weight of the difference between the front
+     *                      and behind counts.
+     * @return The strategy.
+     * @throws IllegalArgumentException If either weight is negative or NaN.
+     */
+    static SplitterStrategy weighted(float splitWeight, float balanceWeight) {
+        return new WeightedSplitter(splitWeight, balanceWeight, 0, 0);
+    }
+
+    /**
+     * Returns a strategy like <code>weighted(float, float)</code> which only scores a
+     * pseudo-random sample of candidates at each node. Scoring every candidate costs
+     * O(n^2) per node, so this is preferable for large inputs.
+     *
+     * @param splitWeight The non-negative weight of each <code>Polygon</code> which must
+     *                    be split.
+     * @param balanceWeight The non-negative weight of the difference between the front
+     *                      and behind counts.
+     * @param candidates The maximum number of candidates scored at each node.
+     * @param seed The seed used to sample candidates.
+     * @return The strategy.
+     * @throws IllegalArgumentException If either weight is negative or NaN, or
+     * <code>candidates</code> is not positive.
+     */
+    static SplitterStrategy sampled(float splitWeight, float balanceWeight, int candidates, long seed) {
+        if (candidates <= 0)
+            throw new IllegalArgumentException("candidates must be positive");
+        return new WeightedSplitter(splitWeight, balanceWeight, candidates, seed);
+    }
+}
@@ -0,0 +1,92 @@
+package com.evrhel.bsp;
+
+/**
+ * Defines the result of sweeping a circle through a <code>BSPTree</code>: the time of
+ * impact, the <code>Polygon</code> hit and the contact normal. A <code>SweepHit</code>
+ * may be reused across sweeps to avoid allocating.
+ */
+public class SweepHit {
+
+    private Polygon polygon;
+    private float time;
+    private float normalX, normalY;
+    private float contactX, contactY;
+
+    /**
+     * Creates an empty <code>SweepHit</code> to be filled in by
+     * <code>BSPTree.sweepCircle</code>.
+     */
+    public SweepHit() { }
+
+    void set(Polygon polygon, float time, float normalX, float normalY, float contactX, float contactY) {
+        this.polygon = polygon;
+        this.time = time;
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.contactX = contactX;
+        this.contactY = contactY;
+    }
+
+    /**
+     * Returns the <code>Polygon</code> which was hit.
+     *
+     * @return The <code>Polygon</code>, or <code>null</code> if the circle hit nothing.
+     */
+    public Polygon getPolygon() {
+        return this.polygon;
+    }
+
+    /**
+     * Returns the time of impact in <code>[0, 1]</code>. The center of the circle at
+     * impact is <code>from + (to - from) * time</code>. A time of 0 means the circle
+     * already overlapped the <code>Polygon</code> at the start of the sweep.
+     *
+     * @return The time of impact.
+     */
+    public float getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the unit contact normal, pointing from the contact point towards the
+     * center of the circle at impact.
+     *
+     * @return The contact normal.
+     */
+    public Vector2 getNormal() {
+        return new Vector2(this.normalX, this.normalY);
+    }
+
+    /**
+     * Returns the x-component of the unit contact normal.
+     *
+     * @return The x-component.
+     */
+    public float getNormalX() {
+        return this.normalX;
+    }
+
+    /**
+     * Returns the y-component of the unit contact normal.
+     *
+     * @return The y-component.
+     */
+    public float getNormalY() {
+        return this.normalY;
+    }
+
+    /**
+     * Returns the point on the <code>Polygon</code> the circle touched.
+     *
+     * @return The contact point.
+     */
+    public Vector2 getContact() {
+        return new Vector2(this.contactX, this.contactY);
+    }
+
+    @Override
+    public String toString() {
+        return "SweepHit[polygon=" + this.polygon + ",time=" + this.time + ",normal=" + getNormal()
+                + ",contact=" + getContact() + "]";
+    }
+}
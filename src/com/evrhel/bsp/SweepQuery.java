@@ -0,0 +1,171 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * Sweeps a circle through the nodes of a <code>BSPTree</code>. Each node's plane is
+ * offset by the radius of the circle: the front subtree is only searched over the times
+ * the circle reaches in front of <code>-radius</code>, the behind subtree over the times
+ * it reaches behind <code>radius</code>, and the node's own <code>Polygon</code>s over
+ * the times it is within <code>radius</code> of the plane. The search window also
+ * shrinks to the earliest impact found so far.
+ */
+class SweepQuery {
+
+    /**
+     * Sweeps the circle centered at <code>from + delta * t</code> for <code>t</code> in
+     * <code>[tMin, tMax]</code>, keeping the earliest impact before the time already
+     * held in <code>best</code>.
+     */
+    static void sweep(BSPNode node, float fromX, float fromY, float deltaX, float deltaY, float radius,
+                      float tMin, float tMax, SweepHit best) {
+        while (node != null) {
+            TreeMetrics.nodeVisited();
+            float tEnd = Math.min(tMax, best.getTime());
+            if (tMin > tEnd || !reachesBounds(node, fromX, fromY, deltaX, deltaY, radius, tMin, tEnd))
+                return;
+
+            TreeMetrics.planeTested();
+            Plane plane = node.plane;
+            float dist = plane.distanceTo(fromX, fromY);
+            float rate = plane.getNormalX() * deltaX + plane.getNormalY() * deltaY;
+
+            // Times the circle reaches in front of and behind the plane
+            float frontMin = tMin, frontMax = tEnd, behindMin = tMin, behindMax = tEnd;
+            if (rate == 0) {
+                if (dist < -radius) frontMin = Float.POSITIVE_INFINITY;
+                if (dist > radius) behindMin = Float.POSITIVE_INFINITY;
+            } else {
+                float frontCross = (-radius - dist) / rate, behindCross = (radius - dist) / rate;
+                if (rate > 0) {
+                    frontMin = Math.max(frontMin, frontCross);
+                    behindMax = Math.min(behindMax, behindCross);
+                } else {
+                    frontMax = Math.min(frontMax, frontCross);
+                    behindMin = Math.max(behindMin, behindCross);
+                }
+            }
+
+            // Polygons on the plane are only reachable while both sides are
+            float polyMin = Math.max(frontMin, behindMin), polyMax = Math.min(frontMax, behindMax);
+
+            boolean frontFirst = dist + rate * tMin >= 0;
+            if (frontFirst)
+                sweep(node.front(), fromX, fromY, deltaX, deltaY, radius, frontMin, frontMax, best);
+            else
+                sweep(node.behind(), fromX, fromY, deltaX, deltaY, radius, behindMin, behindMax, best);
+
+            if (polyMin <= Math.min(polyMax, best.getTime()))
+                sweepPolys(node.polys, plane, fromX, fromY, deltaX, deltaY, radius, polyMin, polyMax, best);
+
+            if (frontFirst) {
+                node = node.behind();
+                tMin = behindMin;
+                tMax = behindMax;
+            } else {
+                node = node.front();
+                tMin = frontMin;
+                tMax = frontMax;
+            }
+        }
+    }
+
+    private static boolean reachesBounds(BSPNode node, float fromX, float fromY, float deltaX, float deltaY,
+                                         float radius, float tMin, float tMax) {
+        float x0 = fromX + deltaX * tMin, x1 = fromX + deltaX * tMax;
+        float y0 = fromY + deltaY * tMin, y1 = fromY + deltaY * tMax;
+        return Math.min(x0, x1) - radius <= node.maxX && Math.max(x0, x1) + radius >= node.minX
+                && Math.min(y0, y1) - radius <= node.maxY && Math.max(y0, y1) + radius >= node.minY;
+    }
+
+    private static void sweepPolys(List<Polygon> polys, Plane plane, float fromX, float fromY, float deltaX, float deltaY,
+                                   float radius, float tMin, float tMax, SweepHit best) {
+        for (int i = 0, size = polys.size(); i < size; i++) {
+            Polygon poly = polys.get(i);
+            float t = impact(poly, plane, fromX, fromY, deltaX, deltaY, radius, tMin, Math.min(tMax, best.getTime()));
+            if (t < best.getTime())
+                setHit(poly, plane, fromX + deltaX * t, fromY + deltaY * t, t, deltaX, deltaY, best);
+        }
+    }
+
+    /**
+     * Returns the earliest time in <code>[tMin, tMax]</code> the circle touches a
+     * <code>Polygon</code> lying on <code>plane</code>, or infinity if it does not.
+     */
+    private static float impact(Polygon poly, Plane plane, float fromX, float fromY, float deltaX, float deltaY,
+                                float radius, float tMin, float tMax) {
+        if (tMin > tMax) return Float.POSITIVE_INFINITY;
+
+        float sx = poly.getStartX(), sy = poly.getStartY(), ex = poly.getEndX(), ey = poly.getEndY();
+        float radiusSquared = radius * radius;
+
+        // Already touching at the start of the window
+        if (SegmentMath.distanceSquared(fromX + deltaX * tMin, fromY + deltaY * tMin, sx, sy, ex, ey) <= radiusSquared)
+            return tMin;
+
+        float best = Float.POSITIVE_INFINITY;
+
+        // Against the interior: the circle touches the line when |distance| = radius.
+        // A zero-length polygon has no interior, only the endpoint tested below.
+        float dist = plane.distanceTo(fromX, fromY);
+        float rate = plane.getNormalX() * deltaX + plane.getNormalY() * deltaY;
+        float lengthSquared = (ex - sx) * (ex - sx) + (ey - sy) * (ey - sy);
+        if (rate != 0 && lengthSquared > 0) {
+            float t = ((dist + rate * tMin >= 0 ? radius : -radius) - dist) / rate;
+            if (t >= tMin && t <= tMax) {
+                float cx = fromX + deltaX * t, cy = fromY + deltaY * t;
+                float along = (cx - sx) * (ex - sx) + (cy - sy) * (ey - sy);
+                if (along >= 0 && along <= lengthSquared)
+                    best = t;
+            }
+        }
+
+        // Against either endpoint
+        best = Math.min(best, impactPoint(sx, sy, fromX, fromY, deltaX, deltaY, radiusSquared, tMin, tMax));
+        best = Math.min(best, impactPoint(ex, ey, fromX, fromY, deltaX, deltaY, radiusSquared, tMin, tMax));
+        return best;
+    }
+
+    /**
+     * Returns the earliest time in <code>[tMin, tMax]</code> the circle touches a point,
+     * or infinity if it does not.
+     */
+    private static float impactPoint(float px, float py, float fromX, float fromY, float deltaX, float deltaY,
+                                     float radiusSquared, float tMin, float tMax) {
+        // Solve |from + delta * t - p|^2 = radius^2 for the smaller root
+        float offX = fromX - px, offY = fromY - py;
+        float a = deltaX * deltaX + deltaY * deltaY;
+        if (a == 0) return Float.POSITIVE_INFINITY;
+
+        float b = offX * deltaX + offY * deltaY;
+        float c = offX * offX + offY * offY - radiusSquared;
+        float discriminant = b * b - a * c;
+        if (discriminant < 0) return Float.POSITIVE_INFINITY;
+
+        float t = (-b - (float)Math.sqrt(discriminant)) / a;
+        return t >= tMin && t <= tMax ? t : Float.POSITIVE_INFINITY;
+    }
+
+    private static void setHit(Polygon poly, Plane plane, float cx, float cy, float t, float deltaX, float deltaY,
+                               SweepHit best) {
+        float s = SegmentMath.closestParameter(cx, cy, poly.getStartX(), poly.getStartY(), poly.getEndX(), poly.getEndY());
+        float px = poly.getStartX() + (poly.getEndX() - poly.getStartX()) * s;
+        float py = poly.getStartY() + (poly.getEndY() - poly.getStartY()) * s;
+
+        float nx = cx - px, ny = cy - py;
+        float length = (float)Math.sqrt(nx * nx + ny * ny);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+        } else {
+            // The center is on the polygon, push back against the direction of motion
+            float side = plane.getNormalX() * deltaX + plane.getNormalY() * deltaY > 0 ? -1 : 1;
+            nx = plane.getNormalX() * side;
+            ny = plane.getNormalY() * side;
+        }
+
+        best.set(poly, t, nx, ny, px, py);
+    }
+
+    private SweepQuery() { }
+}
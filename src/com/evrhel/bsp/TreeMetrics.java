@@ -0,0 +1,112 @@
+package com.evrhel.bsp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by queries on every <code>BSPTree</code> in the JVM. Comparing
+ * the nodes visited per traversal over time tells a tree which has become degenerate
+ * apart from a rise in the number of queries.
+ * <p>
+ * Metrics are disabled unless the JVM is started with
+ * <code>-Dcom.evrhel.bsp.metrics=true</code>. <code>ENABLED</code> is a constant, so while
+ * it is <code>false</code> the JIT compiler removes every counter update from the
+ * queries. While enabled, queries also emit a <code>com.evrhel.bsp.SlowQuery</code>
+ * JDK Flight Recorder event when they take longer than the event's threshold, 1 ms
+ * unless configured otherwise in the recording settings.
+ * <p>
+ * Counters are cumulative and updated without contention from any number of threads.
+ */
+public final class TreeMetrics {
+
+    /**
+     * Whether metrics are collected, from the <code>com.evrhel.bsp.metrics</code>
+     * system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("com.evrhel.bsp.metrics");
+
+    private static final LongAdder TRAVERSALS = new LongAdder();
+    private static final LongAdder NODES_VISITED = new LongAdder();
+    private static final LongAdder PLANE_TESTS = new LongAdder();
+
+    /**
+     * Returns the number of queries and traversals started.
+     *
+     * @return The count, always 0 unless <code>ENABLED</code>.
+     */
+    public static long getTraversals() {
+        return TRAVERSALS.sum();
+    }
+
+    /**
+     * Returns the number of nodes queries and traversals have visited, including those
+     * rejected by their bounds without testing their plane.
+     *
+     * @return The count, always 0 unless <code>ENABLED</code>.
+     */
+    public static long getNodesVisited() {
+        return NODES_VISITED.sum();
+    }
+
+    /**
+     * Returns the number of times queries and traversals have tested which side of a
+     * node's plane a point lies on.
+     *
+     * @return The count, always 0 unless <code>ENABLED</code>.
+     */
+    public static long getPlaneTests() {
+        return PLANE_TESTS.sum();
+    }
+
+    /**
+     * Resets every counter to 0. Queries running concurrently may or may not be counted.
+     */
+    public static void reset() {
+        TRAVERSALS.reset();
+        NODES_VISITED.reset();
+        PLANE_TESTS.reset();
+    }
+
+    static void nodeVisited() {
+        if (ENABLED)
+            NODES_VISITED.increment();
+    }
+
+    static void planeTested() {
+        if (ENABLED)
+            PLANE_TESTS.increment();
+    }
+
+    /**
+     * Starts timing a query.
+     *
+     * @return The event to pass to <code>endQuery</code>, or <code>null</code> if
+     * metrics are disabled.
+     */
+    static QueryEvent beginQuery() {
+        if (!ENABLED) return null;
+        TRAVERSALS.increment();
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes timing a query, committing its event if it was slow.
+     *
+     * @param event The event returned by <code>beginQuery</code>, may be <code>null</code>.
+     * @param query The name of the query.
+     * @param tree The tree queried.
+     */
+    static void endQuery(QueryEvent event, String query, BSPTree tree) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.query = query;
+            event.nodes = tree.getNodeCount();
+            event.fragments = tree.getFragmentCount();
+            event.commit();
+        }
+    }
+
+    private TreeMetrics() { }
+}
@@ -0,0 +1,389 @@
+package com.evrhel.bsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches for a good <code>BSPTree</code> by building many candidate trees and keeping
+ * the one with the lowest score. The shape of a tree depends on the order of its input
+ * and on the <code>SplitterStrategy</code>, so each trial builds from its own seeded
+ * shuffle of the input with one of the configured strategies. The first trial of each
+ * strategy uses the input order as it is, so the result is never worse than building
+ * directly with any of them.
+ * <p>
+ * A tree's score is a weighted sum of three costs, each relative to a perfectly
+ * balanced tree so the weights do not depend on the size of the input:
+ * <ul>
+ *     <li>splits, the extra fragments created per input <code>Polygon</code>, which
+ *     every full traversal pays for,</li>
+ *     <li>depth, the maximum depth, which bounds the worst query,</li>
+ *     <li>cost, the mean number of planes tested locating points sampled uniformly over
+ *     the bounds of the input, the expected cost of a point query.</li>
+ * </ul>
+ * Trials run in parallel, each building sequentially, until either the number of trials
+ * or the time limit is reached. Only the best tree so far is kept, so memory stays at
+ * one tree per thread plus the best. Setters return this object so calls may be
+ * chained:
+ * <pre>
+ * OptimizationResult result = new TreeOptimizer()
+ *         .setTrials(1000)
+ *         .setTimeLimit(5, TimeUnit.MINUTES)
+ *         .optimize(polys);
+ * BSPTree tree = result.getTree();
+ * </pre>
+ * This is meant for compiling worlds ahead of time, where minutes spent searching are
+ * repaid by every query against the result.
+ */
+public class TreeOptimizer {
+
+    /**
+     * The default number of trials.
+     */
+    public static final int DEFAULT_TRIALS = 64;
+
+    /**
+     * The default number of points sampled to estimate the cost of point queries.
+     */
+    public static final int DEFAULT_SAMPLES = 1024;
+
+    private static final long STACK_SIZE = 1L << 28; // trees from bad orders can be very deep
+
+    private BuildOptions options;
+    private List<SplitterStrategy> splitters;
+    private int trials;
+    private long timeLimitNanos;
+    private int parallelism;
+    private long seed;
+    private int samples;
+    private float splitWeight, depthWeight, costWeight;
+
+    /**
+     * Creates a new <code>TreeOptimizer</code> with the default settings.
+     */
+    public TreeOptimizer() {
+        this.options = new BuildOptions();
+        this.splitters = Arrays.asList(SplitterStrategy.first(), SplitterStrategy.sampled(1.0f, 0.5f, 8, 0));
+        this.trials = DEFAULT_TRIALS;
+        this.timeLimitNanos = Long.MAX_VALUE;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.samples = DEFAULT_SAMPLES;
+        this.splitWeight = 1.0f;
+        this.depthWeight = 1.0f;
+        this.costWeight = 1.0f;
+    }
+
+    /**
+     * Sets the options candidate trees are built with. Their splitter and pool are
+     * ignored, as each trial chooses its own splitter and builds sequentially. Defaults
+     * to a new <code>BuildOptions</code>.
+     *
+     * @param options The non-<code>null</code> <code>BuildOptions</code>, which are copied.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setBuildOptions(BuildOptions options) {
+        if (options == null)
+            throw new NullPointerException("options");
+        this.options = new BuildOptions(options);
+        return this;
+    }
+
+    /**
+     * Sets the strategies trials choose between. Trial <code>i</code> uses strategy
+     * <code>i % splitters.length</code>. Defaults to <code>SplitterStrategy.first()</code>
+     * and a sampled strategy weighing splits over balance.
+     *
+     * @param splitters The non-empty array of non-<code>null</code> strategies.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setSplitters(SplitterStrategy... splitters) {
+        if (splitters.length == 0)
+            throw new IllegalArgumentException("at least one splitter is required");
+        for (SplitterStrategy splitter : splitters) {
+            if (splitter == null)
+                throw new NullPointerException("splitter");
+        }
+        this.splitters = Arrays.asList(splitters.clone());
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of trees built. Defaults to <code>DEFAULT_TRIALS</code>.
+     *
+     * @param trials The positive number of trials.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setTrials(int trials) {
+        if (trials <= 0)
+            throw new IllegalArgumentException("trials must be positive");
+        this.trials = trials;
+        return this;
+    }
+
+    /**
+     * Sets the time after which no further trials are started. Trials already running
+     * are finished, and at least one trial always runs. Defaults to no limit.
+     *
+     * @param time The positive time limit.
+     * @param unit The unit of <code>time</code>.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setTimeLimit(long time, TimeUnit unit) {
+        if (time <= 0)
+            throw new IllegalArgumentException("time must be positive");
+        this.timeLimitNanos = unit.toNanos(time);
+        return this;
+    }
+
+    /**
+     * Sets the number of trials run at once. Defaults to the number of available
+     * processors.
+     *
+     * @param parallelism The positive number of threads.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the seed the order of each trial is derived from. The same seed always
+     * builds the same tree in the same trial. Defaults to 0.
+     *
+     * @param seed The seed.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the number of points located in each tree to estimate the cost of point
+     * queries. Defaults to <code>DEFAULT_SAMPLES</code>.
+     *
+     * @param samples The positive number of points.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setSamples(int samples) {
+        if (samples <= 0)
+            throw new IllegalArgumentException("samples must be positive");
+        this.samples = samples;
+        return this;
+    }
+
+    /**
+     * Sets the weights of the costs making up the score of a tree. Each defaults to 1.
+     *
+     * @param splitWeight The weight of the fragments split off per input <code>Polygon</code>.
+     * @param depthWeight The weight of the maximum depth relative to a balanced tree.
+     * @param costWeight The weight of the mean point query cost relative to a balanced tree.
+     * @return This <code>TreeOptimizer</code>.
+     */
+    public TreeOptimizer setWeights(float splitWeight, float depthWeight, float costWeight) {
+        if (!(splitWeight >= 0) || !(depthWeight >= 0) || !(costWeight >= 0))
+            throw new IllegalArgumentException("weights must be non-negative");
+        this.splitWeight = splitWeight;
+        this.depthWeight = depthWeight;
+        this.costWeight = costWeight;
+        return this;
+    }
+
+    /**
+     * Runs the trials and returns the best tree found.
+     *
+     * @param polys The <code>Polygon</code>s to build trees from.
+     * @return The <code>OptimizationResult</code>.
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     * for the trials.
+     * @throws IllegalStateException If every trial failed, for example because every
+     * tree built was too deep for the stack.
+     * @throws RuntimeException Any other exception thrown while building a tree, such as
+     * by a broken <code>SplitterStrategy</code>, after the remaining trials are cancelled.
+     * @throws Error Any error other than a <code>StackOverflowError</code> thrown while
+     * building a tree, such as an <code>OutOfMemoryError</code>, after the remaining
+     * trials are cancelled.
+     */
+    public OptimizationResult optimize(List<Polygon> polys) throws InterruptedException {
+        List<Polygon> input = new ArrayList<>(polys);
+        float[] sampleX = new float[this.samples], sampleY = new float[this.samples];
+        samplePoints(input, sampleX, sampleY);
+
+        long start = System.nanoTime();
+        long deadline = this.timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + this.timeLimitNanos;
+        Search search = new Search(input, sampleX, sampleY, deadline);
+
+        int threads = Math.min(this.parallelism, this.trials);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(null, search::run, "tree-optimizer-" + i, STACK_SIZE);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            search.cancelled = true;
+            throw e;
+        }
+
+        if (search.failure instanceof Error)
+            throw (Error)search.failure;
+        if (search.failure != null)
+            throw (RuntimeException)search.failure;
+        if (search.best == null)
+            throw new IllegalStateException("Every trial failed to build a tree");
+
+        double[] scores = new double[search.scores.size()];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = search.scores.get(i);
+        return new OptimizationResult(search.best, search.bestStatistics, search.bestScore, search.bestTrial,
+                search.bestCost, scores, search.failed.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Scores a tree.
+     *
+     * @param statistics The statistics of the tree.
+     * @param cost The mean number of planes tested locating the sample points.
+     * @return The score, lower is better.
+     */
+    private double score(TreeStatistics statistics, double cost) {
+        int input = Math.max(statistics.getInputCount(), 1);
+        double optimalDepth = Math.max(32 - Integer.numberOfLeadingZeros(statistics.getNodeCount()), 1);
+        return this.splitWeight * (double)statistics.getSplitCount() / input
+                + this.depthWeight * statistics.getMaxDepth() / optimalDepth
+                + this.costWeight * cost / optimalDepth;
+    }
+
+    /**
+     * Chooses points uniformly over the bounds of the input, the same for every trial.
+     */
+    private void samplePoints(List<Polygon> polys, float[] x, float[] y) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (Polygon poly : polys) {
+            minX = Math.min(minX, Math.min(poly.getStartX(), poly.getEndX()));
+            minY = Math.min(minY, Math.min(poly.getStartY(), poly.getEndY()));
+            maxX = Math.max(maxX, Math.max(poly.getStartX(), poly.getEndX()));
+            maxY = Math.max(maxY, Math.max(poly.getStartY(), poly.getEndY()));
+        }
+        if (polys.isEmpty())
+            minX = minY = maxX = maxY = 0;
+
+        SplittableRandom random = new SplittableRandom(this.seed);
+        for (int i = 0; i < x.length; i++) {
+            x[i] = minX + (float)random.nextDouble() * (maxX - minX);
+            y[i] = minY + (float)random.nextDouble() * (maxY - minY);
+        }
+    }
+
+    /**
+     * Returns the mean number of planes tested locating each point, as
+     * <code>BSPTree.locate</code> does.
+     */
+    private static double locateCost(BSPNode root, float[] x, float[] y) {
+        if (root == null) return 0;
+
+        long tests = 0;
+        for (int i = 0; i < x.length; i++) {
+            BSPNode node = root;
+            while (node != null) {
+                tests++;
+                node = node.plane.distanceTo(x[i], y[i]) < 0 ? node.behind() : node.front();
+            }
+        }
+        return (double)tests / x.length;
+    }
+
+    /**
+     * The state shared by the threads running trials.
+     */
+    private class Search {
+
+        private final List<Polygon> input;
+        private final float[] sampleX, sampleY;
+        private final long deadline;
+        private final AtomicInteger nextTrial = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        // Guarded by this
+        private final List<Double> scores = new ArrayList<>();
+        private BSPTree best;
+        private TreeStatistics bestStatistics;
+        private double bestScore = Double.POSITIVE_INFINITY;
+        private double bestCost;
+        private int bestTrial;
+        private Throwable failure; // a RuntimeException or an Error
+
+        Search(List<Polygon> input, float[] sampleX, float[] sampleY, long deadline) {
+            this.input = input;
+            this.sampleX = sampleX;
+            this.sampleY = sampleY;
+            this.deadline = deadline;
+        }
+
+        void run() {
+            while (!this.cancelled) {
+                int trial = this.nextTrial.getAndIncrement();
+                if (trial >= TreeOptimizer.this.trials || (trial > 0 && System.nanoTime() - this.deadline > 0))
+                    return;
+
+                try {
+                    runTrial(trial);
+                } catch (StackOverflowError e) {
+                    // This order built a degenerate tree; the others may not
+                    this.failed.incrementAndGet();
+                } catch (RuntimeException | Error e) {
+                    // A splitter or classifier is broken, so every trial would fail alike, or
+                    // the heap ran out and must not be mistaken for a failed trial
+                    synchronized (this) {
+                        if (this.failure == null)
+                            this.failure = e;
+                    }
+                    this.cancelled = true;
+                    return;
+                }
+            }
+        }
+
+        private void runTrial(int trial) {
+            List<SplitterStrategy> splitters = TreeOptimizer.this.splitters;
+            List<Polygon> order = this.input;
+            if (trial >= splitters.size()) {
+                order = new ArrayList<>(this.input);
+                Collections.shuffle(order, new Random(TreeOptimizer.this.seed + trial * 0x9E3779B97F4A7C15L));
+            }
+
+            BuildOptions options = new BuildOptions(TreeOptimizer.this.options)
+                    .setSplitter(splitters.get(trial % splitters.size()))
+                    .setPool(null);
+            BSPTree tree = new BSPTree(order, options);
+            TreeStatistics statistics = tree.getStatistics();
+            double cost = locateCost(tree.getRoot(), this.sampleX, this.sampleY);
+            double score = score(statistics, cost);
+
+            synchronized (this) {
+                this.scores.add(score);
+                // Break ties by trial so the result does not depend on scheduling
+                if (score < this.bestScore || (score == this.bestScore && trial < this.bestTrial)) {
+                    this.best = tree;
+                    this.bestStatistics = statistics;
+                    this.bestScore = score;
+                    this.bestCost = cost;
+                    this.bestTrial = trial;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.evrhel.bsp;
+
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A <code>Spliterator</code> over the <code>Polygon</code>s of a <code>BSPTree</code>,
+ * which splits at the children of nodes. What is left to traverse is kept as a queue of
+ * whole subtrees and of nodes' own <code>Polygon</code>s, in traversal order. A subtree
+ * at the head of the queue is expanded into its children and its node's
+ * <code>Polygon</code>s as needed, so splitting hands a prefix of the queue to the new
+ * <code>Spliterator</code> and traversal never recurses.
+ * <p>
+ * Without a viewpoint, subtrees are traversed behind-node-front, the order of
+ * <code>BSPTree.iterator()</code>, and sizes are exact. With one, the order is
+ * back-to-front relative to it, as <code>BSPTree.iterator(Vector2)</code>. Then
+ * <code>Polygon</code>s on planes through the viewpoint are skipped, so sizes are only
+ * estimates until those nodes are reached.
+ */
+class TreeSpliterator implements Spliterator<Polygon> {
+
+    private final BSPTree tree;
+    private final int expectedModCount;
+    private final boolean ordered;
+    private final float x, y;
+    private final ArrayDeque<Object> pending; // subtrees as BSPNodes and node polygons as Lists
+    private List<Polygon> current; // the polygons being traversed, taken from pending
+    private int index; // index of the next polygon of current
+    private long remaining; // polygons left, exact unless ordered
+
+    /**
+     * Creates a <code>Spliterator</code> over a whole tree.
+     *
+     * @param tree The tree.
+     * @param position The viewpoint to traverse back-to-front from, or <code>null</code>
+     *                 to traverse in arbitrary order.
+     */
+    TreeSpliterator(BSPTree tree, Vector2 position) {
+        this(tree, position != null, position != null ? position.x : 0, position != null ? position.y : 0);
+
+        BSPNode root = tree.getRoot();
+        if (root != null) {
+            this.pending.add(root);
+            this.remaining = root.size;
+        }
+    }
+
+    private TreeSpliterator(BSPTree tree, boolean ordered, float x, float y) {
+        this.tree = tree;
+        this.expectedModCount = tree.getModCount();
+        this.ordered = ordered;
+        this.x = x;
+        this.y = y;
+        this.pending = new ArrayDeque<>();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Polygon> action) {
+        if (action == null)
+            throw new NullPointerException("action");
+        if (!advance())
+            return false;
+
+        action.accept(this.current.get(this.index++));
+        this.remaining--;
+        checkModCount();
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Polygon> action) {
+        if (action == null)
+            throw new NullPointerException("action");
+
+        while (advance()) {
+            List<Polygon> polys = this.current;
+            int start = this.index, end = polys.size();
+            for (int i = start; i < end; i++)
+                action.accept(polys.get(i));
+            this.index = end;
+            this.remaining -= end - start;
+        }
+        checkModCount();
+    }
+
+    @Override
+    public Spliterator<Polygon> trySplit() {
+        checkModCount();
+
+        // A lone subtree has to be opened up before anything can be handed over
+        while (this.pending.size() == 1 && this.pending.peekFirst() instanceof BSPNode)
+            expand((BSPNode)this.pending.pollFirst());
+        if (this.pending.size() < 2)
+            return null;
+
+        TreeSpliterator prefix = new TreeSpliterator(this.tree, this.ordered, this.x, this.y);
+        if (this.current != null) {
+            prefix.current = this.current;
+            prefix.index = this.index;
+            prefix.remaining = this.current.size() - this.index;
+            this.current = null;
+        }
+
+        // Hand over items from the head while they fit in half of what is left, opening
+        // up subtrees which do not, and keep at least one item
+        long half = this.remaining / 2;
+        while (this.pending.size() > 1) {
+            Object item = this.pending.peekFirst();
+            if (prefix.remaining + sizeOf(item) <= half) {
+                prefix.pending.addLast(this.pending.pollFirst());
+                prefix.remaining += sizeOf(item);
+            } else if (item instanceof BSPNode) {
+                expand((BSPNode)this.pending.pollFirst());
+            } else {
+                break;
+            }
+        }
+        if (prefix.pending.isEmpty() && this.pending.size() > 1) {
+            Object item = this.pending.pollFirst();
+            prefix.pending.addLast(item);
+            prefix.remaining += sizeOf(item);
+        }
+        if (prefix.current == null && prefix.pending.isEmpty())
+            return null;
+
+        this.remaining -= prefix.remaining;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return this.ordered ? ORDERED | NONNULL : SIZED | SUBSIZED | NONNULL;
+    }
+
+    /**
+     * Moves to the next polygon, expanding subtrees from the head of the queue until
+     * one is found.
+     *
+     * @return <code>false</code> if no polygons are left.
+     */
+    private boolean advance() {
+        while (this.current == null || this.index == this.current.size()) {
+            Object item = this.pending.pollFirst();
+            if (item == null) {
+                this.current = null;
+                return false;
+            }
+
+            if (item instanceof BSPNode) {
+                expand((BSPNode)item);
+            } else {
+                @SuppressWarnings("unchecked")
+                List<Polygon> polys = (List<Polygon>)item;
+                this.current = polys;
+                this.index = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces a subtree at the head of the queue with its children and its node's
+     * polygons, in traversal order. Nodes emptied by <code>remove</code> contribute
+     * only their children.
+     */
+    private void expand(BSPNode node) {
+        BSPNode first = node.behind(), second = node.front();
+        boolean skipPolys = false;
+        if (this.ordered) {
+            switch (RelativePosition.positionOf(node.plane, this.x, this.y)) {
+            case RelativePosition.FRONT:
+                break;
+            case RelativePosition.BEHIND:
+                first = node.front();
+                second = node.behind();
+                break;
+            default:
+                // Polygons containing the viewpoint are seen edge-on
+                first = node.front();
+                second = node.behind();
+                skipPolys = true;
+                this.remaining -= node.polys.size();
+                break;
+            }
+        }
+
+        if (second != null)
+            this.pending.addFirst(second);
+        if (!skipPolys && !node.polys.isEmpty())
+            this.pending.addFirst(node.polys);
+        if (first != null)
+            this.pending.addFirst(first);
+    }
+
+    private static long sizeOf(Object item) {
+        return item instanceof BSPNode ? ((BSPNode)item).size : ((List<?>)item).size();
+    }
+
+    private void checkModCount() {
+        if (this.tree.getModCount() != this.expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+}
@@ -0,0 +1,137 @@
+package com.evrhel.bsp;
+
+import java.util.Locale;
+
+/**
+ * Defines a snapshot of the shape of a <code>BSPTree</code> and what it cost to build,
+ * as returned by <code>BSPTree.getStatistics()</code>.
+ */
+public class TreeStatistics {
+
+    private final int nodeCount;
+    private final int leafCount;
+    private final int polygonCount;
+    private final int inputCount;
+    private final int maxDepth;
+    private final double averageDepth;
+    private final long buildNanos;
+
+    TreeStatistics(int nodeCount, int leafCount, int polygonCount, int inputCount, int maxDepth,
+                   double averageDepth, long buildNanos) {
+        this.nodeCount = nodeCount;
+        this.leafCount = leafCount;
+        this.polygonCount = polygonCount;
+        this.inputCount = inputCount;
+        this.maxDepth = maxDepth;
+        this.averageDepth = averageDepth;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the number of nodes in the tree without children.
+     *
+     * @return The leaf count.
+     */
+    public int getLeafCount() {
+        return this.leafCount;
+    }
+
+    /**
+     * Returns the number of <code>Polygon</code>s in the tree, counting each fragment of
+     * a split <code>Polygon</code> separately.
+     *
+     * @return The <code>Polygon</code> count, as <code>BSPTree.getPolygonCount()</code>.
+     */
+    public int getPolygonCount() {
+        return this.polygonCount;
+    }
+
+    /**
+     * Returns the number of <code>Polygon</code>s the tree was built from, plus those
+     * inserted and minus those removed since.
+     *
+     * @return The input <code>Polygon</code> count.
+     */
+    public int getInputCount() {
+        return this.inputCount;
+    }
+
+    /**
+     * Returns the number of extra fragments created by splitting <code>Polygon</code>s
+     * across planes.
+     *
+     * @return <code>getPolygonCount() - getInputCount()</code>.
+     */
+    public int getSplitCount() {
+        return this.polygonCount - this.inputCount;
+    }
+
+    /**
+     * Returns the number of nodes on the longest path from the root to a leaf.
+     *
+     * @return The maximum depth, 0 if the tree is empty.
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Returns the mean number of nodes on the paths from the root to each leaf. This is
+     * about the number of planes a point location tests.
+     *
+     * @return The average leaf depth, 0 if the tree is empty.
+     */
+    public double getAverageDepth() {
+        return this.averageDepth;
+    }
+
+    /**
+     * Returns how close the tree is to perfectly balanced, as the depth of a perfectly
+     * balanced tree with as many nodes divided by the maximum depth. A chain of nodes
+     * scores close to 0.
+     *
+     * @return The balance, in <code>(0, 1]</code>, or 1 if the tree is empty.
+     */
+    public double getBalance() {
+        if (this.maxDepth == 0) return 1;
+        int optimalDepth = 32 - Integer.numberOfLeadingZeros(this.nodeCount);
+        return (double)optimalDepth / this.maxDepth;
+    }
+
+    /**
+     * Returns the mean number of <code>Polygon</code>s stored at each node.
+     *
+     * @return The average, 0 if the tree is empty.
+     */
+    public double getAveragePolygonsPerNode() {
+        return this.nodeCount == 0 ? 0 : (double)this.polygonCount / this.nodeCount;
+    }
+
+    /**
+     * Returns how long the tree took to build when it was created. Subtrees rebuilt by
+     * <code>insert</code> and <code>remove</code> are not included.
+     *
+     * @return The build duration in nanoseconds.
+     */
+    public long getBuildNanos() {
+        return this.buildNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "TreeStatistics[nodes=%d, leaves=%d, polygons=%d, splits=%d, maxDepth=%d, averageDepth=%.2f, "
+                        + "balance=%.3f, polygonsPerNode=%.2f, build=%.3f ms]",
+                this.nodeCount, this.leafCount, this.polygonCount, getSplitCount(), this.maxDepth, this.averageDepth,
+                getBalance(), getAveragePolygonsPerNode(), this.buildNanos / 1e6);
+    }
+}
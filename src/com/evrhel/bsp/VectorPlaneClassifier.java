@@ -0,0 +1,53 @@
+package com.evrhel.bsp;
+
+import jdk.incubator.vector.*;
+
+/**
+ * A <code>PlaneClassifier</code> classifying whole blocks of segments with the Vector
+ * API. This class is only loaded through <code>PlaneClassifier.getDefault()</code>, so
+ * a missing <code>jdk.incubator.vector</code> module falls back to the scalar path.
+ */
+class VectorPlaneClassifier extends PlaneClassifier {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+
+    @Override
+    public void classify(Plane plane, float[] startX, float[] startY, float[] endX, float[] endY,
+                         int offset, int count, int[] dest) {
+        float nx = plane.getNormalX(), ny = plane.getNormalY();
+        float ox = plane.getOriginX(), oy = plane.getOriginY();
+
+        IntVector behind = IntVector.broadcast(INTS, RelativePosition.BEHIND);
+        IntVector front = IntVector.broadcast(INTS, RelativePosition.FRONT);
+        IntVector intersect = IntVector.broadcast(INTS, RelativePosition.INTERSECT);
+        IntVector on = IntVector.broadcast(INTS, RelativePosition.ON);
+
+        int end = offset + count;
+        int i = offset;
+        for (int bound = offset + FLOATS.loopBound(count); i < bound; i += FLOATS.length()) {
+            // Same operation order as Plane.distanceTo so results match exactly
+            FloatVector startDist = FloatVector.fromArray(FLOATS, startX, i).sub(ox).mul(nx)
+                    .add(FloatVector.fromArray(FLOATS, startY, i).sub(oy).mul(ny));
+            FloatVector endDist = FloatVector.fromArray(FLOATS, endX, i).sub(ox).mul(nx)
+                    .add(FloatVector.fromArray(FLOATS, endY, i).sub(oy).mul(ny));
+
+            // A distance which is neither 0 nor negative (including NaN) is in front
+            VectorMask<Float> startBehind = startDist.lt(0.0f);
+            VectorMask<Float> startFront = startDist.eq(0.0f).or(startBehind).not();
+            VectorMask<Float> endBehind = endDist.lt(0.0f);
+            VectorMask<Float> endFront = endDist.eq(0.0f).or(endBehind).not();
+
+            VectorMask<Float> isFront = startFront.andNot(endBehind).or(endFront.andNot(startBehind));
+            VectorMask<Float> isBehind = startBehind.andNot(endFront).or(endBehind.andNot(startFront));
+            VectorMask<Float> isIntersect = startFront.and(endBehind).or(startBehind.and(endFront));
+
+            on.blend(front, isFront.cast(INTS))
+                    .blend(behind, isBehind.cast(INTS))
+                    .blend(intersect, isIntersect.cast(INTS))
+                    .intoArray(dest, i);
+        }
+
+        classifyScalar(plane, startX, startY, endX, endY, i, end, dest);
+    }
+}
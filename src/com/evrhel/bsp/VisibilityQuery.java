@@ -0,0 +1,202 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+
+/**
+ * Finds the visible fragments of the <code>Polygon</code>s of a <code>BSPTree</code>
+ * from a viewpoint. Nodes are visited front-to-back while a <code>SpanBuffer</code>
+ * records which screen coordinates nearer <code>Polygon</code>s already cover. Subtrees
+ * whose bounds project onto covered coordinates are skipped, and the traversal stops
+ * once the whole field of view is covered.
+ * <p>
+ * A point <code>p</code> projects to the screen coordinate
+ * <code>dot(p - eye, right) / dot(p - eye, forward)</code>, which spans
+ * <code>[-tan(fov / 2), tan(fov / 2)]</code> over the field of view.
+ */
+class VisibilityQuery {
+
+    private static final float NEAR = 1e-4f; // minimum depth of a visible point
+    private static final float TOLERANCE = 1e-6f; // narrowest gap between covered spans
+
+    private final float eyeX, eyeY;
+    private final float forwardX, forwardY, rightX, rightY;
+    private final float extent;
+    private final float tolerance; // narrowest visible width in screen coordinates
+    private final SpanBuffer spans;
+    private final List<Polygon> result;
+    private final float[] range; // parameter range of the polygon being drawn
+    private float[] gaps;
+
+    VisibilityQuery(float eyeX, float eyeY, float dirX, float dirY, float fov, List<Polygon> result) {
+        float length = (float)Math.sqrt(dirX * dirX + dirY * dirY);
+        this.eyeX = eyeX;
+        this.eyeY = eyeY;
+        this.forwardX = dirX / length;
+        this.forwardY = dirY / length;
+        this.rightX = this.forwardY;
+        this.rightY = -this.forwardX;
+        this.extent = (float)Math.tan(Math.toRadians(fov) * 0.5);
+        this.tolerance = TOLERANCE * Math.max(1, this.extent);
+        this.spans = new SpanBuffer(-this.extent, this.extent, this.tolerance);
+        this.result = result;
+        this.range = new float[2];
+        this.gaps = new float[8];
+    }
+
+    /**
+     * Visits a subtree front-to-back.
+     *
+     * @return <code>false</code> once the field of view is fully covered.
+     */
+    boolean visit(BSPNode node) {
+        while (node != null) {
+            if (this.spans.isFull())
+                return false;
+            TreeMetrics.nodeVisited();
+            if (isHidden(node))
+                return true;
+
+            TreeMetrics.planeTested();
+            float dist = node.plane.distanceTo(this.eyeX, this.eyeY);
+            BSPNode near, far;
+            if (dist >= 0) {
+                near = node.front();
+                far = node.behind();
+            } else {
+                near = node.behind();
+                far = node.front();
+            }
+
+            if (!visit(near))
+                return false;
+
+            // Polygons containing the eye are seen edge-on
+            if (dist != 0) {
+                List<Polygon> polys = node.polys;
+                for (int i = 0, size = polys.size(); i < size; i++)
+                    draw(polys.get(i));
+            }
+
+            node = far;
+        }
+        return !this.spans.isFull();
+    }
+
+    /**
+     * Returns whether a subtree is certainly hidden: entirely behind the eye, or with
+     * bounds projecting onto covered coordinates only.
+     */
+    private boolean isHidden(BSPNode node) {
+        float minDepth = Float.POSITIVE_INFINITY, maxDepth = Float.NEGATIVE_INFINITY;
+        float minCoord = Float.POSITIVE_INFINITY, maxCoord = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            float x = ((corner & 1) == 0 ? node.minX : node.maxX) - this.eyeX;
+            float y = ((corner & 2) == 0 ? node.minY : node.maxY) - this.eyeY;
+            float depth = x * this.forwardX + y * this.forwardY;
+            minDepth = Math.min(minDepth, depth);
+            maxDepth = Math.max(maxDepth, depth);
+            if (depth > NEAR) {
+                float coord = (x * this.rightX + y * this.rightY) / depth;
+                minCoord = Math.min(minCoord, coord);
+                maxCoord = Math.max(maxCoord, coord);
+            }
+        }
+
+        if (maxDepth <= NEAR)
+            return true;
+        if (minDepth <= NEAR)
+            return false; // straddles the eye, the projection is unbounded
+        return maxCoord < -this.extent || minCoord > this.extent || this.spans.isCovered(minCoord, maxCoord);
+    }
+
+    /**
+     * Adds the uncovered fragments of a <code>Polygon</code> to the result and covers
+     * its projection.
+     */
+    private void draw(Polygon poly) {
+        float ax = poly.getStartX() - this.eyeX, ay = poly.getStartY() - this.eyeY;
+        float dx = poly.getEndX() - poly.getStartX(), dy = poly.getEndY() - poly.getStartY();
+
+        // Depth and lateral offset along the polygon, both linear in its parameter s
+        float depth0 = ax * this.forwardX + ay * this.forwardY, depthRate = dx * this.forwardX + dy * this.forwardY;
+        float lateral0 = ax * this.rightX + ay * this.rightY, lateralRate = dx * this.rightX + dy * this.rightY;
+
+        // Clip to the near plane and both sides of the field of view
+        float[] range = this.range;
+        range[0] = 0;
+        range[1] = 1;
+        if (!clip(depth0 - NEAR, depthRate, range)
+                || !clip(this.extent * depth0 - lateral0, this.extent * depthRate - lateralRate, range)
+                || !clip(this.extent * depth0 + lateral0, this.extent * depthRate + lateralRate, range))
+            return;
+
+        float coord0 = project(lateral0, lateralRate, depth0, depthRate, range[0]);
+        float coord1 = project(lateral0, lateralRate, depth0, depthRate, range[1]);
+        float from = Math.min(coord0, coord1), to = Math.max(coord0, coord1);
+        if (from >= to) return;
+
+        if (this.gaps.length < this.spans.maxGaps())
+            this.gaps = new float[this.spans.maxGaps() * 2];
+        int count = this.spans.gaps(from, to, this.gaps);
+
+        if (count == 2 && this.gaps[0] == from && this.gaps[1] == to && range[0] == 0 && range[1] == 1) {
+            this.result.add(poly); // entirely visible
+        } else {
+            for (int i = 0; i < count; i += 2) {
+                if (this.gaps[i] >= this.gaps[i + 1]) continue;
+                float s0 = unproject(lateral0, lateralRate, depth0, depthRate, this.gaps[i]);
+                float s1 = unproject(lateral0, lateralRate, depth0, depthRate, this.gaps[i + 1]);
+                float fragmentFrom = Math.max(range[0], Math.min(s0, s1));
+                float fragmentTo = Math.min(range[1], Math.max(s0, s1));
+                if (!(fragmentFrom < fragmentTo)) continue;
+
+                // Rounding in unproject, the clamp and the fragment's coordinates can leave
+                // a sliver where the gap met an occluder
+                Polygon fragment = poly.fragment(fragmentFrom, fragmentTo);
+                float width = project(fragment.getEndX(), fragment.getEndY())
+                        - project(fragment.getStartX(), fragment.getStartY());
+                if (Math.abs(width) > this.tolerance && !fragment.isSliver())
+                    this.result.add(fragment);
+            }
+        }
+
+        this.spans.insert(from, to);
+    }
+
+    /**
+     * Clips the parameter range of a segment to where <code>value + rate * s >= 0</code>.
+     *
+     * @return <code>false</code> if nothing remains.
+     */
+    private static boolean clip(float value, float rate, float[] range) {
+        if (rate == 0)
+            return value >= 0;
+
+        float s = -value / rate;
+        if (rate > 0)
+            range[0] = Math.max(range[0], s);
+        else
+            range[1] = Math.min(range[1], s);
+        return range[0] < range[1];
+    }
+
+    /**
+     * Returns the screen coordinate of a point in front of the eye.
+     */
+    private float project(float x, float y) {
+        x -= this.eyeX;
+        y -= this.eyeY;
+        return (x * this.rightX + y * this.rightY) / (x * this.forwardX + y * this.forwardY);
+    }
+
+    private static float project(float lateral0, float lateralRate, float depth0, float depthRate, float s) {
+        return (lateral0 + lateralRate * s) / (depth0 + depthRate * s);
+    }
+
+    /**
+     * Returns the parameter of the point of a segment projecting to a screen coordinate.
+     */
+    private static float unproject(float lateral0, float lateralRate, float depth0, float depthRate, float coord) {
+        return (coord * depth0 - lateral0) / (lateralRate - coord * depthRate);
+    }
+}
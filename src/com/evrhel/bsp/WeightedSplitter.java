@@ -0,0 +1,105 @@
+package com.evrhel.bsp;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A <code>SplitterStrategy</code> scoring candidates by a weighted sum of the number of
+ * splits they cause and the imbalance between the front and behind sides.
+ */
+class WeightedSplitter implements SplitterStrategy {
+
+    private static final int BLOCK_SIZE = 256; // segments classified between bound checks
+
+    private final float splitWeight, balanceWeight;
+    private final int candidates;
+    private final long seed;
+
+    /**
+     * @param candidates The number of candidates to sample, or 0 to score all of them.
+     */
+    WeightedSplitter(float splitWeight, float balanceWeight, int candidates, long seed) {
+        // A negative weight would reward splits or imbalance and break the early exit in score
+        if (!(splitWeight >= 0))
+            throw new IllegalArgumentException("splitWeight must be non-negative");
+        if (!(balanceWeight >= 0))
+            throw new IllegalArgumentException("balanceWeight must be non-negative");
+        this.splitWeight = splitWeight;
+        this.balanceWeight = balanceWeight;
+        this.candidates = candidates;
+        this.seed = seed;
+    }
+
+    @Override
+    public int select(List<Polygon> polys) {
+        return select(polys, PlaneClassifier.getDefault());
+    }
+
+    @Override
+    public int select(List<Polygon> polys, PlaneClassifier classifier) {
+        int size = polys.size();
+        if (size <= 2) return 0;
+
+        int best = 0;
+        float bestScore = Float.POSITIVE_INFINITY;
+        SegmentArrays segments = new SegmentArrays(polys);
+        int[] positions = new int[size];
+
+        if (this.candidates == 0 || this.candidates >= size) {
+            for (int i = 0; i < size; i++) {
+                float score = score(polys, classifier, segments, positions, i, bestScore);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+        } else {
+            // Seed from the list size so the choice does not depend on build order
+            SplittableRandom random = new SplittableRandom(this.seed ^ (size * 0x9E3779B97F4A7C15L));
+            for (int i = 0; i < this.candidates; i++) {
+                int candidate = random.nextInt(size);
+                float score = score(polys, classifier, segments, positions, candidate, bestScore);
+                if (score < bestScore || (score == bestScore && candidate < best)) {
+                    bestScore = score;
+                    best = candidate;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private float score(List<Polygon> polys, PlaneClassifier classifier, SegmentArrays segments, int[] positions,
+                        int candidate, float bound) {
+        Plane plane = new Plane(polys.get(candidate));
+        int splits = 0, front = 0, behind = 0;
+
+        for (int offset = 0, size = polys.size(); offset < size; offset += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, size - offset);
+            segments.classify(classifier, plane, offset, count, positions);
+
+            for (int i = 0; i < count; i++) {
+                if (offset + i == candidate) continue;
+
+                switch (positions[offset + i]) {
+                case RelativePosition.BEHIND:
+                    behind++;
+                    break;
+                case RelativePosition.FRONT:
+                    front++;
+                    break;
+                case RelativePosition.INTERSECT:
+                    splits++;
+                    front++;
+                    behind++;
+                    break;
+                }
+            }
+
+            if (splits * this.splitWeight > bound)
+                return Float.POSITIVE_INFINITY; // cannot beat the current best
+        }
+
+        return splits * this.splitWeight + Math.abs(front - behind) * this.balanceWeight;
+    }
+}
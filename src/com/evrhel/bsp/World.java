@@ -1,7 +1,10 @@
 package com.evrhel.bsp;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -11,48 +14,60 @@ import java.util.*;
 public class World {
 
     public static World worldFromFile(String filename) throws FileNotFoundException {
-        List<String> lines = new LinkedList<>();
-        Scanner fin = new Scanner(new FileInputStream(filename));
-        while (fin.hasNextLine()) {
-            String line = fin.nextLine().trim();
-            if (line.length() > 0 && line.charAt(0) != '#')
-                lines.add(line);
+        return worldFromFile(filename, new BuildOptions());
+    }
+
+    /**
+     * Loads a <code>World</code> from a text file, generating its <code>BSPTree</code>
+     * with the given <code>BuildOptions</code>. A line which cannot be parsed fails the
+     * load.
+     *
+     * @param filename The file to load.
+     * @param options The options controlling how the <code>BSPTree</code> is built.
+     * @return The loaded <code>World</code>.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws UncheckedIOException If the file could not be read or contains a line which
+     *                              cannot be parsed.
+     * @see #worldFromFile(String, BuildOptions, List)
+     */
+    public static World worldFromFile(String filename, BuildOptions options) throws FileNotFoundException {
+        return worldFromFile(filename, options, null);
+    }
+
+    /**
+     * Loads a <code>World</code> from a text file, generating its <code>BSPTree</code>
+     * with the given <code>BuildOptions</code>. Lines which cannot be parsed are skipped
+     * and reported to <code>errors</code>.
+     *
+     * @param filename The file to load.
+     * @param options The options controlling how the <code>BSPTree</code> is built.
+     * @param errors Receives an error for every line which could not be parsed, in line
+     *               order. If <code>null</code>, the first error is thrown instead.
+     * @return The loaded <code>World</code>.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws UncheckedIOException If the file could not be read, or it contains an error
+     *                              and <code>errors</code> is <code>null</code>.
+     * @see WorldLoader#load(java.nio.file.Path, BuildOptions, List)
+     */
+    public static World worldFromFile(String filename, BuildOptions options, List<ParseError> errors)
+            throws FileNotFoundException {
+        List<Polygon> polys;
+        try {
+            polys = new WorldLoader().parse(Paths.get(filename), errors);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filename);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        fin.close();
-
-        List<Polygon> polys = new LinkedList<>();
-        lines.forEach(line -> {
-            String[] tokens = line.split(" ");
-            float x0, y0, x1, y1;
-            String name = null;
-
-            if (tokens.length < 4) {
-                System.out.printf("Malformed line: \"%s\"\n", line);
-                return;
-            }
-
-            try {
-                x0 = Float.parseFloat(tokens[0]);
-                y0 = Float.parseFloat(tokens[1]);
-                x1 = Float.parseFloat(tokens[2]);
-                y1 = Float.parseFloat(tokens[3]);
-            } catch (NumberFormatException e) {
-                System.out.printf("Malformed line: \"%s\"\n", line);
-                return;
-            }
-
-            if (tokens.length > 4)
-                name = tokens[4];
-
-            polys.add(new Polygon(name, new Vector2(x0, y0), new Vector2(x1, y1)));
-        });
-
-        return new World(polys);
+        return new World(polys, options);
     }
 
     private final List<Polygon> polys;
     private final BSPTree bspTree;
     private final Vector2 min, max;
+    private final float simplifyTolerance; // negative if not simplifying
+    private final Map<Polygon, List<Polygon>> sources; // tree polygon to the polygons it was made from
+    private final Map<Polygon, Polygon> simplified; // polygon to the tree polygon it was made into
 
     /**
      * Creates a new <code>World</code> from a <code>List</code> of <code>Polygon</code>s. A
@@ -63,27 +78,152 @@ public class World {
      *              <code>Polygon</code>s.
      */
     public World(List<Polygon> polys) {
+        this(polys, new BuildOptions());
+    }
+
+    /**
+     * Creates a new <code>World</code> from a <code>List</code> of <code>Polygon</code>s,
+     * generating its <code>BSPTree</code> with the given <code>BuildOptions</code>. If
+     * <code>BuildOptions.isSimplify()</code>, the tree is built from a simplified copy of
+     * the <code>Polygon</code>s, and <code>getSources</code> maps its
+     * <code>Polygon</code>s back to them.
+     *
+     * @param polys A non-<code>null</code> <code>List</code> containing non-<code>null</code>
+     *              <code>Polygon</code>s.
+     * @param options The options controlling how the <code>BSPTree</code> is built.
+     */
+    public World(List<Polygon> polys, BuildOptions options) {
         this.polys = new ArrayList<>(polys);
 
         // Determine the bounding box of the world
         this.min = Vector2.Inf();
         this.max = Vector2.NInf();
-        polys.forEach(poly -> {
-            Vector2 start = poly.getStart();
-            Vector2 end = poly.getEnd();
-
-            this.min.x = Math.min(this.min.x, start.x);
-            this.min.x = Math.min(this.min.x, end.x);
-            this.min.y = Math.min(this.min.y, start.y);
-            this.min.y = Math.min(this.min.y, end.y);
-
-            this.max.x = Math.max(this.max.x, start.x);
-            this.max.x = Math.max(this.max.x, end.x);
-            this.max.y = Math.max(this.max.y, start.y);
-            this.max.y = Math.max(this.max.y, end.y);
-        });
-
-        this.bspTree = new BSPTree(this.polys);
+        polys.forEach(this::include);
+
+        if (options.isSimplify()) {
+            this.simplifyTolerance = options.getSimplifyTolerance();
+            this.sources = new IdentityHashMap<>();
+            this.simplified = new IdentityHashMap<>();
+            List<Polygon> treePolys = Simplifier.simplify(this.polys, this.simplifyTolerance, this.sources);
+            this.sources.forEach((treePoly, from) -> from.forEach(poly -> this.simplified.put(poly, treePoly)));
+            this.bspTree = new BSPTree(treePolys, options);
+        } else {
+            this.simplifyTolerance = -1;
+            this.sources = null;
+            this.simplified = null;
+            this.bspTree = new BSPTree(this.polys, options);
+        }
+    }
+
+    /**
+     * Adds a <code>Polygon</code> to this <code>World</code>, inserting it into the
+     * <code>BSPTree</code> without rebuilding it and growing the bounding box to fit.
+     * If this <code>World</code> is simplified, the <code>Polygon</code> is inserted as it
+     * is without merging, unless it is degenerate and left out of the tree.
+     *
+     * @param poly The <code>Polygon</code> to add, which must not already be in this
+     *             <code>World</code>.
+     * @see BSPTree#insert(Polygon)
+     */
+    public void addPolygon(Polygon poly) {
+        if (this.sources == null) {
+            this.bspTree.insert(poly);
+        } else if (!Simplifier.isDegenerate(poly, this.simplifyTolerance)) {
+            this.bspTree.insert(poly);
+            this.sources.put(poly, Collections.singletonList(poly));
+            this.simplified.put(poly, poly);
+        }
+        this.polys.add(poly);
+        include(poly);
+    }
+
+    /**
+     * Removes a <code>Polygon</code> from this <code>World</code> and its
+     * <code>BSPTree</code>. The bounding box is only recomputed if the
+     * <code>Polygon</code> touched its edge. If this <code>World</code> is simplified,
+     * the <code>Polygon</code> it was merged into is replaced by a simplified copy of
+     * the others it was merged from.
+     *
+     * @param poly The <code>Polygon</code> to remove.
+     * @return <code>true</code> if the <code>Polygon</code> was in this <code>World</code>.
+     * @see BSPTree#remove(Polygon)
+     */
+    public boolean removePolygon(Polygon poly) {
+        int index = indexOf(poly);
+        if (index == -1)
+            return false;
+
+        this.polys.remove(index);
+        if (this.sources == null)
+            this.bspTree.remove(poly);
+        else
+            unmerge(poly);
+
+        float minX = Math.min(poly.getStartX(), poly.getEndX()), minY = Math.min(poly.getStartY(), poly.getEndY());
+        float maxX = Math.max(poly.getStartX(), poly.getEndX()), maxY = Math.max(poly.getStartY(), poly.getEndY());
+        if (minX <= this.min.x || minY <= this.min.y || maxX >= this.max.x || maxY >= this.max.y) {
+            this.min.x = this.min.y = Float.POSITIVE_INFINITY;
+            this.max.x = this.max.y = Float.NEGATIVE_INFINITY;
+            this.polys.forEach(this::include);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the <code>Polygon</code>s of this <code>World</code> a <code>Polygon</code>
+     * of its <code>BSPTree</code> was made from. Unless this <code>World</code> is
+     * simplified, that is only the <code>Polygon</code> itself.
+     *
+     * @param poly A <code>Polygon</code> of the <code>BSPTree</code>, or a fragment of one
+     *             returned by it.
+     * @return An unmodifiable <code>List</code> of the <code>Polygon</code>s, empty if
+     * <code>poly</code> is not in the <code>BSPTree</code>.
+     */
+    public List<Polygon> getSources(Polygon poly) {
+        Polygon origin = poly.origin;
+        if (this.sources == null)
+            return indexOf(origin) != -1 ? Collections.singletonList(origin) : Collections.emptyList();
+
+        List<Polygon> from = this.sources.get(origin);
+        return from != null ? Collections.unmodifiableList(from) : Collections.emptyList();
+    }
+
+    /**
+     * Removes a <code>Polygon</code> from the tree of a simplified <code>World</code>,
+     * replacing the <code>Polygon</code> it was merged into with the others.
+     */
+    private void unmerge(Polygon poly) {
+        Polygon treePoly = this.simplified.remove(poly);
+        if (treePoly == null) return; // degenerate, never in the tree
+
+        this.bspTree.remove(treePoly);
+        List<Polygon> rest = new ArrayList<>(this.sources.remove(treePoly));
+        rest.removeIf(from -> from == poly);
+        rest.forEach(this.simplified::remove);
+
+        Map<Polygon, List<Polygon>> restSources = new IdentityHashMap<>();
+        for (Polygon restPoly : Simplifier.simplify(rest, this.simplifyTolerance, restSources)) {
+            this.bspTree.insert(restPoly);
+            for (Polygon from : restSources.get(restPoly))
+                this.simplified.put(from, restPoly);
+        }
+        this.sources.putAll(restSources);
+    }
+
+    private int indexOf(Polygon poly) {
+        for (int i = 0, size = this.polys.size(); i < size; i++) {
+            if (this.polys.get(i) == poly)
+                return i;
+        }
+        return -1;
+    }
+
+    private void include(Polygon poly) {
+        this.min.x = Math.min(this.min.x, Math.min(poly.getStartX(), poly.getEndX()));
+        this.min.y = Math.min(this.min.y, Math.min(poly.getStartY(), poly.getEndY()));
+
+        this.max.x = Math.max(this.max.x, Math.max(poly.getStartX(), poly.getEndX()));
+        this.max.y = Math.max(this.max.y, Math.max(poly.getStartY(), poly.getEndY()));
     }
 
     /**
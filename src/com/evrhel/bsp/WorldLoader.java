@@ -0,0 +1,376 @@
+package com.evrhel.bsp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads <code>World</code>s from text files. Each line of a file holds the coordinates
+ * <code>x0 y0 x1 y1</code> of a <code>Polygon</code> followed by an optional name, separated
+ * by any run of spaces or tabs. Blank lines and lines starting with <code>#</code> are
+ * ignored, as are fields after the name.
+ * <p>
+ * Files are split into chunks of whole lines which are memory-mapped. Each chunk is
+ * copied into a <code>byte[]</code> once and parsed from it, without creating a
+ * <code>String</code> per line or token. Numbers with few enough digits are converted
+ * exactly without leaving the array, and anything else accepted by
+ * <code>Float.parseFloat</code> falls back to it. Lines which
+ * cannot be parsed are reported as <code>ParseError</code>s and skipped. When a pool is
+ * set, chunks are parsed concurrently. The result does not depend on the pool or the
+ * chunk size.
+ * <pre>
+ * List&lt;ParseError&gt; errors = new ArrayList&lt;&gt;();
+ * World world = new WorldLoader()
+ *         .setPool(ForkJoinPool.commonPool())
+ *         .load(path, new BuildOptions(), errors);
+ * </pre>
+ */
+public class WorldLoader {
+
+    /**
+     * The default number of bytes of a file parsed as one chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    /**
+     * The smallest allowed chunk size.
+     */
+    public static final int MIN_CHUNK_SIZE = 4096;
+
+    private static final int FIELDS = 5; // 4 coordinates and a name
+    private static final long EXACT_MANTISSA = 1L << 53; // integers up to this are exact doubles
+    private static final double[] POWERS_OF_TEN = { // every power of ten which is an exact double
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ForkJoinPool pool;
+    private int chunkSize;
+
+    /**
+     * Creates a new <code>WorldLoader</code> which parses sequentially.
+     */
+    public WorldLoader() {
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Returns the pool used to parse chunks concurrently.
+     *
+     * @return The <code>ForkJoinPool</code>, or <code>null</code> if chunks are parsed
+     * sequentially.
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Sets the pool used to parse chunks concurrently. Defaults to <code>null</code>,
+     * parsing sequentially.
+     *
+     * @param pool The <code>ForkJoinPool</code>, or <code>null</code> to parse sequentially.
+     * @return This <code>WorldLoader</code>.
+     */
+    public WorldLoader setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes of a file parsed as one chunk.
+     *
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Sets the number of bytes of a file parsed as one chunk. Chunks are extended to the
+     * end of the line they stop in. Files smaller than this are parsed as one chunk and
+     * so are never parsed concurrently. Defaults to <code>DEFAULT_CHUNK_SIZE</code>.
+     *
+     * @param chunkSize The chunk size, must be at least <code>MIN_CHUNK_SIZE</code>.
+     * @return This <code>WorldLoader</code>.
+     */
+    public WorldLoader setChunkSize(int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE)
+            throw new IllegalArgumentException("chunkSize must be at least " + MIN_CHUNK_SIZE);
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Loads a <code>World</code> from a text file.
+     *
+     * @param path The file to load.
+     * @param options The options controlling how the <code>BSPTree</code> is built.
+     * @param errors Receives an error for every line which could not be parsed, in line
+     *               order. If <code>null</code>, the first error is thrown instead.
+     * @return The loaded <code>World</code>.
+     * @throws IOException If the file could not be read, or it contains an error and
+     *                     <code>errors</code> is <code>null</code>.
+     */
+    public World load(Path path, BuildOptions options, List<ParseError> errors) throws IOException {
+        return new World(parse(path, errors), options);
+    }
+
+    /**
+     * Parses the <code>Polygon</code>s of a text file.
+     *
+     * @param path The file to parse.
+     * @param errors Receives an error for every line which could not be parsed, in line
+     *               order. If <code>null</code>, the first error is thrown instead.
+     * @return A new <code>List</code> of the <code>Polygon</code>s in file order.
+     * @throws IOException If the file could not be read, or it contains an error and
+     *                     <code>errors</code> is <code>null</code>.
+     */
+    public List<Polygon> parse(Path path, List<ParseError> errors) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = start + this.chunkSize < size ? lineStart(channel, start + this.chunkSize, size) : size;
+                if (end - start > Integer.MAX_VALUE)
+                    throw new IOException("Line too long at byte " + start);
+                chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+                start = end;
+            }
+        }
+
+        if (this.pool != null && chunks.size() > 1)
+            this.pool.invoke(new ParseTask(chunks, 0, chunks.size()));
+        else
+            chunks.forEach(Chunk::parse);
+
+        // Lines were numbered within each chunk
+        int polyCount = 0;
+        for (Chunk chunk : chunks)
+            polyCount += chunk.polys.size();
+
+        List<Polygon> polys = new ArrayList<>(polyCount);
+        long firstLine = 0;
+        for (Chunk chunk : chunks) {
+            for (ParseError error : chunk.errors) {
+                ParseError numbered = new ParseError(firstLine + error.getLine(), error.getMessage(), error.getText());
+                if (errors == null)
+                    throw new IOException(numbered.toString());
+                errors.add(numbered);
+            }
+            polys.addAll(chunk.polys);
+            firstLine += chunk.lineCount;
+        }
+        return polys;
+    }
+
+    /**
+     * Returns the position of the first line starting at or after a position.
+     */
+    private static long lineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) break;
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n')
+                    return offset + i + 1;
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses a float from bytes. Decimal numbers whose digits and power of ten are both
+     * exact doubles are divided or multiplied in double precision, which rounds once and
+     * so is exact. Rounding that double to a float again is exact unless it landed
+     * halfway between two floats. Those, and anything else, are handed to
+     * <code>Float.parseFloat</code>.
+     *
+     * @throws NumberFormatException If the bytes are not a number.
+     */
+    static float parseFloat(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+            negative = bytes[i++] == '-';
+
+        long mantissa = 0;
+        int exponent = 0;
+        boolean digits = false, point = false;
+        for (; i < end; i++) {
+            byte c = bytes[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa > EXACT_MANTISSA)
+                    return slowParseFloat(bytes, start, end);
+                mantissa = mantissa * 10 + (c - '0');
+                if (point)
+                    exponent--;
+                digits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+                negativeExponent = bytes[i++] == '-';
+
+            int value = 0;
+            boolean exponentDigits = false;
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                if (value > 1000)
+                    return slowParseFloat(bytes, start, end);
+                value = value * 10 + (bytes[i] - '0');
+                exponentDigits = true;
+            }
+            if (!exponentDigits)
+                return slowParseFloat(bytes, start, end);
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!digits || i != end || mantissa > EXACT_MANTISSA || Math.abs(exponent) >= POWERS_OF_TEN.length)
+            return slowParseFloat(bytes, start, end);
+
+        double exact = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        float value = (float)exact;
+        if (exact != value) {
+            float neighbor = exact > value ? Math.nextUp(value) : Math.nextDown(value);
+            if (((double)value + neighbor) * 0.5 == exact)
+                return slowParseFloat(bytes, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static float slowParseFloat(byte[] bytes, int start, int end) {
+        return Float.parseFloat(decode(bytes, start, end));
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c >= 0 && c <= ' ';
+    }
+
+    /**
+     * A range of whole lines of a file, along with what was parsed from it.
+     */
+    private static class Chunk {
+
+        final ByteBuffer buffer;
+        final List<Polygon> polys;
+        final List<ParseError> errors = new ArrayList<>();
+        long lineCount;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+
+            // Lines of real maps are rarely shorter than this
+            this.polys = new ArrayList<>(buffer.limit() / 24 + 1);
+        }
+
+        void parse() {
+            // Scanning an array is much faster than reading the mapping byte by byte
+            byte[] bytes = new byte[this.buffer.limit()];
+            this.buffer.get(0, bytes);
+
+            int[] fieldStart = new int[FIELDS], fieldEnd = new int[FIELDS];
+            int size = bytes.length;
+            int lineStart = 0;
+            while (lineStart < size) {
+                int lineEnd = lineStart;
+                while (lineEnd < size && bytes[lineEnd] != '\n')
+                    lineEnd++;
+
+                this.lineCount++;
+                parseLine(bytes, lineStart, lineEnd, fieldStart, fieldEnd);
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private void parseLine(byte[] bytes, int start, int end, int[] fieldStart, int[] fieldEnd) {
+            int fields = 0;
+            for (int i = start; i < end && fields < FIELDS; ) {
+                if (isWhitespace(bytes[i])) {
+                    i++;
+                    continue;
+                }
+
+                fieldStart[fields] = i;
+                while (i < end && !isWhitespace(bytes[i]))
+                    i++;
+                fieldEnd[fields++] = i;
+            }
+
+            if (fields == 0 || bytes[fieldStart[0]] == '#')
+                return;
+            if (fields < 4) {
+                error(bytes, start, end, "Expected 4 coordinates");
+                return;
+            }
+
+            float x0, y0, x1, y1;
+            try {
+                x0 = parseFloat(bytes, fieldStart[0], fieldEnd[0]);
+                y0 = parseFloat(bytes, fieldStart[1], fieldEnd[1]);
+                x1 = parseFloat(bytes, fieldStart[2], fieldEnd[2]);
+                y1 = parseFloat(bytes, fieldStart[3], fieldEnd[3]);
+            } catch (NumberFormatException e) {
+                error(bytes, start, end, "Malformed coordinate");
+                return;
+            }
+
+            String name = fields > 4 ? decode(bytes, fieldStart[4], fieldEnd[4]) : null;
+            this.polys.add(new Polygon(name, x0, y0, x1, y1));
+        }
+
+        private void error(byte[] bytes, int start, int end, String message) {
+            this.errors.add(new ParseError(this.lineCount, message, decode(bytes, start, end).trim()));
+        }
+    }
+
+    /**
+     * Parses a range of chunks, splitting it across the pool.
+     */
+    private static class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from, to;
+
+        ParseTask(List<Chunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                this.chunks.get(this.from).parse();
+                return;
+            }
+
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new ParseTask(this.chunks, this.from, mid), new ParseTask(this.chunks, mid, this.to));
+        }
+    }
+}
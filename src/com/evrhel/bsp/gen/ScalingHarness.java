@@ -0,0 +1,352 @@
+package com.evrhel.bsp.gen;
+
+import com.evrhel.bsp.*;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+/**
+ * Measures how building and querying a <code>BSPTree</code> scale with the size of the
+ * world. For each layout of <code>WorldGenerator</code>, worlds are generated at
+ * geometrically growing sizes and, at each size, the harness reports:
+ * <ul>
+ *     <li>the build time, and its growth exponent relative to the previous size, so that
+ *     1 is linear and 2 is quadratic,</li>
+ *     <li>the peak heap used during the build,</li>
+ *     <li>the number of fragments in the tree against the number of input segments,</li>
+ *     <li>the depth of the tree,</li>
+ *     <li>the median and 99th percentile latencies of point location, ray casts and
+ *     nearest-polygon queries at random points within the world.</li>
+ * </ul>
+ * A layout stops growing once a build takes longer than the time budget. Run with
+ * <code>--help</code> for the arguments.
+ */
+public final class ScalingHarness {
+
+    private static final long STACK_SIZE = 1L << 30; // degenerate trees are as deep as they are large
+
+    private final List<WorldGenerator.Layout> layouts = new ArrayList<>();
+    private int min = 1000;
+    private int max = 1000000;
+    private double factor = 2;
+    private int queries = 10000;
+    private long seed = 0x5EEDL;
+    private double budget = 30;
+    private String splitter = "first";
+    private boolean shuffle;
+    private boolean csv;
+
+    private final PrintStream out = System.out;
+
+    private ScalingHarness() { }
+
+    public static void main(String[] args) throws InterruptedException {
+        ScalingHarness harness = new ScalingHarness();
+        try {
+            harness.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(1);
+            return;
+        }
+
+        // Recursive construction of a degenerate tree needs a far deeper stack than the default
+        Thread thread = new Thread(null, harness::run, "scaling-harness", STACK_SIZE);
+        thread.start();
+        thread.join();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ScalingHarness [options]");
+        System.err.println("  --layout=NAME     MAZE, ROOMS, LINE_SOUP, NEAR_COLLINEAR or ALL (default ALL)");
+        System.err.println("  --min=N           The smallest world, in segments (default 1000)");
+        System.err.println("  --max=N           The largest world, in segments (default 1000000)");
+        System.err.println("  --factor=F        The growth between sizes, greater than 1 (default 2)");
+        System.err.println("  --queries=N       The number of each kind of query per size (default 10000)");
+        System.err.println("  --seed=N          The seed of the worlds and queries");
+        System.err.println("  --budget=SECONDS  Stop growing a layout once a build takes longer (default 30)");
+        System.err.println("  --splitter=NAME   first, minimizeSplits or balanced (default first)");
+        System.err.println("  --shuffle         Shuffle the segments before building");
+        System.err.println("  --csv             Print comma-separated values instead of a table");
+    }
+
+    private void parseArgs(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg : arg.substring(0, equals);
+            String value = equals < 0 ? null : arg.substring(equals + 1);
+
+            switch (name) {
+            case "--layout":
+                if ("ALL".equalsIgnoreCase(value))
+                    this.layouts.clear();
+                else
+                    this.layouts.add(WorldGenerator.Layout.valueOf(require(name, value).toUpperCase(Locale.ROOT)));
+                break;
+            case "--min":
+                this.min = Integer.parseInt(require(name, value));
+                break;
+            case "--max":
+                this.max = Integer.parseInt(require(name, value));
+                break;
+            case "--factor":
+                this.factor = Double.parseDouble(require(name, value));
+                break;
+            case "--queries":
+                this.queries = Integer.parseInt(require(name, value));
+                break;
+            case "--seed":
+                this.seed = Long.decode(require(name, value));
+                break;
+            case "--budget":
+                this.budget = Double.parseDouble(require(name, value));
+                break;
+            case "--splitter":
+                this.splitter = require(name, value);
+                splitter();
+                break;
+            case "--shuffle":
+                this.shuffle = true;
+                break;
+            case "--csv":
+                this.csv = true;
+                break;
+            case "--help":
+                usage();
+                System.exit(0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        if (this.min <= 0 || this.max < this.min)
+            throw new IllegalArgumentException("min must be positive and max at least min");
+        if (!(this.factor > 1))
+            throw new IllegalArgumentException("factor must be greater than 1");
+        if (this.queries <= 0)
+            throw new IllegalArgumentException("queries must be positive");
+        if (this.layouts.isEmpty())
+            this.layouts.addAll(Arrays.asList(WorldGenerator.Layout.values()));
+    }
+
+    private static String require(String name, String value) {
+        if (value == null || value.isEmpty())
+            throw new IllegalArgumentException(name + " requires a value");
+        return value;
+    }
+
+    private SplitterStrategy splitter() {
+        switch (this.splitter) {
+        case "first":
+            return SplitterStrategy.first();
+        case "minimizeSplits":
+            return SplitterStrategy.minimizeSplits();
+        case "balanced":
+            return SplitterStrategy.balanced();
+        default:
+            throw new IllegalArgumentException("Unknown splitter: " + this.splitter);
+        }
+    }
+
+    private void run() {
+        if (this.csv)
+            this.out.println("layout,segments,fragments,split_percent,depth,build_ms,exponent,peak_mb,"
+                    + "locate_p50_us,locate_p99_us,raycast_p50_us,raycast_p99_us,nearest_p50_us,nearest_p99_us");
+
+        for (WorldGenerator.Layout layout : this.layouts) {
+            if (!this.csv) {
+                this.out.println();
+                this.out.println(layout + " (splitter " + this.splitter + (this.shuffle ? ", shuffled" : "") + ")");
+                this.out.printf("%10s %10s %7s %7s %10s %6s %9s %17s %17s %17s%n", "segments", "fragments", "split",
+                        "depth", "build ms", "exp", "peak MB", "locate p50/p99", "raycast p50/p99", "nearest p50/p99");
+            }
+
+            double lastSize = 0, lastTime = 0;
+            for (double size = this.min; size <= this.max; size *= this.factor) {
+                Row row;
+                try {
+                    row = measure(layout, (int)size);
+                } catch (StackOverflowError e) {
+                    this.out.println("Stack overflow building " + (int)size + " segments, stopping " + layout);
+                    break;
+                } catch (OutOfMemoryError e) {
+                    this.out.println("Out of memory building " + (int)size + " segments, stopping " + layout);
+                    break;
+                }
+
+                double exponent = lastSize > 0 && lastTime > 0 && row.buildMillis > 0
+                        ? Math.log(row.buildMillis / lastTime) / Math.log(row.segments / lastSize) : Double.NaN;
+                print(layout, row, exponent);
+
+                lastSize = row.segments;
+                lastTime = row.buildMillis;
+                if (row.buildMillis > this.budget * 1000) {
+                    if (!this.csv)
+                        this.out.println("Build took over " + this.budget + " s, stopping " + layout);
+                    break;
+                }
+            }
+        }
+    }
+
+    private Row measure(WorldGenerator.Layout layout, int size) {
+        List<Polygon> polys = new WorldGenerator(this.seed).generate(layout, size);
+        if (this.shuffle)
+            Collections.shuffle(polys, new Random(this.seed));
+
+        Row row = new Row();
+        row.segments = polys.size();
+
+        // Peak heap is only meaningful from a collected baseline
+        List<MemoryPoolMXBean> pools = heapPools();
+        System.gc();
+        long baseline = heapUsed(pools);
+        for (MemoryPoolMXBean pool : pools)
+            pool.resetPeakUsage();
+
+        long start = System.nanoTime();
+        BSPTree tree = new BSPTree(polys, new BuildOptions().setSplitter(splitter()));
+        row.buildMillis = (System.nanoTime() - start) / 1e6;
+        row.peakBytes = Math.max(0, heapPeak(pools) - baseline);
+
+        row.fragments = tree.getPolygonCount();
+        row.depth = tree.getDepth();
+        measureQueries(tree, polys, row);
+        return row;
+    }
+
+    private void measureQueries(BSPTree tree, List<Polygon> polys, Row row) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (Polygon poly : polys) {
+            minX = Math.min(minX, Math.min(poly.getStartX(), poly.getEndX()));
+            minY = Math.min(minY, Math.min(poly.getStartY(), poly.getEndY()));
+            maxX = Math.max(maxX, Math.max(poly.getStartX(), poly.getEndX()));
+            maxY = Math.max(maxY, Math.max(poly.getStartY(), poly.getEndY()));
+        }
+        float maxDistance = (float)Math.hypot(maxX - minX, maxY - minY);
+
+        int count = this.queries;
+        Random random = new Random(this.seed ^ row.segments);
+        float[] x = new float[count], y = new float[count], dirX = new float[count], dirY = new float[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = minX + random.nextFloat() * (maxX - minX);
+            y[i] = minY + random.nextFloat() * (maxY - minY);
+            double angle = random.nextDouble() * Math.PI * 2;
+            dirX[i] = (float)Math.cos(angle);
+            dirY[i] = (float)Math.sin(angle);
+        }
+
+        long[] times = new long[count];
+        int sink = 0;
+
+        // Run each kind of query once untimed so the timings are of compiled code
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                sink += tree.locate(x[i], y[i]);
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        row.locate = percentiles(times);
+
+        RayHit hit = new RayHit();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                if (tree.raycast(x[i], y[i], dirX[i], dirY[i], maxDistance, hit))
+                    sink++;
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        row.raycast = percentiles(times);
+
+        ClosestPolygon closest = new ClosestPolygon();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                if (tree.nearest(x[i], y[i], Float.POSITIVE_INFINITY, closest))
+                    sink++;
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        row.nearest = percentiles(times);
+
+        if (sink == 42)
+            this.out.print(""); // keeps the queries from being optimized away
+    }
+
+    private static double[] percentiles(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return new double[] {
+                sorted[(int)((sorted.length - 1) * 0.50)] / 1e3,
+                sorted[(int)((sorted.length - 1) * 0.99)] / 1e3
+        };
+    }
+
+    private void print(WorldGenerator.Layout layout, Row row, double exponent) {
+        double split = 100.0 * (row.fragments - row.segments) / row.segments;
+        double peak = row.peakBytes / (1024.0 * 1024.0);
+        if (this.csv) {
+            this.out.printf(Locale.ROOT, "%s,%d,%d,%.2f,%d,%.3f,%.3f,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n", layout,
+                    row.segments, row.fragments, split, row.depth, row.buildMillis, exponent, peak,
+                    row.locate[0], row.locate[1], row.raycast[0], row.raycast[1], row.nearest[0], row.nearest[1]);
+        } else {
+            this.out.printf(Locale.ROOT, "%10d %10d %6.1f%% %7d %10.1f %6s %9.1f %17s %17s %17s%n", row.segments,
+                    row.fragments, split, row.depth, row.buildMillis,
+                    Double.isNaN(exponent) ? "-" : String.format(Locale.ROOT, "%.2f", exponent), peak,
+                    latency(row.locate), latency(row.raycast), latency(row.nearest));
+        }
+    }
+
+    private static String latency(double[] percentiles) {
+        return String.format(Locale.ROOT, "%.2f/%.2f", percentiles[0], percentiles[1]);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        }
+        return pools;
+    }
+
+    private static long heapUsed(List<MemoryPoolMXBean> pools) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : pools)
+            used += pool.getUsage().getUsed();
+        return used;
+    }
+
+    /**
+     * Sums the peak usage of each heap pool. The pools peak at different times, so this
+     * overestimates the true peak, but never underestimates it.
+     */
+    private static long heapPeak(List<MemoryPoolMXBean> pools) {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools)
+            peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    /**
+     * The measurements at one size.
+     */
+    private static class Row {
+        int segments;
+        int fragments;
+        int depth;
+        double buildMillis;
+        long peakBytes;
+        double[] locate;
+        double[] raycast;
+        double[] nearest;
+    }
+}
@@ -0,0 +1,279 @@
+package com.evrhel.bsp.gen;
+
+import com.evrhel.bsp.Polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates large worlds procedurally, for testing and measuring <code>BSPTree</code>s
+ * on more than hand-made data. Every layout is driven by one seeded random number
+ * generator, so the same seed and the same sequence of calls always produce the same
+ * worlds. <code>Polygon</code>s are returned in the order they were generated.
+ */
+public class WorldGenerator {
+
+    /**
+     * The kinds of world which can be generated.
+     */
+    public enum Layout {
+
+        /**
+         * A perfect maze on a square grid, made of many short axis-aligned walls along
+         * few distinct lines.
+         */
+        MAZE,
+
+        /**
+         * Rectangular rooms of varying sizes joined by corridors through doorways.
+         */
+        ROOMS,
+
+        /**
+         * Short segments at random positions and angles, at a constant density.
+         */
+        LINE_SOUP,
+
+        /**
+         * Long segments which all run almost along the same line, crossing each other at
+         * tiny angles. These split almost every segment they are chosen to partition.
+         */
+        NEAR_COLLINEAR
+    }
+
+    private static final float MAZE_CELL = 4;
+    private static final float ROOM_SLOT = 32;
+    private static final float DOOR_HALF_WIDTH = 1;
+    private static final int SEGMENTS_PER_ROOM = 12; // 4 walls, doors and corridors on average
+
+    private final Random random;
+
+    /**
+     * Creates a new <code>WorldGenerator</code>.
+     *
+     * @param seed The seed of every world generated.
+     */
+    public WorldGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a world of a layout with about the given number of segments.
+     *
+     * @param layout The layout of the world.
+     * @param segments The approximate number of segments, must be positive.
+     * @return A new <code>List</code> of the segments.
+     */
+    public List<Polygon> generate(Layout layout, int segments) {
+        if (segments <= 0)
+            throw new IllegalArgumentException("segments must be positive");
+
+        switch (layout) {
+        case MAZE:
+            int side = Math.max(1, (int)Math.round(Math.sqrt(segments)));
+            return maze(side, side);
+        case ROOMS:
+            return rooms(Math.max(1, segments / SEGMENTS_PER_ROOM));
+        case LINE_SOUP:
+            return lineSoup(segments);
+        case NEAR_COLLINEAR:
+            return nearCollinear(segments);
+        default:
+            throw new IllegalArgumentException("Unknown layout: " + layout);
+        }
+    }
+
+    /**
+     * Generates a perfect maze, in which every cell can be reached from every other by
+     * exactly one path. Every remaining cell wall is its own segment, so a maze of
+     * <code>width * height</code> cells has about that many segments.
+     *
+     * @param width The number of cells across, must be positive.
+     * @param height The number of cells down, must be positive.
+     * @return A new <code>List</code> of the walls.
+     */
+    public List<Polygon> maze(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width and height must be positive");
+
+        // horizontal[y * width + x] is the wall below cell (x, y), vertical[y * (width + 1) + x] left of it
+        boolean[] horizontal = new boolean[(height + 1) * width];
+        boolean[] vertical = new boolean[height * (width + 1)];
+        java.util.Arrays.fill(horizontal, true);
+        java.util.Arrays.fill(vertical, true);
+
+        // Carve with an iterative depth-first search so huge mazes don't overflow the stack
+        boolean[] visited = new boolean[width * height];
+        int[] stack = new int[width * height];
+        int[] neighbors = new int[4];
+        int top = 0;
+        stack[top++] = 0;
+        visited[0] = true;
+        while (top > 0) {
+            int cell = stack[top - 1];
+            int x = cell % width, y = cell / width;
+
+            int count = 0;
+            if (x > 0 && !visited[cell - 1]) neighbors[count++] = cell - 1;
+            if (x < width - 1 && !visited[cell + 1]) neighbors[count++] = cell + 1;
+            if (y > 0 && !visited[cell - width]) neighbors[count++] = cell - width;
+            if (y < height - 1 && !visited[cell + width]) neighbors[count++] = cell + width;
+
+            if (count == 0) {
+                top--;
+                continue;
+            }
+
+            int next = neighbors[this.random.nextInt(count)];
+            if (next == cell - 1)
+                vertical[y * (width + 1) + x] = false;
+            else if (next == cell + 1)
+                vertical[y * (width + 1) + x + 1] = false;
+            else if (next == cell - width)
+                horizontal[y * width + x] = false;
+            else
+                horizontal[(y + 1) * width + x] = false;
+
+            visited[next] = true;
+            stack[top++] = next;
+        }
+
+        List<Polygon> polys = new ArrayList<>(width * height + width + height + 1);
+        for (int y = 0; y <= height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (horizontal[y * width + x])
+                    polys.add(new Polygon(null, x * MAZE_CELL, y * MAZE_CELL, (x + 1) * MAZE_CELL, y * MAZE_CELL));
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x <= width; x++) {
+                if (vertical[y * (width + 1) + x])
+                    polys.add(new Polygon(null, x * MAZE_CELL, (y + 1) * MAZE_CELL, x * MAZE_CELL, y * MAZE_CELL));
+            }
+        }
+        return polys;
+    }
+
+    /**
+     * Generates rooms laid out on a square grid of slots. Each room has a random size and
+     * position within its slot, and is joined to the rooms in the neighboring slots by
+     * straight corridors entering through doorways.
+     *
+     * @param count The number of rooms, must be positive.
+     * @return A new <code>List</code> of the walls, about 12 per room.
+     */
+    public List<Polygon> rooms(int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("count must be positive");
+
+        int columns = (int)Math.ceil(Math.sqrt(count));
+        float[] minX = new float[count], minY = new float[count], maxX = new float[count], maxY = new float[count];
+        for (int i = 0; i < count; i++) {
+            // Rooms always cover the middle of their slot, where corridors run
+            float centerX = (i % columns + 0.5f) * ROOM_SLOT, centerY = (i / columns + 0.5f) * ROOM_SLOT;
+            float halfWidth = 6 + this.random.nextFloat() * 6, halfHeight = 6 + this.random.nextFloat() * 6;
+            float offsetX = (this.random.nextFloat() * 2 - 1) * 4, offsetY = (this.random.nextFloat() * 2 - 1) * 4;
+            minX[i] = centerX + offsetX - halfWidth;
+            maxX[i] = centerX + offsetX + halfWidth;
+            minY[i] = centerY + offsetY - halfHeight;
+            maxY[i] = centerY + offsetY + halfHeight;
+        }
+
+        List<Polygon> polys = new ArrayList<>(count * SEGMENTS_PER_ROOM);
+        for (int i = 0; i < count; i++) {
+            int column = i % columns;
+            float centerX = (column + 0.5f) * ROOM_SLOT, centerY = (i / columns + 0.5f) * ROOM_SLOT;
+            boolean left = column > 0, right = column < columns - 1 && i + 1 < count;
+            boolean below = i >= columns, above = i + columns < count;
+
+            // Walls run counter-clockwise so their normals face into the room
+            wall(polys, minX[i], minY[i], maxX[i], minY[i], below, centerX);
+            wall(polys, maxX[i], minY[i], maxX[i], maxY[i], right, centerY);
+            wall(polys, maxX[i], maxY[i], minX[i], maxY[i], above, centerX);
+            wall(polys, minX[i], maxY[i], minX[i], minY[i], left, centerY);
+
+            if (right) {
+                int other = i + 1;
+                polys.add(new Polygon(null, maxX[i], centerY - DOOR_HALF_WIDTH, minX[other], centerY - DOOR_HALF_WIDTH));
+                polys.add(new Polygon(null, minX[other], centerY + DOOR_HALF_WIDTH, maxX[i], centerY + DOOR_HALF_WIDTH));
+            }
+            if (above) {
+                int other = i + columns;
+                polys.add(new Polygon(null, centerX + DOOR_HALF_WIDTH, maxY[i], centerX + DOOR_HALF_WIDTH, minY[other]));
+                polys.add(new Polygon(null, centerX - DOOR_HALF_WIDTH, minY[other], centerX - DOOR_HALF_WIDTH, maxY[i]));
+            }
+        }
+        return polys;
+    }
+
+    /**
+     * Generates segments of random position, angle and length. The area covered grows
+     * with the count, so the density of segments stays the same at every size.
+     *
+     * @param count The number of segments, must be positive.
+     * @return A new <code>List</code> of the segments.
+     */
+    public List<Polygon> lineSoup(int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("count must be positive");
+
+        float extent = (float)Math.sqrt(count) * 10;
+        List<Polygon> polys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float x = this.random.nextFloat() * extent, y = this.random.nextFloat() * extent;
+            double angle = this.random.nextDouble() * Math.PI * 2;
+            float length = 0.5f + this.random.nextFloat() * 19.5f;
+            polys.add(new Polygon(null, x, y, x + (float)Math.cos(angle) * length, y + (float)Math.sin(angle) * length));
+        }
+        return polys;
+    }
+
+    /**
+     * Generates long segments lying almost along the x-axis, each tilted by a tiny random
+     * angle and offset by a tiny random distance, so that nearly every pair crosses at a
+     * shallow angle somewhere along its length. This is close to the worst case for
+     * splitting, and stresses the precision of plane classification.
+     *
+     * @param count The number of segments, must be positive.
+     * @return A new <code>List</code> of the segments.
+     */
+    public List<Polygon> nearCollinear(int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("count must be positive");
+
+        float extent = 1000;
+        List<Polygon> polys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float start = this.random.nextFloat() * extent * 0.8f;
+            float length = extent * (0.05f + this.random.nextFloat() * 0.15f);
+            float offset = (this.random.nextFloat() * 2 - 1) * 1e-2f;
+            float slope = (this.random.nextFloat() * 2 - 1) * 1e-4f;
+            polys.add(new Polygon(null, start, offset, start + length, offset + slope * length));
+        }
+        return polys;
+    }
+
+    /**
+     * Adds a wall, with a doorway centered on a coordinate along it if asked for.
+     */
+    private static void wall(List<Polygon> polys, float x0, float y0, float x1, float y1, boolean door, float center) {
+        if (!door) {
+            polys.add(new Polygon(null, x0, y0, x1, y1));
+            return;
+        }
+
+        // The wall is axis-aligned, so the doorway's position is along x or y
+        boolean alongX = y0 == y1;
+        float from = alongX ? x0 : y0, to = alongX ? x1 : y1;
+        float sign = Math.signum(to - from);
+        float doorStart = center - sign * DOOR_HALF_WIDTH, doorEnd = center + sign * DOOR_HALF_WIDTH;
+        if (alongX) {
+            polys.add(new Polygon(null, x0, y0, doorStart, y0));
+            polys.add(new Polygon(null, doorEnd, y0, x1, y1));
+        } else {
+            polys.add(new Polygon(null, x0, y0, x0, doorStart));
+            polys.add(new Polygon(null, x0, doorEnd, x1, y1));
+        }
+    }
+}
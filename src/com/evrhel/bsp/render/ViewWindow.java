@@ -1,6 +1,7 @@
 package com.evrhel.bsp.render;
 
 import com.evrhel.bsp.BSPTree;
+import com.evrhel.bsp.OrderingCache;
 import com.evrhel.bsp.Polygon;
 import com.evrhel.bsp.Vector2;
 import com.evrhel.bsp.World;
@@ -11,7 +12,6 @@ import java.awt.event.MouseListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.awt.image.BufferedImage;
-import java.util.Iterator;
 
 /**
  * Defines a window to view a <code>World</code>.
@@ -19,6 +19,7 @@ import java.util.Iterator;
 public class ViewWindow {
 
     private final World world;
+    private final OrderingCache orderings;
     private final InternalWindow window;
 
     /**
@@ -28,6 +29,7 @@ public class ViewWindow {
      */
     public ViewWindow(World world) {
         this.world = world;
+        this.orderings = new OrderingCache(world.getBspTree(), 64);
         this.window = new InternalWindow();
     }
 
@@ -148,9 +150,8 @@ public class ViewWindow {
 
                 BSPTree tree = world.getBspTree();
                 int idx = 0;
-                Iterator<Polygon> iterator = tree.iterator(worldMouse);
-                while (iterator.hasNext())
-                    drawPoly(idx++, iterator.next());
+                for (Polygon poly : ViewWindow.this.orderings.getOrdering(worldMouse))
+                    drawPoly(idx++, poly);
 
                 this.graphics.setColor(Color.BLUE);
                 this.graphics.fillRect(mouseX - 2, mouseY - 2, 5, 5);